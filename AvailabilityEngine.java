@@ -0,0 +1,384 @@
+// For handling dates without time
+import java.time.LocalDate;
+
+// Collections used for the per-room calendars
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Maps shared by several desks
+import java.util.concurrent.ConcurrentHashMap;
+
+// Answers "which rooms are free from X to Y" from per-room booking calendars
+//
+// Every unit gets a calendar: a TreeMap of its stays keyed by check-in day.
+// Stays in one calendar never overlap, so checking a date range only needs
+// the last stay that starts before the check-out day - an O(log n) lookup
+// per room no matter how many historical bookings the room has.
+//
+// Stays are half-open: a guest checking out on the 25th leaves the room free
+// for a guest checking in on the 25th.
+//
+// The unit a booking holds is saved with the booking (Booking.getUnit, the
+// Unit column of booking.csv), so the calendars are rebuilt from the
+// bookings at startup; a booking that rooms.csv links to a room but that
+// has no unit yet is given that room. The engine is built by DataLoader once
+// the data is in. A refunded booking gives its room back but keeps the unit
+// number, so undoing the refund takes the same room again if it is free.
+// Saved assignments that overlap (a hand-edited file, say) cannot all be
+// restored; the ones left out are counted in availability.conflicts.
+//
+// Each calendar has its own lock, so checking and claiming dates for
+// different rooms never waits on another room, and two desks booking the
+// same unit for overlapping dates cannot both succeed. Storing the booking
+// itself still takes the one BookingStore lock for a short update.
+//
+// Lock order: BookingStore, then a calendar (the BookingListener methods
+// run inside the store's lock); RoomService, then a calendar
+// (findFreeRooms). A calendar lock is never held while another lock is
+// taken.
+public class AvailabilityEngine implements BookingListener {
+
+    // Saved assignments that could not be restored because the unit was taken (see Metrics)
+    private static final Metrics.Counter CONFLICTS = Metrics.counter("availability.conflicts");
+
+    // Room data (capacity, status) comes from the room service
+    private final RoomService roomService;
+
+    // Booking data (dates, status) comes from the booking service
+    private final BookingService bookingService;
+
+    // The booking service's store (units of stored bookings are set through it)
+    private final BookingStore store;
+
+    // unitNumber -> calendar of stays
+    private final Map<Integer, RoomCalendar> calendars = new ConcurrentHashMap<>();
+
+    // bookingID -> unitNumber the booking is assigned to
+    private final Map<String, Integer> unitByBooking = new ConcurrentHashMap<>();
+
+    // Builds the calendars from the current data and starts listening for booking changes
+    public AvailabilityEngine(RoomService roomService, BookingService bookingService) {
+        this.roomService = roomService;
+        this.bookingService = bookingService;
+        this.store = bookingService.getStore();
+
+        // A room's bookingID column is the older link between rooms.csv and booking.csv
+        // (collected first, so the room lock is not held while bookings are looked up)
+        Map<Integer, String> linked = new HashMap<>();
+        synchronized (roomService) {
+            for (int row = 0; row < roomService.getRoomCount(); row++) {
+                String bookingID = roomService.bookingIDAt(row);
+                if (bookingID != null) linked.put(roomService.unitAt(row), bookingID);
+            }
+        }
+
+        // Restore the saved units and start listening in one step, so no change is missed
+        synchronized (store) {
+            for (Booking b : store) {
+                follow(b);
+            }
+            bookingService.addBookingListener(this);
+        }
+
+        // Bookings only linked from rooms.csv are given that room (and keep it from now on)
+        for (Map.Entry<Integer, String> e : linked.entrySet()) {
+            Booking b = bookingService.findBooking(e.getValue());
+            if (b != null && b.getUnit() == 0) {
+                reserve(e.getKey(), b);
+            }
+        }
+    }
+
+    // Returns a copy of the current bookingID -> unitNumber assignments
+    public Map<String, Integer> getAssignments() {
+        return new HashMap<>(unitByBooking);
+    }
+
+    // Checks if a unit has no stay overlapping [from, to)
+    public boolean isFree(int unitNumber, LocalDate from, LocalDate to) {
+        RoomCalendar calendar = calendars.get(unitNumber);
+        if (calendar == null) return true;
+        synchronized (calendar) {
+            return calendar.isFree(from.toEpochDay(), to.toEpochDay());
+        }
+    }
+
+    // Returns all rooms with at least minCapacity beds that are free from "from" to "to"
+    // (rooms under maintenance are never returned)
+    public List<Room> findFreeRooms(int minCapacity, LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        List<Room> free = new ArrayList<>();
+
+        // Scan the room columns; Room objects are only fetched for matches
+        synchronized (roomService) {
+            for (int row = roomService.nextRoomWithCapacity(0, minCapacity); row >= 0;
+                 row = roomService.nextRoomWithCapacity(row + 1, minCapacity)) {
+                if (roomService.statusAt(row) == RoomStatus.MAINTENANCE) continue;
+
+                RoomCalendar calendar = calendars.get(roomService.unitAt(row));
+                if (calendar == null) {
+                    free.add(roomService.roomAt(row));
+                    continue;
+                }
+                synchronized (calendar) {
+                    if (calendar.isFree(start, end)) free.add(roomService.roomAt(row));
+                }
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Adds a booking to BookingService and assigns it to a unit as one step.
+     * Returns false (and changes nothing) if the unit is taken for those dates
+     * or the booking ID already exists. Safe to call from several desks at once.
+     */
+    public boolean book(int unitNumber, Booking booking) {
+
+        // Claim the dates first; a concurrent booking of the same unit fails here
+        if (!reserve(unitNumber, booking)) return false;
+
+        // Then store the booking (saved with its unit); give the dates back if the ID is taken
+        if (!bookingService.addBooking(booking)) {
+            release(booking.getBookingID());
+            booking.setUnit(0);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Books the first room with enough beds that is free for the booking's
+     * dates (rooms under maintenance are skipped). Returns the unit number,
+     * or 0 if no room is free or the booking ID already exists.
+     */
+    public int bookFirstFree(Booking booking) {
+        for (Room r : findFreeRooms(booking.getPartySize(), booking.getStartDate(), booking.getEndDate())) {
+            if (book(r.getUnitNumber(), booking)) return r.getUnitNumber();
+
+            // Another desk took the room meanwhile, unless the ID was the problem
+            if (bookingService.bookingExists(booking.getBookingID())) return 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Imports a batch of bookings, booking i into unit units[i], all or nothing.
+     * The batch is checked first: the booking rows themselves (see
+     * BookingService.createBookings), that every unit exists, and - sweeping
+     * the rows sorted by unit and check-in day - that no two rows of the
+     * batch overlap on one unit and no row overlaps a stay already booked.
+     * Refunded bookings hold no room, so their unit is ignored.
+     * If anything fails, nothing is reserved or stored and the report says why.
+     */
+    public BookingImportReport bookAll(List<Booking> batch, int[] units) {
+        if (units.length != batch.size()) {
+            throw new IllegalArgumentException("Need one unit per booking: " + units.length + " units for " + batch.size() + " bookings");
+        }
+        BookingImportReport report = bookingService.validate(batch);
+
+        // Rows that need a room and are well-formed enough to sweep
+        boolean[] bad = new boolean[batch.size()];
+        for (BookingImportReport.RowError e : report.getErrors()) {
+            bad[e.getRow()] = true;
+        }
+        List<Integer> rows = new ArrayList<>();
+        synchronized (roomService) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (bad[i] || batch.get(i).getBookingStatus() == BookingStatus.REFUNDED) continue;
+                if (roomService.rowOfUnit(units[i]) < 0) {
+                    report.addError(i, batch.get(i).getBookingID(), "No unit " + units[i]);
+                } else {
+                    rows.add(i);
+                }
+            }
+        }
+
+        // Sorted sweep: within one unit, each stay must start after the latest check-out so far
+        Integer[] order = rows.toArray(new Integer[0]);
+        Arrays.sort(order, (a, b) -> units[a] != units[b]
+                ? Integer.compare(units[a], units[b])
+                : batch.get(a).getStartDate().compareTo(batch.get(b).getStartDate()));
+        int lastRow = -1;
+        for (int i : order) {
+            Booking b = batch.get(i);
+            if (lastRow >= 0 && units[lastRow] == units[i] && batch.get(lastRow).getEndDate().isAfter(b.getStartDate())) {
+                report.addError(i, b.getBookingID(), "Overlaps row " + lastRow + " on unit " + units[i]);
+            } else if (!isFree(units[i], b.getStartDate(), b.getEndDate())) {
+                report.addError(i, b.getBookingID(), "Unit " + units[i] + " is already booked for those dates");
+            }
+            if (lastRow < 0 || units[lastRow] != units[i] || b.getEndDate().isAfter(batch.get(lastRow).getEndDate())) {
+                lastRow = i;
+            }
+        }
+        if (!report.isCommitted()) return report;
+
+        // Claim all the dates; a desk that booked one of them meanwhile undoes the batch
+        List<String> reserved = new ArrayList<>(rows.size());
+        for (int i : rows) {
+            Booking b = batch.get(i);
+            if (!reserve(units[i], b)) {
+                report.addError(i, b.getBookingID(), "Unit " + units[i] + " was just booked for those dates");
+                break;
+            }
+            reserved.add(b.getBookingID());
+        }
+
+        // Then store the bookings; give the dates back if that fails
+        if (report.isCommitted()) {
+            report = bookingService.createBookings(batch);
+        }
+        if (!report.isCommitted()) {
+            for (String id : reserved) {
+                release(id);
+            }
+            for (int i : rows) {
+                batch.get(i).setUnit(0);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Assigns a booking to a unit if the unit is free for the booking's dates.
+     * A stored booking's new unit is saved through BookingService's store;
+     * a booking not stored yet simply carries it when it is added.
+     */
+    public boolean reserve(int unitNumber, Booking booking) {
+        if (!claim(unitNumber, booking)) return false;
+        if (!store.setUnit(booking, unitNumber)) {
+            booking.setUnit(unitNumber);
+        }
+        return true;
+    }
+
+    // Takes the dates in a unit's calendar (the booking's unit field is not touched)
+    private boolean claim(int unitNumber, Booking booking) {
+
+        // Refunded bookings do not hold a room
+        if (booking.getBookingStatus() == BookingStatus.REFUNDED) return false;
+
+        long start = booking.getStartDate().toEpochDay();
+        long end = booking.getEndDate().toEpochDay();
+        if (end <= start) return false;
+
+        // A booking holds only one room
+        if (unitByBooking.putIfAbsent(booking.getBookingID(), unitNumber) != null) return false;
+
+        RoomCalendar calendar = calendars.computeIfAbsent(unitNumber, u -> new RoomCalendar());
+        boolean added = false;
+        synchronized (calendar) {
+            if (calendar.isFree(start, end)) {
+                calendar.add(start, end, booking.getBookingID());
+                added = true;
+            }
+        }
+        if (!added) {
+            unitByBooking.remove(booking.getBookingID());
+            return false;
+        }
+        return true;
+    }
+
+    // Frees the dates a booking holds, returns false if the booking held none
+    // (a stored booking keeps its unit number; see the class comment)
+    public boolean release(String bookingID) {
+        Integer unit = unitByBooking.remove(bookingID);
+        if (unit == null) return false;
+        RoomCalendar calendar = calendars.get(unit);
+        synchronized (calendar) {
+            calendar.remove(bookingID);
+        }
+        return true;
+    }
+
+    // Returns the unit a booking is assigned to, or null if it has none
+    public Integer unitOf(String bookingID) {
+        return unitByBooking.get(bookingID);
+    }
+
+    // ======================
+    // BookingListener methods
+    // Keep the calendars in step with BookingService
+    // ======================
+
+    @Override
+    public void bookingAdded(int row, Booking booking) {
+        follow(booking);
+    }
+
+    @Override
+    public void bookingRemoved(int row, Booking booking) {
+        release(booking.getBookingID());
+    }
+
+    // The new booking keeps the room it names if its dates still fit there
+    @Override
+    public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        release(oldBooking.getBookingID());
+        follow(newBooking);
+    }
+
+    // A refund gives the room back; undoing it takes the same unit again
+    @Override
+    public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+        if (booking.getBookingStatus() == BookingStatus.REFUNDED) {
+            release(booking.getBookingID());
+        } else if (oldStatus == BookingStatus.REFUNDED) {
+            follow(booking);
+        }
+    }
+
+    @Override
+    public void bookingUnitChanged(int row, Booking booking, int oldUnit) {
+        follow(booking);
+    }
+
+    // Brings the calendars in line with the unit a stored booking names
+    // (a no-op for changes this engine made itself)
+    private void follow(Booking b) {
+        Integer held = unitByBooking.get(b.getBookingID());
+        if (held != null && held == b.getUnit()) return;
+        if (held != null) release(b.getBookingID());
+        if (b.getUnit() == 0 || b.getBookingStatus() == BookingStatus.REFUNDED) return;
+        if (!b.getEndDate().isAfter(b.getStartDate())) return;
+
+        // Someone else holds the unit for these dates (for example a hand edit of booking.csv)
+        if (!claim(b.getUnit(), b)) {
+            CONFLICTS.increment();
+        }
+    }
+
+    // Sorted calendar of the stays of one room (callers hold its lock)
+    private static class RoomCalendar {
+
+        // check-in epoch day -> check-out epoch day
+        private final TreeMap<Long, Long> stays = new TreeMap<>();
+
+        // bookingID -> check-in epoch day (to find a stay when it is released)
+        private final Map<String, Long> startByBooking = new HashMap<>();
+
+        // A range is free if the last stay starting before its end has already ended
+        boolean isFree(long start, long end) {
+            Map.Entry<Long, Long> before = stays.lowerEntry(end);
+            return before == null || before.getValue() <= start;
+        }
+
+        void add(long start, long end, String bookingID) {
+            stays.put(start, end);
+            startByBooking.put(bookingID, start);
+        }
+
+        void remove(String bookingID) {
+            Long start = startByBooking.remove(bookingID);
+            if (start != null) {
+                stays.remove(start);
+            }
+        }
+    }
+}
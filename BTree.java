@@ -0,0 +1,526 @@
+// For the page file under the tree
+import java.io.IOException;
+
+// For comparing and moving key bytes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// For visiting every record
+import java.util.function.Consumer;
+
+// B+tree of records in the pages of a PageFile (a Repository kept on disk)
+//
+// Leaves hold the records (key bytes and value bytes from a RecordCodec),
+// internal pages hold separator keys and child page numbers. A lookup reads
+// one page per level, so finding, saving or deleting a record touches
+// O(log n) pages; with 4 KiB pages and ~80-byte bookings a million bookings
+// fit in a tree of three levels, the top two of which stay in the cache.
+//
+// Page layout (slotted; cells grow down from the end of the page):
+//   byte type, byte unused, short cell count, short start of the cell area,
+//   short unused, int leftmost child (internal pages only),
+//   short[count] cell offsets, in key order
+// Leaf cell:     short key length, short value length, key, value
+// Internal cell: short key length, int child, key
+// The leftmost child holds keys below the first cell's key; a cell's child
+// holds keys from that cell's key up to the next cell's key.
+//
+// A full page is split in two by bytes and the separator is added to the
+// parent (a full root gets a new root above it). Deletes do not merge
+// pages that become less than half full: a page is only given back to the
+// free list once its last record is gone, and a root with a single child
+// is replaced by that child. Each file holds up to PageFile.SLOTS trees;
+// the root page and record count of each are kept in the file's header.
+public class BTree<K, V> implements Repository<K, V> {
+
+    // Page types
+    static final byte LEAF = 1;
+    static final byte INTERNAL = 2;
+
+    // Page fields
+    private static final int COUNT = 2;
+    private static final int CELLS = 4;
+    private static final int LEFTMOST = 8;
+    private static final int SLOT_ARRAY = 12;
+
+    // Largest key, and largest key + value, so any page can hold at least four records
+    static final int MAX_KEY = 255;
+    static final int MAX_RECORD = 1000;
+
+    // Pages, the tree's slot in them, and the record format
+    private final PageFile file;
+    private final int slot;
+    private final RecordCodec<K, V> codec;
+
+    // Set by insert() / delete() for the operation in progress
+    private boolean added;
+    private boolean removed;
+
+    // A page that was split: the first key of the new right page, and the page
+    private static final class Split {
+        final byte[] key;
+        final int right;
+
+        Split(byte[] key, int right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+
+    public BTree(PageFile file, int slot, RecordCodec<K, V> codec) {
+        if (slot < 0 || slot >= PageFile.SLOTS) throw new IllegalArgumentException("No tree slot " + slot);
+        this.file = file;
+        this.slot = slot;
+        this.codec = codec;
+    }
+
+    // ======================
+    // Repository methods
+    // ======================
+
+    @Override
+    public V find(K key) throws IOException {
+        byte[] k = codec.key(key);
+        synchronized (file) {
+            int page = file.root(slot);
+            while (page != 0) {
+                PageFile.Frame f = file.pin(page);
+                try {
+                    byte[] p = f.data;
+                    int i = search(p, k);
+                    if (p[0] == LEAF) {
+                        if (i < 0) return null;
+                        int off = slotAt(p, i);
+                        int keyLength = getShort(p, off);
+                        byte[] value = Arrays.copyOfRange(p, off + 4 + keyLength,
+                                                          off + 4 + keyLength + getShort(p, off + 2));
+                        return codec.decode(k, value);
+                    }
+                    page = childFor(p, i);
+                } finally {
+                    file.unpin(f);
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void save(V value) throws IOException {
+        byte[] k = codec.key(codec.keyOf(value));
+        byte[] v = codec.encode(value);
+        if (k.length > MAX_KEY || k.length + v.length > MAX_RECORD) {
+            throw new IllegalArgumentException("Record too large for a page: " + codec.keyOf(value));
+        }
+
+        synchronized (file) {
+            int root = file.root(slot);
+            if (root == 0) {
+                PageFile.Frame f = file.allocate();
+                init(f.data, LEAF, 0);
+                root = f.page;
+                file.unpin(f);
+                file.setRoot(slot, root);
+            }
+
+            // Insert, and grow the tree by one level if the root was split
+            added = false;
+            Split split = insert(root, k, leafCell(k, v));
+            if (split != null) {
+                PageFile.Frame f = file.allocate();
+                init(f.data, INTERNAL, root);
+                append(f.data, internalCell(split.key, split.right));
+                file.setRoot(slot, f.page);
+                file.unpin(f);
+            }
+            if (added) file.setCount(slot, file.count(slot) + 1);
+            file.endOperation();
+        }
+    }
+
+    @Override
+    public boolean delete(K key) throws IOException {
+        byte[] k = codec.key(key);
+        synchronized (file) {
+            int root = file.root(slot);
+            if (root == 0) return false;
+
+            removed = false;
+            if (remove(root, k)) {
+                // The last record is gone
+                file.free(root);
+                file.setRoot(slot, 0);
+            } else {
+                collapseRoot();
+            }
+            if (removed) file.setCount(slot, file.count(slot) - 1);
+            file.endOperation();
+            return removed;
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super V> action) throws IOException {
+        synchronized (file) {
+            int root = file.root(slot);
+            if (root != 0) visit(root, action);
+        }
+    }
+
+    @Override
+    public long size() {
+        synchronized (file) {
+            return file.count(slot);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        file.commit();
+    }
+
+    // Commits; the file itself is closed by its owner (it can hold other trees)
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    // Number of levels (0 for an empty tree)
+    public int height() throws IOException {
+        synchronized (file) {
+            int levels = 0;
+            int page = file.root(slot);
+            while (page != 0) {
+                levels++;
+                PageFile.Frame f = file.pin(page);
+                page = f.data[0] == LEAF ? 0 : getInt(f.data, LEFTMOST);
+                file.unpin(f);
+            }
+            return levels;
+        }
+    }
+
+    // ======================
+    // Insert
+    // ======================
+
+    // Inserts the cell below the page; returns the split if the page had to be split
+    private Split insert(int page, byte[] key, byte[] cell) throws IOException {
+        PageFile.Frame f = file.pin(page);
+        try {
+            byte[] p = f.data;
+            int i = search(p, key);
+            int pos;
+            if (p[0] == LEAF) {
+                if (i >= 0) {
+                    // Same key: the new record replaces the old one
+                    removeSlot(p, i);
+                    pos = i;
+                } else {
+                    added = true;
+                    pos = -i - 1;
+                }
+            } else {
+                Split below = insert(childFor(p, i), key, cell);
+                if (below == null) return null;
+                cell = internalCell(below.key, below.right);
+                pos = (i >= 0 ? i : -i - 2) + 1;
+            }
+
+            file.markDirty(f);
+            if (insertCell(p, pos, cell)) return null;
+            return split(f, pos, cell);
+        } finally {
+            file.unpin(f);
+        }
+    }
+
+    // Splits a full page in two by bytes, with the new cell inserted at pos
+    private Split split(PageFile.Frame f, int pos, byte[] cell) throws IOException {
+        byte[] p = f.data;
+        boolean leaf = p[0] == LEAF;
+        int count = getShort(p, COUNT);
+
+        // All cells in order, with the new one
+        List<byte[]> cells = new ArrayList<>(count + 1);
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            cells.add(cellAt(p, i));
+        }
+        cells.add(pos, cell);
+        for (byte[] c : cells) {
+            total += c.length + 2;
+        }
+
+        // First cell of the right half (an internal page moves it up instead)
+        int mid = 0;
+        for (int bytes = 0; mid < cells.size() - 1 && bytes + cells.get(mid).length + 2 <= total / 2; mid++) {
+            bytes += cells.get(mid).length + 2;
+        }
+        mid = Math.max(1, Math.min(mid, cells.size() - (leaf ? 1 : 2)));
+
+        PageFile.Frame r = file.allocate();
+        try {
+            byte[] key;
+            int leftmost = getInt(p, LEFTMOST);
+            if (leaf) {
+                key = cellKey(cells.get(mid), true);
+                init(r.data, LEAF, 0);
+                for (int i = mid; i < cells.size(); i++) append(r.data, cells.get(i));
+            } else {
+                byte[] up = cells.get(mid);
+                key = cellKey(up, false);
+                init(r.data, INTERNAL, getInt(up, 2));
+                for (int i = mid + 1; i < cells.size(); i++) append(r.data, cells.get(i));
+            }
+            init(p, p[0], leftmost);
+            for (int i = 0; i < mid; i++) append(p, cells.get(i));
+            return new Split(key, r.page);
+        } finally {
+            file.unpin(r);
+        }
+    }
+
+    // ======================
+    // Delete
+    // ======================
+
+    // Removes the key below the page; returns true if the page is now empty (the caller frees it)
+    private boolean remove(int page, byte[] key) throws IOException {
+        PageFile.Frame f = file.pin(page);
+        try {
+            byte[] p = f.data;
+            int i = search(p, key);
+            if (p[0] == LEAF) {
+                if (i < 0) return false;
+                removeSlot(p, i);
+                file.markDirty(f);
+                removed = true;
+                return getShort(p, COUNT) == 0;
+            }
+
+            int index = i >= 0 ? i : -i - 2;
+            int child = childFor(p, i);
+            if (!remove(child, key)) return false;
+
+            // The child is empty: drop it (the next child takes over the leftmost place)
+            file.free(child);
+            file.markDirty(f);
+            if (index >= 0) {
+                removeSlot(p, index);
+                return false;
+            }
+            if (getShort(p, COUNT) == 0) return true;
+            putInt(p, LEFTMOST, getInt(cellAt(p, 0), 2));
+            removeSlot(p, 0);
+            return false;
+        } finally {
+            file.unpin(f);
+        }
+    }
+
+    // Replaces a root that has only one child by that child
+    private void collapseRoot() throws IOException {
+        while (true) {
+            int root = file.root(slot);
+            PageFile.Frame f = file.pin(root);
+            boolean single = f.data[0] == INTERNAL && getShort(f.data, COUNT) == 0;
+            int child = getInt(f.data, LEFTMOST);
+            file.unpin(f);
+            if (!single) return;
+            file.setRoot(slot, child);
+            file.free(root);
+        }
+    }
+
+    // ======================
+    // Scan
+    // ======================
+
+    // Visits the records below the page in key order
+    private void visit(int page, Consumer<? super V> action) throws IOException {
+        PageFile.Frame f = file.pin(page);
+        byte[] p = f.data;
+        int count = getShort(p, COUNT);
+        if (p[0] == LEAF) {
+            // Decode the whole page before handing records out, so the frame is pinned briefly
+            List<V> records = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    int off = slotAt(p, i);
+                    int keyLength = getShort(p, off);
+                    int valueLength = getShort(p, off + 2);
+                    records.add(codec.decode(Arrays.copyOfRange(p, off + 4, off + 4 + keyLength),
+                                             Arrays.copyOfRange(p, off + 4 + keyLength,
+                                                                off + 4 + keyLength + valueLength)));
+                }
+            } finally {
+                file.unpin(f);
+            }
+            records.forEach(action);
+            return;
+        }
+
+        int[] children = new int[count + 1];
+        children[0] = getInt(p, LEFTMOST);
+        for (int i = 0; i < count; i++) {
+            children[i + 1] = getInt(p, slotAt(p, i) + 2);
+        }
+        file.unpin(f);
+        for (int child : children) {
+            visit(child, action);
+        }
+    }
+
+    // ======================
+    // Page helpers
+    // ======================
+
+    // Empties a page and gives it a type
+    private static void init(byte[] p, byte type, int leftmost) {
+        Arrays.fill(p, (byte) 0);
+        p[0] = type;
+        putShort(p, CELLS, PageFile.PAGE_SIZE);
+        putInt(p, LEFTMOST, leftmost);
+    }
+
+    // Binary search: index of the key, or -(insertion point) - 1
+    private static int search(byte[] p, byte[] key) {
+        boolean leaf = p[0] == LEAF;
+        int lo = 0;
+        int hi = getShort(p, COUNT) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int off = slotAt(p, mid);
+            int keyStart = off + (leaf ? 4 : 6);
+            int cmp = Arrays.compareUnsigned(p, keyStart, keyStart + getShort(p, off), key, 0, key.length);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    // Child of an internal page that holds the key searched for (i from search())
+    private static int childFor(byte[] p, int i) {
+        int index = i >= 0 ? i : -i - 2;
+        return index < 0 ? getInt(p, LEFTMOST) : getInt(p, slotAt(p, index) + 2);
+    }
+
+    // Inserts a cell at the given index; returns false if the page is too full
+    private static boolean insertCell(byte[] p, int pos, byte[] cell) {
+        int count = getShort(p, COUNT);
+        int slotsEnd = SLOT_ARRAY + 2 * count;
+        if (getShort(p, CELLS) - slotsEnd < cell.length + 2) {
+            // Space left by removed cells is only usable after compacting
+            if (slotsEnd + 2 + liveBytes(p) + cell.length > PageFile.PAGE_SIZE) return false;
+            compact(p);
+        }
+        int start = getShort(p, CELLS) - cell.length;
+        System.arraycopy(cell, 0, p, start, cell.length);
+        putShort(p, CELLS, start);
+        System.arraycopy(p, SLOT_ARRAY + 2 * pos, p, SLOT_ARRAY + 2 * pos + 2, 2 * (count - pos));
+        putShort(p, SLOT_ARRAY + 2 * pos, start);
+        putShort(p, COUNT, count + 1);
+        return true;
+    }
+
+    // Adds a cell after the last one (the page is known to have room)
+    private static void append(byte[] p, byte[] cell) {
+        insertCell(p, getShort(p, COUNT), cell);
+    }
+
+    // Removes the cell at the given index (its bytes are reclaimed by the next compact)
+    private static void removeSlot(byte[] p, int index) {
+        int count = getShort(p, COUNT);
+        System.arraycopy(p, SLOT_ARRAY + 2 * index + 2, p, SLOT_ARRAY + 2 * index, 2 * (count - index - 1));
+        putShort(p, COUNT, count - 1);
+    }
+
+    // Moves the live cells together at the end of the page
+    private static void compact(byte[] p) {
+        int count = getShort(p, COUNT);
+        byte[][] cells = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            cells[i] = cellAt(p, i);
+        }
+        int end = PageFile.PAGE_SIZE;
+        for (int i = 0; i < count; i++) {
+            end -= cells[i].length;
+            System.arraycopy(cells[i], 0, p, end, cells[i].length);
+            putShort(p, SLOT_ARRAY + 2 * i, end);
+        }
+        Arrays.fill(p, SLOT_ARRAY + 2 * count, end, (byte) 0);
+        putShort(p, CELLS, end);
+    }
+
+    private static int liveBytes(byte[] p) {
+        int count = getShort(p, COUNT);
+        int bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += cellLength(p, slotAt(p, i), p[0] == LEAF);
+        }
+        return bytes;
+    }
+
+    private static int slotAt(byte[] p, int i) {
+        return getShort(p, SLOT_ARRAY + 2 * i);
+    }
+
+    private static int cellLength(byte[] p, int off, boolean leaf) {
+        return leaf ? 4 + getShort(p, off) + getShort(p, off + 2) : 6 + getShort(p, off);
+    }
+
+    private static byte[] cellAt(byte[] p, int i) {
+        int off = slotAt(p, i);
+        return Arrays.copyOfRange(p, off, off + cellLength(p, off, p[0] == LEAF));
+    }
+
+    // Key of a cell copied out by cellAt
+    private static byte[] cellKey(byte[] cell, boolean leaf) {
+        int start = leaf ? 4 : 6;
+        return Arrays.copyOfRange(cell, start, start + getShort(cell, 0));
+    }
+
+    private static byte[] leafCell(byte[] key, byte[] value) {
+        byte[] cell = new byte[4 + key.length + value.length];
+        putShort(cell, 0, key.length);
+        putShort(cell, 2, value.length);
+        System.arraycopy(key, 0, cell, 4, key.length);
+        System.arraycopy(value, 0, cell, 4 + key.length, value.length);
+        return cell;
+    }
+
+    private static byte[] internalCell(byte[] key, int child) {
+        byte[] cell = new byte[6 + key.length];
+        putShort(cell, 0, key.length);
+        putInt(cell, 2, child);
+        System.arraycopy(key, 0, cell, 6, key.length);
+        return cell;
+    }
+
+    static int getShort(byte[] p, int at) {
+        return (p[at] & 0xFF) << 8 | p[at + 1] & 0xFF;
+    }
+
+    static void putShort(byte[] p, int at, int value) {
+        p[at] = (byte) (value >> 8);
+        p[at + 1] = (byte) value;
+    }
+
+    static int getInt(byte[] p, int at) {
+        return (p[at] & 0xFF) << 24 | (p[at + 1] & 0xFF) << 16 | (p[at + 2] & 0xFF) << 8 | p[at + 3] & 0xFF;
+    }
+
+    static void putInt(byte[] p, int at, int value) {
+        p[at] = (byte) (value >> 24);
+        p[at + 1] = (byte) (value >> 16);
+        p[at + 2] = (byte) (value >> 8);
+        p[at + 3] = (byte) value;
+    }
+}
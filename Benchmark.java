@@ -0,0 +1,780 @@
+// For the generated data files
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// For running each case in its own JVM
+import java.lang.management.ManagementFactory;
+
+// For generating bookings and rooms
+import java.time.LocalDate;
+
+// Collections used by the cases
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Micro-benchmarks for the services, readers and writers
+//
+// Every case builds a generated data set of the requested size, runs
+// WARMUP_ROUNDS unmeasured rounds so the JIT has compiled the hot paths, then
+// times MEASURED_ROUNDS rounds and prints the median: "us/op" is wall-clock
+// microseconds per operation (one lookup, one row read or written, ...) and
+// "ops/s" is its inverse. Data is generated from a fixed seed, so runs on
+// the same machine are comparable.
+//
+// This is a plain main, not a JMH harness: by default all cases share one
+// JVM, so a case can be helped or hurt by what the JIT and the GC learned
+// from the cases before it. With -fork every case runs in a fresh JVM (same
+// class path and JVM options), which is slower but keeps cases independent.
+// Numbers are for comparing changes on one machine, not absolute figures.
+//
+// Usage (from the directory holding the compiled classes):
+//   javac -d out *.java
+//   java -cp out Benchmark [-fork] [case name filter] [row counts]
+//   java -cp out Benchmark                        all cases, 1K to 1M rows
+//   java -cp out Benchmark readBookings 1000000,10000000
+//   java -cp out Benchmark -fork BookingStore     matching cases, one JVM each
+// A filter starting with "=" must match the case name exactly.
+public class Benchmark {
+
+    // Rounds run before / during measurement
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Default data set sizes
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000};
+
+    // Results are written here so the JIT cannot drop the work
+    static volatile long sink;
+
+    // A benchmark: setUp prepares the data, run does one round and returns how many operations it did
+    interface Case {
+        void setUp(int rows) throws Exception;
+        long run() throws Exception;
+    }
+
+    // All cases by name, in the order they are run
+    static final Map<String, Case> CASES = new LinkedHashMap<>();
+
+    // Directory for generated files (deleted on exit)
+    static Path dataDir;
+
+    public static void main(String[] args) throws Exception {
+        boolean fork = args.length > 0 && args[0].equals("-fork");
+        if (fork) args = Arrays.copyOfRange(args, 1, args.length);
+        String filter = args.length > 0 ? args[0] : "";
+        String sizeList = args.length > 1 ? args[1] : null;
+        int[] sizes = sizeList != null
+                ? Arrays.stream(sizeList.split(",")).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SIZES;
+
+        registerCases();
+        if (fork) {
+            forkCases(filter, sizeList);
+            return;
+        }
+        dataDir = Files.createTempDirectory("hotel-bench");
+
+        System.out.printf("%-32s %10s %14s %14s%n", "case", "rows", "us/op", "ops/s");
+        for (Map.Entry<String, Case> e : CASES.entrySet()) {
+            if (!selected(e.getKey(), filter)) continue;
+            for (int rows : sizes) {
+                measure(e.getKey(), e.getValue(), rows);
+            }
+        }
+
+        for (File f : dataDir.toFile().listFiles()) f.delete();
+        dataDir.toFile().delete();
+    }
+
+    // "=name" selects one case by its exact name, anything else every case containing it
+    private static boolean selected(String name, String filter) {
+        return filter.startsWith("=") ? name.equals(filter.substring(1)) : name.contains(filter);
+    }
+
+    // Runs every selected case in a new JVM, one after the other
+    private static void forkCases(String filter, String sizeList) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        for (String name : CASES.keySet()) {
+            if (!selected(name, filter)) continue;
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("Benchmark");
+            command.add("=" + name);
+            if (sizeList != null) command.add(sizeList);
+            int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exit != 0) throw new IllegalStateException(name + " failed with exit code " + exit);
+        }
+    }
+
+    // Runs one case at one size and prints the median round
+    private static void measure(String name, Case c, int rows) throws Exception {
+        c.setUp(rows);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            c.run();
+        }
+
+        double[] nanosPerOp = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            long ops = c.run();
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / Math.max(1, ops);
+        }
+        Arrays.sort(nanosPerOp);
+        double median = nanosPerOp[MEASURED_ROUNDS / 2];
+
+        System.out.printf("%-32s %10d %14.3f %14.0f%n", name, rows, median / 1000, 1e9 / median);
+    }
+
+    // ======================
+    // Cases
+    // ======================
+
+    private static void registerCases() {
+
+        // Looks up random existing booking IDs
+        CASES.put("BookingService.findBooking", new Case() {
+            BookingService service;
+            String[] ids;
+
+            public void setUp(int rows) {
+                service = new BookingService(bookings(rows));
+                ids = sampleIDs(rows, 10_000);
+            }
+
+            public long run() {
+                long found = 0;
+                for (String id : ids) {
+                    if (service.findBooking(id) != null) found++;
+                }
+                sink = found;
+                return ids.length;
+            }
+        });
+
+        // Guest searches as typed at the desk: prefix, typo and two-word queries (one op = one search)
+        CASES.put("BookingService.searchGuests", new Case() {
+            final String[] queries = {"sm", "smi", "garica", "jane doe", "santso", "l"};
+            BookingService service;
+
+            public void setUp(int rows) {
+                service = new BookingService(bookings(rows));
+                service.indexGuests();
+            }
+
+            public long run() {
+                for (String q : queries) {
+                    sink += service.searchGuests(q, 10_000).size();
+                }
+                return queries.length;
+            }
+        });
+
+        // Pages of 100 bookings: by check-in day (date index), by surname
+        // (top-K heap) and paid stays in one month (one op = one page)
+        CASES.put("BookingService.query", new Case() {
+            final List<BookingQuery> queries = new ArrayList<>();
+            BookingService service;
+
+            public void setUp(int rows) {
+                service = new BookingService(bookings(rows));
+                queries.clear();
+
+                BookingQuery byCheckIn = new BookingQuery();
+                byCheckIn.setSort(BookingQuery.SortKey.START_DATE, true);
+                byCheckIn.setPage(500, 100);
+                queries.add(byCheckIn);
+
+                BookingQuery bySurname = new BookingQuery();
+                bySurname.setSort(BookingQuery.SortKey.SURNAME, false);
+                bySurname.setPage(0, 100);
+                queries.add(bySurname);
+
+                BookingQuery paidInMonth = new BookingQuery();
+                paidInMonth.setStatus(BookingStatus.PAID);
+                paidInMonth.setOverlapping(LocalDate.of(2025, 3, 1), LocalDate.of(2025, 4, 1));
+                paidInMonth.setSort(BookingQuery.SortKey.PARTY_SIZE, true);
+                paidInMonth.setPage(0, 100);
+                queries.add(paidInMonth);
+                service.query(byCheckIn);
+            }
+
+            public long run() {
+                for (BookingQuery q : queries) {
+                    sink += service.query(q).getTotal();
+                }
+                return queries.size();
+            }
+        });
+
+        // Creates 10,000 new bookings on top of the data set (removed again after the round)
+        CASES.put("BookingService.createBooking", new Case() {
+            BookingService service;
+            int round;
+
+            public void setUp(int rows) {
+                service = new BookingService(bookings(rows));
+            }
+
+            public long run() {
+                String prefix = "NEW-" + (round++) + "-";
+                for (int i = 0; i < 10_000; i++) {
+                    service.createBooking(prefix + i, "Doe", "", "Jane", 2,
+                                          "2026-01-10", "2026-01-12", "PAID");
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    service.deleteBooking(prefix + i);
+                }
+                return 10_000;
+            }
+        });
+
+        // Imports the same 10,000 bookings as one batch (removed again after the round)
+        CASES.put("BookingService.createBookings", new Case() {
+            BookingService service;
+            int round;
+
+            public void setUp(int rows) {
+                service = new BookingService(bookings(rows));
+            }
+
+            public long run() {
+                String prefix = "NEW-" + (round++) + "-";
+                LocalDate start = LocalDate.of(2026, 1, 10);
+                List<Booking> batch = new ArrayList<>(10_000);
+                for (int i = 0; i < 10_000; i++) {
+                    batch.add(new Booking(prefix + i, "Doe", "Jane", "", 2,
+                                          start, start.plusDays(2), "PAID"));
+                }
+                service.createBookings(batch);
+                for (int i = 0; i < 10_000; i++) {
+                    service.deleteBooking(prefix + i);
+                }
+                return 10_000;
+            }
+        });
+
+        // Lists the available rooms (100 times per round)
+        CASES.put("RoomService.getAvailableRooms", new Case() {
+            RoomService service;
+
+            public void setUp(int rows) {
+                service = new RoomService(rooms(rows));
+            }
+
+            public long run() {
+                long rooms = 0;
+                for (int i = 0; i < 100; i++) {
+                    rooms += service.getAvailableRooms().size();
+                }
+                sink = rooms;
+                return 100;
+            }
+        });
+
+        // Looks up random existing unit numbers
+        CASES.put("RoomService.findRoom", new Case() {
+            RoomService service;
+            int[] units;
+
+            public void setUp(int rows) {
+                service = new RoomService(rooms(rows));
+                Random random = new Random(7);
+                units = new int[10_000];
+                for (int i = 0; i < units.length; i++) {
+                    units[i] = 1 + random.nextInt(rows);
+                }
+            }
+
+            public long run() {
+                long found = 0;
+                for (int unit : units) {
+                    if (service.rowOfUnit(unit) >= 0) found++;
+                }
+                sink = found;
+                return units.length;
+            }
+        });
+
+        // Counts rooms for 4+ guests priced 1,500 to 2,500 (one op = one room scanned)
+        CASES.put("RoomService.capacity+price scan", new Case() {
+            RoomService service;
+
+            public void setUp(int rows) {
+                service = new RoomService(rooms(rows));
+            }
+
+            public long run() {
+                long matches = 0;
+                synchronized (service) {
+                    for (int row = service.nextRoomWithCapacity(0, 4); row >= 0;
+                         row = service.nextRoomWithCapacity(row + 1, 4)) {
+                        double price = service.priceAt(row);
+                        if (price >= 1500 && price <= 2500) matches++;
+                    }
+                    sink = matches;
+                    return service.getRoomCount();
+                }
+            }
+        });
+
+        // Places rows bookings over 90 days into rows / 5 rooms (one op = one whole allocation)
+        CASES.put("RoomAllocator.allocate", new Case() {
+            RoomAllocator allocator;
+            List<Booking> group;
+
+            public void setUp(int rows) {
+                allocator = new RoomAllocator(new RoomService(rooms(Math.max(10, rows / 5))), null);
+                Random random = new Random(42);
+                LocalDate base = LocalDate.of(2026, 1, 1);
+                group = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    LocalDate start = base.plusDays(random.nextInt(90));
+                    group.add(new Booking("GRP-" + i, "Doe", "Jane", "", 1 + random.nextInt(6),
+                                          start, start.plusDays(1 + random.nextInt(7)), "PAID"));
+                }
+            }
+
+            public long run() {
+                sink = allocator.allocate(group, RoomAllocator.Goal.LEAST_UNUSED_CAPACITY).getPlaced();
+                return 1;
+            }
+        });
+
+        // 365-day occupancy report right after a booking change (one op = change + report)
+        CASES.put("OccupancyAnalytics.report", new Case() {
+            OccupancyAnalytics analytics;
+            BookingService bookingService;
+            String changed;
+
+            public void setUp(int rows) {
+                analytics = analytics(rows);
+                bookingService = lastBookingService;
+                changed = sampleIDs(rows, 1)[0];
+            }
+
+            public long run() {
+                LocalDate from = LocalDate.of(2024, 1, 1);
+                long sold = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    bookingService.updateBookingStatus(changed, i % 2 == 0 ? "REFUNDED" : "PAID");
+                    sold += analytics.report(from, from.plusDays(365)).getRoomNightsSold();
+                }
+                sink = sold;
+                return 10_000;
+            }
+        });
+
+        // Rebuilds all per-day totals with the parallel stream (one op = one booking)
+        CASES.put("OccupancyAnalytics.recompute", new Case() {
+            OccupancyAnalytics analytics;
+            int rows;
+
+            public void setUp(int rows) {
+                this.rows = rows;
+                analytics = analytics(rows);
+            }
+
+            public long run() {
+                analytics.recompute();
+                return rows;
+            }
+        });
+
+        // Quotes a 14-night stay for up to 500 rooms (one op = one room's quote)
+        CASES.put("PricingEngine.quote", new Case() {
+            final LocalDate from = LocalDate.of(2025, 3, 1);
+            final LocalDate bookedOn = LocalDate.of(2025, 1, 15);
+            PricingEngine pricing;
+            int units;
+
+            public void setUp(int rows) {
+                OccupancyAnalytics analytics = analytics(rows);
+                pricing = new PricingEngine(lastRoomService, analytics);
+                units = Math.min(500, lastRoomService.getRoomCount());
+            }
+
+            public long run() {
+                long cents = 0;
+                for (int unit = 1; unit <= units; unit++) {
+                    cents += (long) (pricing.quote(unit, from, from.plusDays(14), bookedOn).getTotal() * 100);
+                }
+                sink = cents;
+                return units;
+            }
+        });
+
+        // Reads a generated booking.csv (one op = one row)
+        CASES.put("ReadBooking.readBookings", new Case() {
+            String path;
+            int rows;
+
+            public void setUp(int rows) throws IOException {
+                this.rows = rows;
+                path = bookingFile(rows);
+            }
+
+            public long run() {
+                sink = ReadBooking.readBookings(path).size();
+                return rows;
+            }
+        });
+
+        // Heap kept per loaded booking, with shared names/dates (as ReadBooking loads them)
+        // and with a private copy of every name and date (as before NameDictionary);
+        // the time is ReadBooking.readBookings again (one op = one row)
+        CASES.put("ReadBooking heap per booking", new Case() {
+            String path;
+            int rows;
+
+            public void setUp(int rows) throws Exception {
+                this.rows = rows;
+                path = bookingFile(rows);
+
+                long before = usedHeap();
+                List<Booking> shared = ReadBooking.readBookings(path);
+                long sharedBytes = usedHeap() - before;
+
+                before = usedHeap();
+                List<Booking> copies = new ArrayList<>(shared.size());
+                for (Booking b : shared) {
+                    copies.add(new Booking(new String(b.getBookingID()), new String(b.getSurname()),
+                                           new String(b.getFirstName()), new String(b.getMiddleName()),
+                                           b.getPartySize(), LocalDate.ofEpochDay(b.getStartDate().toEpochDay()),
+                                           LocalDate.ofEpochDay(b.getEndDate().toEpochDay()), b.getStatus()));
+                }
+                long copyBytes = usedHeap() - before;
+
+                System.out.printf("# heap per booking: %d bytes shared, %d bytes with private copies%n",
+                                  sharedBytes / rows, copyBytes / rows);
+                sink = shared.size() + copies.size();
+            }
+
+            public long run() {
+                sink = ReadBooking.readBookings(path).size();
+                return rows;
+            }
+        });
+
+        // Reads the same data set from a binary snapshot (one op = one row)
+        CASES.put("BookingSnapshot.read", new Case() {
+            String path;
+            int rows;
+
+            public void setUp(int rows) throws IOException {
+                this.rows = rows;
+                path = snapshotFile(rows);
+                System.out.printf("# on disk: booking.csv %,d bytes, binary snapshot %,d bytes%n",
+                                  Files.size(Paths.get(bookingFile(rows))), Files.size(Paths.get(path)));
+            }
+
+            public long run() throws IOException {
+                sink = BookingSnapshot.read(path).size();
+                return rows;
+            }
+        });
+
+        // Reads a generated rooms.csv (one op = one row)
+        CASES.put("ReadRooms.readRooms", new Case() {
+            String path;
+            int rows;
+
+            public void setUp(int rows) throws IOException {
+                this.rows = rows;
+                path = roomFile(rows);
+            }
+
+            public long run() {
+                sink = ReadRooms.readRooms(path).size();
+                return rows;
+            }
+        });
+
+        // Writes the whole data set as booking.csv (one op = one row)
+        CASES.put("WriteBooking.saveBooking", new Case() {
+            List<Booking> data;
+            String path;
+
+            public void setUp(int rows) {
+                data = bookings(rows);
+                path = dataDir.resolve("save-" + rows + ".csv").toString();
+            }
+
+            public long run() {
+                WriteBooking.saveBooking(path, data);
+                return data.size();
+            }
+        });
+
+        // Writes rows rooms as rooms.csv (one op = one row)
+        CASES.put("WriteRoom.saveRoom", new Case() {
+            List<Room> data;
+            String path;
+
+            public void setUp(int rows) {
+                data = rooms(rows);
+                path = dataDir.resolve("rooms-" + rows + ".csv").toString();
+            }
+
+            public long run() {
+                WriteRoom.saveRoom(path, data);
+                return data.size();
+            }
+        });
+
+        // Writes the whole data set as a binary snapshot (one op = one row)
+        CASES.put("BookingSnapshot.write", new Case() {
+            List<Booking> data;
+            String path;
+
+            public void setUp(int rows) {
+                data = bookings(rows);
+                path = dataDir.resolve("save-" + rows + ".bin").toString();
+            }
+
+            public long run() throws IOException {
+                BookingSnapshot.write(path, data);
+                return data.size();
+            }
+        });
+
+        // Looks up random booking IDs in the database file (one op = one lookup)
+        CASES.put("HotelDatabase.bookings.find", new Case() {
+            HotelDatabase db;
+            String[] ids;
+
+            public void setUp(int rows) throws IOException {
+                if (db != null) db.close();
+                db = database(rows);
+                ids = sampleIDs(rows, 10_000);
+            }
+
+            public long run() throws IOException {
+                long found = 0;
+                for (String id : ids) {
+                    if (db.bookings().find(id) != null) found++;
+                }
+                sink = found;
+                return ids.length;
+            }
+        });
+
+        // Saves random existing bookings with a new status, committed once per round (one op = one save)
+        CASES.put("HotelDatabase.bookings.save", new Case() {
+            HotelDatabase db;
+            List<Booking> changed;
+
+            public void setUp(int rows) throws IOException {
+                if (db != null) db.close();
+                db = database(rows);
+                changed = new ArrayList<>();
+                for (String id : sampleIDs(rows, 10_000)) {
+                    Booking b = db.bookings().find(id);
+                    b.setStatus(BookingStatus.REFUNDED);
+                    changed.add(b);
+                }
+            }
+
+            public long run() throws IOException {
+                for (Booking b : changed) {
+                    db.bookings().save(b);
+                }
+                db.bookings().flush();
+                return changed.size();
+            }
+        });
+
+        // Generates booking IDs on one thread
+        CASES.put("GenerateID.generateID", new Case() {
+            public void setUp(int rows) {
+                new BookingService(bookings(rows));
+            }
+
+            public long run() {
+                long length = 0;
+                for (int i = 0; i < 100_000; i++) {
+                    length += GenerateID.generateID().length();
+                }
+                sink = length;
+                return 100_000;
+            }
+        });
+
+        // Generates booking IDs on 64 threads and fails if any ID repeats
+        CASES.put("GenerateID.generateID/64 threads", new Case() {
+            public void setUp(int rows) {
+                new BookingService(bookings(rows));
+            }
+
+            public long run() throws InterruptedException {
+                int threads = 64;
+                int perThread = 10_000;
+                Set<String> ids = ConcurrentHashMap.newKeySet(threads * perThread);
+
+                Thread[] workers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    workers[t] = new Thread(() -> {
+                        for (int i = 0; i < perThread; i++) {
+                            ids.add(GenerateID.generateID());
+                        }
+                    });
+                    workers[t].start();
+                }
+                for (Thread w : workers) w.join();
+
+                if (ids.size() != threads * perThread) {
+                    throw new IllegalStateException("Duplicate booking IDs: "
+                            + (threads * perThread - ids.size()));
+                }
+                return threads * perThread;
+            }
+        });
+    }
+
+    // ======================
+    // Generated data
+    // ======================
+
+    private static final String[] SURNAMES = {"Doe", "Smith", "Reyes", "Garcia", "Santos", "Cruz", "Tan", "Lim"};
+    private static final String[] FIRST_NAMES = {"John", "Jane", "Maria", "Jose", "Ana", "Mark", "Liza", "Paolo"};
+    private static final String[] STATUSES = {"PAID", "PENDING PAYMENT", "REFUNDED"};
+    private static final String[] ROOM_STATUSES = {"Available", "Occupied", "Maintenance"};
+
+    // Builds rows bookings with IDs BKT-1-010126 ... BKT-rows-010126
+    static List<Booking> bookings(int rows) {
+        Random random = new Random(42);
+        LocalDate base = LocalDate.of(2020, 1, 1);
+        List<Booking> list = new ArrayList<>(rows);
+        for (int i = 1; i <= rows; i++) {
+            LocalDate start = base.plusDays(random.nextInt(3650));
+            list.add(new Booking("BKT-" + i + "-010126",
+                                 SURNAMES[random.nextInt(SURNAMES.length)],
+                                 FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                                 random.nextInt(3) == 0 ? "A" : "",
+                                 1 + random.nextInt(6),
+                                 start,
+                                 start.plusDays(1 + random.nextInt(7)),
+                                 STATUSES[random.nextInt(STATUSES.length)]));
+        }
+        return list;
+    }
+
+    // Builds rows rooms numbered from 1
+    static List<Room> rooms(int rows) {
+        Random random = new Random(42);
+        List<Room> list = new ArrayList<>(rows);
+        for (int i = 1; i <= rows; i++) {
+            list.add(new Room(i, 1 + random.nextInt(6),
+                              ROOM_STATUSES[random.nextInt(ROOM_STATUSES.length)],
+                              null, 1000 + 100 * random.nextInt(30)));
+        }
+        return list;
+    }
+
+    // Rooms and bookings behind the last analytics(rows) call
+    static RoomService lastRoomService;
+    static BookingService lastBookingService;
+
+    // Builds analytics over rows bookings, spread over rows / 10 rooms wherever they fit
+    static OccupancyAnalytics analytics(int rows) {
+        RoomService roomService = new RoomService(rooms(Math.max(10, rows / 10)));
+        BookingService bookingService = new BookingService(bookings(rows));
+        AvailabilityEngine engine = new AvailabilityEngine(roomService, bookingService);
+        int units = roomService.getRoomCount();
+        int unit = 0;
+        for (Booking b : bookingService.getBookingSnapshot()) {
+            engine.reserve(1 + unit++ % units, b);
+        }
+        lastRoomService = roomService;
+        lastBookingService = bookingService;
+        return new OccupancyAnalytics(roomService, bookingService);
+    }
+
+    // Heap in use after a few full collections (good enough to compare data set sizes)
+    static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Picks count random booking IDs out of a data set of rows bookings
+    static String[] sampleIDs(int rows, int count) {
+        Random random = new Random(7);
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = "BKT-" + (1 + random.nextInt(rows)) + "-010126";
+        }
+        return ids;
+    }
+
+    // Writes (once) and returns a generated booking.csv with rows rows
+    static String bookingFile(int rows) throws IOException {
+        Path path = dataDir.resolve("booking-" + rows + ".csv");
+        if (!Files.exists(path)) {
+            try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                out.write(WriteBooking.HEADER);
+                out.newLine();
+                for (Booking b : bookings(rows)) {
+                    out.write(WriteBooking.toCsvLine(b));
+                    out.newLine();
+                }
+            }
+        }
+        return path.toString();
+    }
+
+    // Writes (once) and returns a binary snapshot of the same data as bookingFile(rows)
+    static String snapshotFile(int rows) throws IOException {
+        Path path = dataDir.resolve("booking-" + rows + ".bin");
+        if (!Files.exists(path)) {
+            BookingSnapshot.write(path.toString(), bookings(rows));
+        }
+        return path.toString();
+    }
+
+    // Opens a database file holding the same bookings as bookingFile(rows), writing it once
+    static HotelDatabase database(int rows) throws IOException {
+        HotelDatabase db = HotelDatabase.open(dataDir.resolve("hotel-" + rows + ".db").toString());
+        if (db.isNew()) {
+            for (Booking b : bookings(rows)) {
+                db.bookings().save(b);
+            }
+            db.bookings().flush();
+        }
+        return db;
+    }
+
+    // Writes (once) and returns a generated rooms.csv with rows rows
+    static String roomFile(int rows) throws IOException {
+        Path path = dataDir.resolve("rooms-" + rows + ".csv");
+        if (!Files.exists(path)) {
+            try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                out.write("UnitNumber,UnitCapacity,UnitStatus,BookingID,BasePrice");
+                out.newLine();
+                for (Room r : rooms(rows)) {
+                    out.write(r.getUnitNumber() + "," + r.getUnitCapacity() + "," + r.getUnitStatus()
+                              + ",," + (int) r.getBasePrice());
+                    out.newLine();
+                }
+            }
+        }
+        return path.toString();
+    }
+}
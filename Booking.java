@@ -26,11 +26,20 @@ public class Booking {
     private LocalDate endDate;
 
     // Booking status (PENDING PAYMENT, PAID, REFUNDED)
-    private String status;
+    private BookingStatus status;
+
+    // Unit the booking was assigned to (0 = none yet; see AvailabilityEngine)
+    private int unit;
 
     // Constructor initializes all booking details
     public Booking(String bookingID, String surname, String firstName,
                    String middleName, int partySize, LocalDate startDate, LocalDate endDate, String status) {
+        this(bookingID, surname, firstName, middleName, partySize, startDate, endDate, BookingStatus.parse(status));
+    }
+
+    // Same, with the status already parsed
+    public Booking(String bookingID, String surname, String firstName,
+                   String middleName, int partySize, LocalDate startDate, LocalDate endDate, BookingStatus status) {
 
         // Assign constructor parameters to class fields
         this.bookingID = bookingID;
@@ -55,11 +64,17 @@ public class Booking {
     public int getPartySize() { return partySize; }
     public LocalDate getStartDate() { return startDate; }
     public LocalDate getEndDate() { return endDate; }
-    public String getStatus() { return status; }
+    public String getStatus() { return status.getLabel(); }
+    public BookingStatus getBookingStatus() { return status; }
+    public int getUnit() { return unit; }
 
     // ======================
     // Setter methods
-    // Used to modify private fields
+    // Only for bookings that are not stored yet: the booking ID, dates,
+    // status and names of a stored booking are keys of BookingStore's
+    // indexes and listeners, so a stored booking is changed through
+    // BookingService (a status with updateBookingStatus, a unit through
+    // AvailabilityEngine, anything else by upsertBooking with a new object)
     // ======================
 
     public void setBookingID(String bookingID) { this.bookingID = bookingID; }
@@ -69,7 +84,9 @@ public class Booking {
     public void setPartySize(int partySize) { this.partySize = partySize; }
     public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
     public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
-    public void setStatus(String status) { this.status = status; }
+    public void setStatus(String status) { this.status = BookingStatus.parse(status); }
+    public void setStatus(BookingStatus status) { this.status = status; }
+    public void setUnit(int unit) { this.unit = unit; }
 
     // Converts booking data into a String array
     // Used for displaying booking details in a JTable row
@@ -82,7 +99,7 @@ public class Booking {
                 String.valueOf(partySize),
                 startDate.toString(),
                 endDate.toString(),
-                status
+                status.getLabel()
         };
     }
 }
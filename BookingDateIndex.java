@@ -0,0 +1,123 @@
+// Sorted maps of the bookings by check-in and check-out day
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+// Bookings sorted by check-in day and by check-out day, for BookingQuery
+//
+// Each map goes from an epoch day to the bookings starting (or ending) that
+// day, so a date-sorted page walks the map in order and stops as soon as the
+// page is full, and a date-range filter only looks at the days in range.
+// The longest stay seen is remembered so "overlaps [from, to)" can be turned
+// into a check-in range: a booking overlapping the range checked in no
+// earlier than from minus the longest stay.
+//
+// The index listens to the booking store, so every change keeps it up to date.
+class BookingDateIndex implements BookingListener {
+
+    // Within one day, bookings are visited in booking ID order
+    private static final Comparator<Booking> BY_ID = Comparator.comparing(Booking::getBookingID);
+
+    // epoch day -> bookings checking in / out that day
+    private final TreeMap<Long, List<Booking>> byStart = new TreeMap<>();
+    private final TreeMap<Long, List<Booking>> byEnd = new TreeMap<>();
+
+    // Longest stay seen so far, in nights (never shrinks)
+    private long maxNights;
+
+    // Indexes the bookings already in the store and follows every later change
+    BookingDateIndex(BookingStore store) {
+        synchronized (store) {
+            for (Booking b : store) {
+                add(b);
+            }
+            store.addListener(this);
+        }
+    }
+
+    synchronized long maxNights() {
+        return maxNights;
+    }
+
+    /**
+     * Visits the bookings whose check-in (or, with byEndDate, check-out) day
+     * is in [fromDay, toDay), day by day in ascending or descending order,
+     * until the visitor returns false.
+     */
+    synchronized void scan(boolean byEndDate, long fromDay, long toDay, boolean descending,
+                           Predicate<Booking> visitor) {
+        if (fromDay >= toDay) return;
+        NavigableMap<Long, List<Booking>> days = (byEndDate ? byEnd : byStart).subMap(fromDay, true, toDay, false);
+        if (descending) days = days.descendingMap();
+
+        for (List<Booking> day : days.values()) {
+            List<Booking> sorted = new ArrayList<>(day);
+            sorted.sort(descending ? BY_ID.reversed() : BY_ID);
+            for (Booking b : sorted) {
+                if (!visitor.test(b)) return;
+            }
+        }
+    }
+
+    // Adds the bookings checking in on a day in [fromDay, toDay) to out, in no particular order
+    synchronized void collectByStart(long fromDay, long toDay, List<Booking> out) {
+        if (fromDay >= toDay) return;
+        for (List<Booking> day : byStart.subMap(fromDay, true, toDay, false).values()) {
+            out.addAll(day);
+        }
+    }
+
+    // ======================
+    // BookingListener methods
+    // Called inside the store's lock, in the order the changes happen
+    // ======================
+
+    @Override
+    public synchronized void bookingAdded(int row, Booking booking) {
+        add(booking);
+    }
+
+    @Override
+    public synchronized void bookingRemoved(int row, Booking booking) {
+        remove(booking);
+    }
+
+    @Override
+    public synchronized void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        remove(oldBooking);
+        add(newBooking);
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    private void add(Booking b) {
+        long start = b.getStartDate().toEpochDay();
+        long end = b.getEndDate().toEpochDay();
+        byStart.computeIfAbsent(start, d -> new ArrayList<>(2)).add(b);
+        byEnd.computeIfAbsent(end, d -> new ArrayList<>(2)).add(b);
+        maxNights = Math.max(maxNights, end - start);
+    }
+
+    private void remove(Booking b) {
+        remove(byStart, b.getStartDate().toEpochDay(), b);
+        remove(byEnd, b.getEndDate().toEpochDay(), b);
+    }
+
+    private static void remove(Map<Long, List<Booking>> index, long day, Booking b) {
+        List<Booking> bookings = index.get(day);
+        if (bookings == null) return;
+        for (int i = 0; i < bookings.size(); i++) {
+            if (bookings.get(i) == b) {
+                bookings.remove(i);
+                break;
+            }
+        }
+        if (bookings.isEmpty()) index.remove(day);
+    }
+}
@@ -0,0 +1,75 @@
+// Lists for the row errors
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Result of a batch booking import: how many bookings were created, or why not
+//
+// A batch is all-or-nothing: if any row has an error, no booking is created
+// and every problem found is listed with its row number (0-based position
+// in the batch) so the whole file can be fixed in one go.
+public class BookingImportReport {
+
+    // One problem with one row of the batch
+    public static class RowError {
+        private final int row;
+        private final String bookingID;
+        private final String message;
+
+        RowError(int row, String bookingID, String message) {
+            this.row = row;
+            this.bookingID = bookingID;
+            this.message = message;
+        }
+
+        public int getRow() { return row; }
+        public String getBookingID() { return bookingID; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "Row " + row + (bookingID == null ? "" : " (" + bookingID + ")") + ": " + message;
+        }
+    }
+
+    // Problems found, in the order they were found
+    private final List<RowError> errors = new ArrayList<>();
+
+    // Number of bookings created (0 unless the batch was committed)
+    private int created;
+
+    void addError(int row, String bookingID, String message) {
+        errors.add(new RowError(row, bookingID, message));
+    }
+
+    void setCreated(int created) {
+        this.created = created;
+    }
+
+    // True if the batch was stored
+    public boolean isCommitted() {
+        return errors.isEmpty();
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    // All problems, sorted by row
+    public List<RowError> getErrors() {
+        List<RowError> sorted = new ArrayList<>(errors);
+        sorted.sort(Comparator.comparingInt(RowError::getRow));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    @Override
+    public String toString() {
+        if (isCommitted()) return "Created " + created + " bookings";
+        StringBuilder sb = new StringBuilder("Nothing created, " + errors.size() + " problem(s):");
+        for (RowError e : getErrors()) {
+            sb.append(System.lineSeparator()).append("  ").append(e);
+        }
+        return sb.toString();
+    }
+}
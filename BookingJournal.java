@@ -0,0 +1,537 @@
+// For reading and writing the log files
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Collections used while replaying the log, and the failed writes
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Background writer and compactor threads
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Write-ahead log for booking changes
+//
+// booking.csv is only a snapshot. Every add, replace, status change and
+// delete made through BookingService is appended to a log file as one short
+// line, and a writer thread forces the log to disk once per batch of
+// waiting records (group commit), so saving costs as much as the change.
+// A compactor periodically writes a fresh booking.csv and starts an empty
+// log. On startup, recover() loads the snapshot and replays the log on top.
+//
+// Log lines (same column order as booking.csv):
+//   A,<booking row>            booking added (or replaced if the ID exists)
+//   R,<old bookingID>,<row>    booking replaced
+//   S,<bookingID>,<status>     status changed
+//   U,<bookingID>,<unit>       assigned to another unit (empty = none)
+//   D,<bookingID>              booking deleted
+//   B,<n>                      the next n A lines are one batch (applied all or nothing)
+// Replaying a line twice gives the same result, so a crash during
+// compaction can replay an older log over a newer snapshot safely.
+//
+// The log folded into the latest snapshot is kept as <log>.prev. If
+// booking.csv fails its checksums and the previous snapshot is restored
+// instead (see SnapshotChecksums), that log is replayed first, so the
+// restored snapshot is brought up to date and no saved change is lost.
+//
+// A batch that cannot be written is cut off the log again and reported to
+// the threads whose records were in it (awaitDurable throws); the next
+// batch reopens the log and is written as usual, so one I/O error does not
+// stop the journal. BookingService undoes the changes that failed.
+public class BookingJournal implements BookingListener {
+
+    // Compact when the log has grown past this many bytes
+    private static final long COMPACT_THRESHOLD = 4L * 1024 * 1024;
+
+    // How often the compactor checks the log size
+    private static final long COMPACT_INTERVAL_SECONDS = 60;
+
+    // Marker record telling the writer to start a new log file (real records are never empty)
+    private static final String ROTATE = "";
+
+    // Failed batches remembered for threads that have not asked about them yet
+    private static final int MAX_FAILED_BATCHES = 1000;
+
+    // Time to force a batch to disk, records written, failed writes (see Metrics)
+    private static final Metrics.Histogram FSYNC_TIME = Metrics.histogram("journal.fsync");
+    private static final Metrics.Throughput WRITE = Metrics.throughput("journal.write");
+    private static final Metrics.Counter WRITE_ERRORS = Metrics.counter("journal.write.errors");
+
+    // booking.csv, the log, the log being folded into the next snapshot and
+    // the logs already folded into the current one
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path oldLogPath;
+    private final Path prevLogPath;
+
+    // Records waiting for the writer thread
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+
+    // Sequence number of the last record queued / forced to disk
+    private long queued;
+    private long durable;
+
+    // First and last sequence number each thread queued since it last waited (0 = none)
+    private final ThreadLocal<long[]> lastQueued = ThreadLocal.withInitial(() -> new long[2]);
+
+    // First sequence number of each batch that failed -> the batch
+    private final TreeMap<Long, FailedBatch> failed = new TreeMap<>();
+
+    // Open log file, size of the log, and the writer/compactor threads
+    private FileChannel log;
+    private volatile long logSize;
+    private Thread writer;
+    private ScheduledExecutorService compactor;
+    private BookingService bookingService;
+
+    // Only one compaction runs at a time
+    private final Object compactLock = new Object();
+
+    // Creates a journal for the given snapshot and log files
+    public BookingJournal(String snapshotPath, String logPath) {
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.logPath = Paths.get(logPath);
+        this.oldLogPath = Paths.get(logPath + ".old");
+        this.prevLogPath = Paths.get(logPath + ".prev");
+    }
+
+    /**
+     * Loads the snapshot, replays any log left by the last run and writes the
+     * result as a new snapshot, so the next run starts from an empty log. A
+     * snapshot that cannot be read to the end is an error (writing back part
+     * of it would lose the rest).
+     */
+    public List<Booking> recover() throws IOException {
+        BookingStore store = new BookingStore(BulkBookingLoader.loadAll(snapshotPath.toString()));
+        replayLogs(store);
+        return new ArrayList<>(store);
+    }
+
+    /**
+     * Replays any log left by the last run into a service that already holds
+     * the snapshot rows (for example, streamed in by a background loader), and
+     * writes the result as a new snapshot. Call before attach().
+     */
+    public void replayInto(BookingService service) throws IOException {
+        replayLogs(service.getStore());
+    }
+
+    // Replays the leftover logs in order, then folds them into a new snapshot
+    // (a restored previous snapshot also needs the log folded into the damaged one)
+    private void replayLogs(BookingStore store) throws IOException {
+        Path[] logs = SnapshotChecksums.restoredPrevious(snapshotPath)
+                ? new Path[]{prevLogPath, oldLogPath, logPath}
+                : new Path[]{oldLogPath, logPath};
+        boolean replayed = false;
+        for (Path p : logs) {
+            if (Files.exists(p)) {
+                replay(p, store);
+                replayed = true;
+            }
+        }
+
+        if (replayed) {
+            writeSnapshot(new ArrayList<>(store));
+            retireLogs(logs);
+        }
+    }
+
+    /**
+     * Recovers the bookings, wraps them in a BookingService that logs every
+     * change, and compacts the log when the JVM exits.
+     */
+    public static BookingService openService(String snapshotPath, String logPath) throws IOException {
+        BookingJournal journal = new BookingJournal(snapshotPath, logPath);
+        BookingService service = new BookingService(journal.recover());
+        journal.attach(service);
+        journal.closeOnExit();
+        return service;
+    }
+
+    // Compacts and closes the journal when the JVM exits
+    public void closeOnExit() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "booking-journal-shutdown"));
+    }
+
+    // Starts logging every change made through the service
+    public void attach(BookingService service) throws IOException {
+        this.bookingService = service;
+        openLog();
+
+        writer = new Thread(this::writeLoop, "booking-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "booking-journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (logSize >= COMPACT_THRESHOLD) compact();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        service.setJournal(this);
+        service.addBookingListener(this);
+    }
+
+    /**
+     * Blocks until every record the calling thread has queued is on disk.
+     * Records queued by other threads in the meantime share the same fsync.
+     * Throws an UncheckedIOException if one of the records could not be
+     * written (none of that batch is in the log).
+     */
+    public void awaitDurable() {
+        long[] mine = lastQueued.get();
+        long first = mine[0];
+        long last = mine[1];
+        mine[0] = 0;
+        if (first == 0) return;
+
+        IOException error;
+        synchronized (this) {
+            while (durable < last) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            // Failed batches never overlap, so only the last one starting at or before "last" can hold ours
+            Map.Entry<Long, FailedBatch> batch = failed.floorEntry(last);
+            error = batch != null && batch.getValue().last >= first ? batch.getValue().error : null;
+        }
+        if (error != null) {
+            throw new UncheckedIOException("Booking journal write failed", error);
+        }
+    }
+
+    /**
+     * Writes a fresh snapshot and drops the log records it contains. Records
+     * written while the snapshot is saved go to a new log file.
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            List<Booking> copy;
+
+            // Copy the bookings and cut the log at the same point
+            synchronized (bookingService.getBookings()) {
+                copy = new ArrayList<>(bookingService.getBookings());
+                enqueue(ROTATE);
+            }
+            try {
+                awaitDurable();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // The old log stays until the snapshot holding its records is in place
+            writeSnapshot(copy);
+            retireLogs(oldLogPath);
+        }
+    }
+
+    // Stops logging, compacts and closes the log
+    public void close() throws IOException {
+        if (bookingService == null) return;
+        bookingService.removeBookingListener(this);
+        bookingService.setJournal(null);
+        compactor.shutdownNow();
+
+        compact();
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        Files.deleteIfExists(logPath);
+        bookingService = null;
+    }
+
+    // ======================
+    // BookingListener methods
+    // Called inside BookingService's mutations, so records queue in change order
+    // ======================
+
+    @Override
+    public void bookingAdded(int row, Booking booking) {
+        enqueue("A," + WriteBooking.toCsvLine(booking));
+    }
+
+    // A batch is queued as one record, so it is written and forced to disk in one go
+    @Override
+    public void bookingsAdded(int firstRow, List<Booking> added) {
+        StringBuilder record = new StringBuilder("B,").append(added.size());
+        for (Booking b : added) {
+            record.append("\nA,").append(WriteBooking.toCsvLine(b));
+        }
+        enqueue(record.toString());
+    }
+
+    @Override
+    public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        enqueue("R," + oldBooking.getBookingID() + "," + WriteBooking.toCsvLine(newBooking));
+    }
+
+    @Override
+    public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+        enqueue("S," + booking.getBookingID() + "," + booking.getStatus());
+    }
+
+    @Override
+    public void bookingUnitChanged(int row, Booking booking, int oldUnit) {
+        enqueue("U," + booking.getBookingID() + "," + (booking.getUnit() == 0 ? "" : String.valueOf(booking.getUnit())));
+    }
+
+    @Override
+    public void bookingRemoved(int row, Booking booking) {
+        enqueue("D," + booking.getBookingID());
+    }
+
+    // Queues a record for the writer thread
+    private void enqueue(String record) {
+        long[] mine = lastQueued.get();
+        synchronized (this) {
+            queue.add(record);
+            mine[1] = ++queued;
+            if (mine[0] == 0) mine[0] = mine[1];
+        }
+    }
+
+    // Writer thread: writes everything that is waiting, forces it to disk once, repeats
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                if (queue.isEmpty()) return;
+            }
+            queue.drainTo(batch);
+
+            // Where this batch starts in the current log file
+            long mark = logSize;
+            IOException error = null;
+            try {
+                long start = Metrics.start();
+                long sizeBefore = logSize;
+                StringBuilder text = new StringBuilder();
+                for (String record : batch) {
+                    if (record.isEmpty()) {
+                        flush(text);
+                        rotate();
+                        mark = logSize;
+                    } else {
+                        text.append(record).append('\n');
+                    }
+                }
+                flush(text);
+                long forceStart = FSYNC_TIME.start();
+                log.force(false);
+                FSYNC_TIME.recordSince(forceStart);
+                WRITE.recordSince(start, batch.size(), Math.max(0, logSize - sizeBefore));
+            } catch (IOException e) {
+                WRITE_ERRORS.increment();
+                e.printStackTrace();
+                error = e;
+                repair(mark);
+            }
+
+            synchronized (this) {
+                if (error != null) {
+                    failed.put(durable + 1, new FailedBatch(durable + batch.size(), error));
+                    if (failed.size() > MAX_FAILED_BATCHES) failed.pollFirstEntry();
+                }
+                durable += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    // Writes the pending text to the log
+    private void flush(StringBuilder text) throws IOException {
+        if (text.length() == 0) return;
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+        logSize += bytes.remaining();
+        while (bytes.hasRemaining()) {
+            log.write(bytes);
+        }
+        text.setLength(0);
+    }
+
+    // After a failed write: reopens the log and cuts off whatever part of the
+    // batch reached it, so records reported as failed are never replayed
+    // (if that fails too, the next batch fails and tries again)
+    private void repair(long mark) {
+        try {
+            log.close();
+            openLog();
+            if (logSize > mark) {
+                log.truncate(mark);
+                log.force(false);
+                logSize = mark;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Moves the current log aside for compaction and starts an empty one
+    private void rotate() throws IOException {
+        log.force(false);
+        log.close();
+        Files.move(logPath, oldLogPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openLog();
+    }
+
+    private void openLog() throws IOException {
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logSize = log.size();
+    }
+
+    // Replaces booking.csv (written to a temp file and renamed over it)
+    private void writeSnapshot(List<Booking> bookings) throws IOException {
+        WriteBooking.writeSnapshot(snapshotPath.toString(), bookings);
+    }
+
+    /**
+     * Joins logs whose records are now in booking.csv into <log>.prev (in
+     * order, replacing the one from the last snapshot) and deletes them.
+     */
+    private void retireLogs(Path... logs) throws IOException {
+        Path temp = Paths.get(prevLogPath + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path p : logs) {
+                if (!Files.exists(p)) continue;
+                try (FileChannel in = FileChannel.open(p, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+
+                    // Finish a torn last line, so it cannot run into the next log's first one
+                    ByteBuffer last = ByteBuffer.allocate(1);
+                    if (size > 0 && in.read(last, size - 1) == 1 && last.get(0) != '\n') {
+                        out.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                    }
+                }
+            }
+            out.force(false);
+        }
+        Files.move(temp, prevLogPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path p : logs) {
+            if (!p.equals(prevLogPath)) Files.deleteIfExists(p);
+        }
+    }
+
+    // Applies the records of one log file; a torn last line from a crash is ignored
+    private static void replay(Path path, BookingStore store) throws IOException {
+        String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        try (CsvReader csv = new CsvReader(new StringReader(text))) {
+            while (csv.next()) {
+                try {
+                    String op = csv.getString(0);
+                    if (op.equals("A") && ReadBooking.isRow(csv, 1)) {
+                        upsert(store, ReadBooking.toBooking(csv, 1));
+                    } else if (op.equals("B") && csv.fieldCount() == 2) {
+                        replayBatch(csv, Integer.parseInt(csv.getString(1)), path, store);
+                    } else if (op.equals("R") && ReadBooking.isRow(csv, 2)) {
+                        replace(store, csv.getString(1), ReadBooking.toBooking(csv, 2));
+                    } else if (op.equals("S") && csv.fieldCount() == 3) {
+                        store.setStatus(csv.getString(1), BookingStatus.parse(csv.getString(2)));
+                    } else if (op.equals("U") && csv.fieldCount() == 3) {
+                        store.setUnit(csv.getString(1), csv.isEmpty(2) ? 0 : csv.getInt(2));
+                    } else if (op.equals("D") && csv.fieldCount() == 2) {
+                        store.removeID(csv.getString(1));
+                    } else {
+                        System.out.println("Skipping bad journal line " + csv.lineNumber() + " in " + path);
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("Skipping bad journal line " + csv.lineNumber() + " in " + path);
+                }
+            }
+        }
+    }
+
+    // Reads the n A lines of a batch and applies them only if all of them are there
+    private static void replayBatch(CsvReader csv, int n, Path path, BookingStore store) throws IOException {
+        long first = csv.lineNumber();
+        List<Booking> batch = new ArrayList<>(n);
+        while (batch.size() < n && csv.next()) {
+            if (!csv.getString(0).equals("A") || !ReadBooking.isRow(csv, 1)) break;
+            batch.add(ReadBooking.toBooking(csv, 1));
+        }
+        if (batch.size() < n) {
+            // Cut off by a crash: the batch was never reported as saved
+            System.out.println("Skipping incomplete batch at line " + first + " in " + path);
+            return;
+        }
+        for (Booking b : batch) {
+            upsert(store, b);
+        }
+    }
+
+    // Adds a booking, or replaces the stored booking with the same ID
+    private static void upsert(BookingStore store, Booking b) {
+        Booking old = store.find(b.getBookingID());
+        if (old == null) {
+            store.add(b);
+        } else {
+            store.set(store.indexOf(old), b);
+        }
+    }
+
+    // Replaces a booking keeping its slot (or adds it if the old ID is gone)
+    private static void replace(BookingStore store, String oldID, Booking b) {
+        if (!oldID.equals(b.getBookingID())) {
+            store.removeID(b.getBookingID());
+        }
+        Booking old = store.find(oldID);
+        if (old == null) {
+            upsert(store, b);
+        } else {
+            store.set(store.indexOf(old), b);
+        }
+    }
+
+    // Last sequence number of a failed batch (the first is its key in failed), and why it failed
+    private static final class FailedBatch {
+        final long last;
+        final IOException error;
+
+        FailedBatch(long last, IOException error) {
+            this.last = last;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+// For batches of added bookings
+import java.util.List;
+
+// Callback interface for components that keep their own view of the bookings
+// (indexes, calendars, tables) in step with BookingService.
+//
+// Row numbers are indexes in BookingService.getBookings(). When a booking is
+// removed, the rows after it move up by one (as in a List).
+public interface BookingListener {
+
+    // Called after a booking was appended at the given row
+    default void bookingAdded(int row, Booking booking) { }
+
+    // Called after several bookings were appended in one step, starting at firstRow
+    // (by default they are reported one by one through bookingAdded)
+    default void bookingsAdded(int firstRow, List<Booking> added) {
+        for (int i = 0; i < added.size(); i++) {
+            bookingAdded(firstRow + i, added.get(i));
+        }
+    }
+
+    // Called after the booking at the given row was removed
+    // (the rows after it have moved up by one)
+    default void bookingRemoved(int row, Booking booking) { }
+
+    // Called after the booking at the given row was replaced by another object
+    default void bookingReplaced(int row, Booking oldBooking, Booking newBooking) { }
+
+    // Called after the status of the booking at the given row changed
+    default void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) { }
+
+    // Called after the booking at the given row was assigned another unit (0 = none)
+    default void bookingUnitChanged(int row, Booking booking, int oldUnit) { }
+}
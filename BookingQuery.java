@@ -0,0 +1,260 @@
+// For the date-overlap filter
+import java.time.LocalDate;
+
+// Collections used to build one page
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// One page of bookings: filters, a sort order and offset/limit
+//
+// Set the filters that apply (unset ones match everything), then pass the
+// query to BookingService.query(). Only one page is built:
+//  - sorted by check-in or check-out day, the pre-sorted date index is
+//    walked in order and the walk stops once the page is full
+//  - sorted by anything else, the matches go through a heap holding only
+//    offset + limit bookings, so the whole data set is never sorted
+// Ties are broken by booking ID, so pages never overlap or skip a booking.
+public class BookingQuery {
+
+    // Orders a page can be sorted in (SLOT = the order the table shows)
+    public enum SortKey {
+        SLOT, BOOKING_ID, SURNAME, PARTY_SIZE, START_DATE, END_DATE
+    }
+
+    // Filters (null / 0 = not set)
+    private BookingStatus status;
+    private LocalDate overlapFrom;
+    private LocalDate overlapTo;
+    private int minPartySize;
+    private int maxPartySize;
+    private String surnamePrefix;
+
+    // Sort order and the page wanted
+    private SortKey sortKey = SortKey.SLOT;
+    private boolean descending;
+    private int offset;
+    private int limit = 100;
+
+    // ======================
+    // Setters
+    // ======================
+
+    // Only bookings with this status
+    public void setStatus(BookingStatus status) {
+        this.status = status;
+    }
+
+    // Only bookings staying at least one night in [from, to) (check-out day not included)
+    public void setOverlapping(LocalDate from, LocalDate to) {
+        if ((from == null) != (to == null)) throw new IllegalArgumentException("Need both dates or neither");
+        this.overlapFrom = from;
+        this.overlapTo = to;
+    }
+
+    // Only bookings with min <= party size <= max (0 = no bound)
+    public void setPartySize(int min, int max) {
+        this.minPartySize = min;
+        this.maxPartySize = max;
+    }
+
+    // Only bookings whose surname starts with the prefix (case is ignored)
+    public void setSurnamePrefix(String prefix) {
+        this.surnamePrefix = prefix == null || prefix.trim().isEmpty() ? null : prefix.trim();
+    }
+
+    public void setSort(SortKey key, boolean descending) {
+        this.sortKey = key;
+        this.descending = descending;
+    }
+
+    // Skips the first offset matches and returns at most limit
+    public void setPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("Negative offset or limit");
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+
+    // True if the query has a filter or a sort order other than the table's own
+    public boolean isFiltered() {
+        return status != null || overlapFrom != null || minPartySize > 0 || maxPartySize > 0
+                || surnamePrefix != null || sortKey != SortKey.SLOT || descending;
+    }
+
+    // True if a booking passes every filter that is set
+    public boolean matches(Booking b) {
+        if (status != null && b.getBookingStatus() != status) return false;
+        if (overlapFrom != null && (!b.getStartDate().isBefore(overlapTo) || !b.getEndDate().isAfter(overlapFrom))) {
+            return false;
+        }
+        if (minPartySize > 0 && b.getPartySize() < minPartySize) return false;
+        if (maxPartySize > 0 && b.getPartySize() > maxPartySize) return false;
+        if (surnamePrefix != null) {
+            String s = b.getSurname();
+            if (s == null || !s.regionMatches(true, 0, surnamePrefix, 0, surnamePrefix.length())) return false;
+        }
+        return true;
+    }
+
+    // ======================
+    // Running the query (BookingService.query)
+    // ======================
+
+    // One page of results
+    public static class Page {
+        private final List<Booking> rows;
+        private final int offset;
+        private final int total;
+
+        Page(List<Booking> rows, int offset, int total) {
+            this.rows = rows;
+            this.offset = offset;
+            this.total = total;
+        }
+
+        // The bookings on this page
+        public List<Booking> getRows() { return rows; }
+
+        // Position of the first row among all matches
+        public int getOffset() { return offset; }
+
+        // Number of bookings matching the filters (all pages)
+        public int getTotal() { return total; }
+
+        public boolean hasNext() { return offset + rows.size() < total; }
+    }
+
+    // Builds the page from the store, using the date index where it helps
+    Page run(BookingStore store, BookingDateIndex dates) {
+        if (sortKey == SortKey.START_DATE || sortKey == SortKey.END_DATE) {
+            return walkDates(sortKey == SortKey.END_DATE, store, dates);
+        }
+        if (sortKey == SortKey.SLOT) {
+            return walkSlots(store);
+        }
+        return topK(candidates(store, dates));
+    }
+
+    // Walks the date index in sort order; stops at the end of the page when
+    // the store can count the matches itself, otherwise counts them on the way
+    private Page walkDates(boolean byEndDate, BookingStore store, BookingDateIndex dates) {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        if (overlapFrom != null) {
+            long start = overlapFrom.toEpochDay();
+            long end = overlapTo.toEpochDay();
+            long longest = dates.maxNights();
+
+            // Overlapping stays check in before "to" and check out after "from"
+            from = byEndDate ? start + 1 : start - longest;
+            to = byEndDate ? end + longest : end;
+        }
+
+        // The count and the page come from the same state: the store lock is
+        // taken before the index's, the order the store's events take them in
+        List<Booking> rows = new ArrayList<>(Math.min(limit, 1024));
+        int[] total = new int[1];
+        int known;
+        synchronized (store) {
+            known = storeCount(store);
+            dates.scan(byEndDate, from, to, descending, b -> {
+                if (!matches(b)) return true;
+                if (total[0] >= offset && rows.size() < limit) rows.add(b);
+                total[0]++;
+                return known < 0 || rows.size() < limit;
+            });
+        }
+        return new Page(rows, offset, known >= 0 ? known : total[0]);
+    }
+
+    // Walks the store in slot order (or from the last slot back) under its lock,
+    // no sorting and no copy of the store
+    private Page walkSlots(BookingStore store) {
+        List<Booking> rows = new ArrayList<>(Math.min(limit, 1024));
+        int[] total = new int[1];
+        int known;
+        synchronized (store) {
+            known = storeCount(store);
+            store.scan(descending, b -> {
+                if (!matches(b)) return true;
+                if (total[0] >= offset && rows.size() < limit) rows.add(b);
+                total[0]++;
+                return known < 0 || rows.size() < limit;
+            });
+        }
+        return new Page(rows, offset, known >= 0 ? known : total[0]);
+    }
+
+    // Number of matches if the store can count them without a scan (no filter
+    // or only a status), otherwise -1
+    private int storeCount(BookingStore store) {
+        if (overlapFrom != null || minPartySize > 0 || maxPartySize > 0 || surnamePrefix != null) return -1;
+        return status == null ? store.size() : store.countWithStatus(status);
+    }
+
+    // Keeps the best offset + limit matches in a heap, then sorts just those
+    private Page topK(Iterable<Booking> candidates) {
+        Comparator<Booking> order = comparator();
+        long keep = (long) offset + limit;
+        int total = 0;
+
+        // The heap's head is the worst booking kept, so it is the one pushed out
+        PriorityQueue<Booking> heap = new PriorityQueue<>(order.reversed());
+        for (Booking b : candidates) {
+            if (!matches(b)) continue;
+            total++;
+            if (heap.size() < keep) {
+                heap.add(b);
+            } else if (keep > 0 && order.compare(b, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(b);
+            }
+        }
+
+        List<Booking> best = new ArrayList<>(heap);
+        best.sort(order);
+        List<Booking> rows = offset >= best.size()
+                ? Collections.emptyList()
+                : new ArrayList<>(best.subList(offset, best.size()));
+        return new Page(rows, offset, total);
+    }
+
+    // Smallest set of bookings that can match: a date range, one status, or everything
+    private Iterable<Booking> candidates(BookingStore store, BookingDateIndex dates) {
+        if (overlapFrom != null) {
+            List<Booking> inRange = new ArrayList<>();
+            dates.collectByStart(overlapFrom.toEpochDay() - dates.maxNights(), overlapTo.toEpochDay(), inRange);
+            return inRange;
+        }
+        if (status != null) return store.withStatus(status);
+        return store.snapshot();
+    }
+
+    private Comparator<Booking> comparator() {
+        Comparator<Booking> byKey;
+        switch (sortKey) {
+            case SURNAME:
+                byKey = Comparator.comparing(Booking::getSurname, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+                break;
+            case PARTY_SIZE:
+                byKey = Comparator.comparingInt(Booking::getPartySize);
+                break;
+            case START_DATE:
+                byKey = Comparator.comparing(Booking::getStartDate);
+                break;
+            case END_DATE:
+                byKey = Comparator.comparing(Booking::getEndDate);
+                break;
+            default:
+                byKey = (a, b) -> 0;
+                break;
+        }
+        Comparator<Booking> order = byKey.thenComparing(Booking::getBookingID);
+        return descending ? order.reversed() : order;
+    }
+}
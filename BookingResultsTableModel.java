@@ -0,0 +1,43 @@
+// Base class for Swing table models
+import javax.swing.table.AbstractTableModel;
+
+// List of the bookings found
+import java.util.List;
+
+// Booking table over a fixed list of bookings (the results of a guest search)
+//
+// Cells are read from the Booking objects when drawn, so a status change
+// shows up on the next repaint; which bookings are listed only changes
+// when the search is run again.
+public class BookingResultsTableModel extends AbstractTableModel {
+
+    // Version of the serialized form (models are not actually serialized)
+    private static final long serialVersionUID = 1L;
+
+    // Bookings shown, in result order
+    private final List<Booking> results;
+
+    public BookingResultsTableModel(List<Booking> results) {
+        this.results = results;
+    }
+
+    @Override
+    public int getRowCount() {
+        return results.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return BookingTableModel.COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return BookingTableModel.COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return BookingTableModel.cell(results.get(row), column);
+    }
+}
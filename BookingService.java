@@ -1,30 +1,123 @@
+// For failed saves to the journal or the database
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 // Used for handling dates without time
 import java.time.LocalDate;
 
 // Used for parsing date strings in a specific format
 import java.time.format.DateTimeFormatter;
 
-// Dynamic array implementation
-import java.util.ArrayList;
-
 // List interface for storing bookings
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 // Service class that manages all booking-related operations
 public class BookingService {
 
-    // List that stores all booking objects
-    private final List<Booking> bookings;
+    // Stores all booking objects, indexed by booking ID
+    private final BookingStore bookings;
+
+    // Write-ahead log the changes are saved to (null = changes are not saved)
+    private volatile BookingJournal journal;
+
+    // Database the changes are saved to instead (see HotelDatabase; null = none)
+    private volatile Repository<String, Booking> repository;
+
+    // Guest name index (null until the first search or indexGuests())
+    private GuestSearchIndex guestIndex;
+
+    // Check-in / check-out day index (null until the first query)
+    private BookingDateIndex dateIndex;
 
     // Formatter to parse dates in yyyy-MM-dd format
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    // Latency of each operation (see Metrics)
+    private static final Metrics.Histogram CREATE_TIME = Metrics.histogram("booking.create");
+    private static final Metrics.Histogram ADD_TIME = Metrics.histogram("booking.add");
+    private static final Metrics.Histogram BATCH_TIME = Metrics.histogram("booking.createBatch");
+    private static final Metrics.Histogram FIND_TIME = Metrics.sampledHistogram("booking.find", 128);
+    private static final Metrics.Histogram UPDATE_TIME = Metrics.histogram("booking.update");
+    private static final Metrics.Histogram DELETE_TIME = Metrics.histogram("booking.delete");
+    private static final Metrics.Histogram QUERY_TIME = Metrics.histogram("booking.query");
+
+    // Bookings rejected because of bad input
+    private static final Metrics.Counter CREATE_ERRORS = Metrics.counter("booking.create.errors");
+
     // Constructor receives a list of bookings (usually loaded from CSV)
     public BookingService(List<Booking> bookings) {
-        this.bookings = bookings;
+        this.bookings = new BookingStore(bookings);
+    }
+
+    // Registers a component that must be told about booking changes
+    public void addBookingListener(BookingListener listener) {
+        bookings.addListener(listener);
     }
 
-    // Returns the list of all bookings
+    public void removeBookingListener(BookingListener listener) {
+        bookings.removeListener(listener);
+    }
+
+    // Sets the journal that createBooking/updateBookingStatus/deleteBooking wait for
+    void setJournal(BookingJournal journal) {
+        this.journal = journal;
+    }
+
+    // Sets the database that createBooking/updateBookingStatus/deleteBooking commit to
+    void setRepository(Repository<String, Booking> repository) {
+        this.repository = repository;
+    }
+
+    // Waits until the calling thread's changes are on disk (if a journal or database is attached);
+    // throws an UncheckedIOException if they could not be saved
+    private void awaitSaved() {
+        BookingJournal j = journal;
+        if (j != null) j.awaitDurable();
+        Repository<String, Booking> r = repository;
+        if (r != null) {
+            try {
+                r.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Saving to the database failed", e);
+            }
+        }
+    }
+
+    // Waits until the calling thread's change is on disk; if it could not be
+    // saved, undo puts the store back as it was and the error is thrown, so
+    // memory never holds a change the caller was told failed
+    private void awaitSaved(Runnable undo) {
+        try {
+            awaitSaved();
+        } catch (UncheckedIOException e) {
+            undo.run();
+
+            // Wait for the undo's own records too, so they are not reported with this thread's next change
+            try {
+                awaitSaved();
+            } catch (UncheckedIOException ignored) {
+                // The store is back as it was either way
+            }
+            throw e;
+        }
+    }
+
+    // Returns the store itself (for components that need its slot-level methods)
+    BookingStore getStore() {
+        return bookings;
+    }
+
+    // Returns an immutable copy of all bookings that other desks cannot change under the caller
+    public List<Booking> getBookingSnapshot() {
+        return bookings.snapshot();
+    }
+
+    // Returns the list of all bookings (adds and removes keep the ID index up to date,
+    // and iterating it walks a snapshot)
     public List<Booking> getBookings() {
         return bookings;
     }
@@ -36,6 +129,17 @@ public class BookingService {
     public Booking createBooking(String bookingID, String surname, String middleName,
                                  String firstName, int partySize, String startDateString,
                                  String endDateString, String status) {
+        long start = CREATE_TIME.start();
+        Booking created = create(bookingID, surname, middleName, firstName, partySize,
+                                 startDateString, endDateString, status);
+        CREATE_TIME.recordSince(start);
+        if (created == null) CREATE_ERRORS.increment();
+        return created;
+    }
+
+    private Booking create(String bookingID, String surname, String middleName,
+                           String firstName, int partySize, String startDateString,
+                           String endDateString, String status) {
 
         // Check if booking ID already exists
         if (bookingExists(bookingID)) {
@@ -44,7 +148,7 @@ public class BookingService {
         }
 
         // Validate booking status before creating booking
-        if (!isValidStatus(status)) {
+        if (BookingStatus.fromString(status) == null) {
             System.out.println("Invalid booking status: " + status);
             return null;
         }
@@ -60,12 +164,19 @@ public class BookingService {
             Booking booking = new Booking(bookingID, surname, firstName, middleName,
                                           partySize, startDate, endDate, status);
 
-            // Add booking to the list
-            bookings.add(booking);
+            // Add booking to the list (another desk may have taken the ID meanwhile)
+            if (!addBooking(booking)) {
+                System.out.println("Booking already exists.");
+                return null;
+            }
 
             // Return the newly created booking
             return booking;
 
+        } catch (UncheckedIOException e) {
+
+            // The booking could not be saved (addBooking has taken it out again)
+            throw e;
         } catch (Exception e) {
 
             // Handle invalid date format errors
@@ -75,85 +186,237 @@ public class BookingService {
         }
     }
 
-    // Finds a booking by its booking ID
-    public Booking findBooking(String bookingID) {
-        for (Booking b : bookings) {
-            if (b.getBookingID().equals(bookingID)) {
-                return b;
+    // Adds an already built booking, returns false if its booking ID is taken
+    // (safe to call from several desks at once; its names become the shared copies).
+    // If it cannot be saved it is taken out again and an UncheckedIOException is thrown.
+    public boolean addBooking(Booking booking) {
+        long start = ADD_TIME.start();
+        try {
+            NameDictionary.GUEST_NAMES.internNames(booking);
+            if (!bookings.addIfAbsent(booking)) {
+                return false;
+            }
+            awaitSaved(() -> bookings.remove(booking));
+            return true;
+        } finally {
+            ADD_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Creates a whole batch of bookings (an import), all or nothing.
+     * Every row is checked in one pass (IDs against a hash set of the batch
+     * and the stored IDs, dates, party size); if any row has a problem
+     * nothing is stored and the report lists every problem. Otherwise the
+     * batch is appended in one step and saved with a single journal write
+     * (if that write fails, the batch is taken out again and an
+     * UncheckedIOException is thrown).
+     */
+    public BookingImportReport createBookings(Collection<Booking> batch) {
+        long start = BATCH_TIME.start();
+        try {
+            List<Booking> rows = new ArrayList<>(batch);
+            BookingImportReport report;
+
+            // Checked and added under the store's lock, so no other desk can take an ID in between
+            synchronized (bookings) {
+                report = validate(rows);
+                if (!report.isCommitted()) {
+                    CREATE_ERRORS.increment();
+                    return report;
+                }
+                for (Booking b : rows) {
+                    NameDictionary.GUEST_NAMES.internNames(b);
+                }
+                bookings.addAll(rows);
+            }
+            awaitSaved(() -> {
+                synchronized (bookings) {
+                    for (Booking b : rows) {
+                        bookings.remove(b);
+                    }
+                }
+            });
+            report.setCreated(rows.size());
+            return report;
+        } finally {
+            BATCH_TIME.recordSince(start);
+        }
+    }
+
+    // Checks every row of a batch without storing anything
+    BookingImportReport validate(List<Booking> rows) {
+        BookingImportReport report = new BookingImportReport();
+
+        // bookingID -> first row of the batch that uses it
+        Map<String, Integer> seen = new HashMap<>(rows.size() * 4 / 3 + 1);
+
+        for (int row = 0; row < rows.size(); row++) {
+            Booking b = rows.get(row);
+            if (b == null) {
+                report.addError(row, null, "Missing booking");
+                continue;
+            }
+
+            String id = b.getBookingID();
+            if (id == null || id.trim().isEmpty()) {
+                report.addError(row, id, "Missing booking ID");
+            } else {
+                Integer first = seen.putIfAbsent(id, row);
+                if (first != null) {
+                    report.addError(row, id, "Same booking ID as row " + first);
+                } else if (bookings.containsID(id)) {
+                    report.addError(row, id, "Booking already exists");
+                }
+            }
+
+            if (b.getStartDate() == null || b.getEndDate() == null) {
+                report.addError(row, id, "Missing start or end date");
+            } else if (!b.getEndDate().isAfter(b.getStartDate())) {
+                report.addError(row, id, "End date must be after start date");
+            }
+
+            if (b.getPartySize() <= 0) {
+                report.addError(row, id, "Party size must be at least 1");
+            }
+            if (b.getBookingStatus() == null) {
+                report.addError(row, id, "Missing booking status");
             }
         }
-        return null;
+        return report;
+    }
+
+    // Adds a booking, or replaces the booking with the same ID in its slot
+    // (for reloads of booking.csv); returns false if nothing changed
+    public boolean upsertBooking(Booking booking) {
+        NameDictionary.GUEST_NAMES.internNames(booking);
+        Booking old;
+        synchronized (bookings) {
+            old = bookings.find(booking.getBookingID());
+            if (old == null) {
+                bookings.add(booking);
+            } else if (WriteBooking.toCsvLine(old).equals(WriteBooking.toCsvLine(booking))) {
+                return false;
+            } else {
+                bookings.set(bookings.indexOf(old), booking);
+            }
+        }
+        awaitSaved(() -> {
+            synchronized (bookings) {
+                int row = bookings.indexOf(booking);
+                if (row < 0) return;
+                if (old == null) {
+                    bookings.remove(row);
+                } else {
+                    bookings.set(row, old);
+                }
+            }
+        });
+        return true;
+    }
+
+    // Finds a booking by its booking ID using the hash index
+    public Booking findBooking(String bookingID) {
+        long start = FIND_TIME.start();
+        Booking found = bookings.find(bookingID);
+        FIND_TIME.recordSince(start);
+        return found;
+    }
+
+    // Starts keeping the guest name index: indexes the current bookings once,
+    // then every change updates it (call early to keep the first search fast)
+    public synchronized GuestSearchIndex indexGuests() {
+        if (guestIndex == null) {
+            guestIndex = new GuestSearchIndex(bookings);
+        }
+        return guestIndex;
+    }
+
+    // Finds up to limit bookings by surname, first or middle name: prefix
+    // matches first, then matches with a typo (see GuestSearchIndex)
+    public List<Booking> searchGuests(String query, int limit) {
+        return indexGuests().search(query, limit);
+    }
+
+    // Returns one page of the bookings matching a query (see BookingQuery);
+    // the first query indexes the bookings by date, later changes keep that index up to date
+    public BookingQuery.Page query(BookingQuery query) {
+        long start = QUERY_TIME.start();
+        try {
+            return query.run(bookings, indexDates());
+        } finally {
+            QUERY_TIME.recordSince(start);
+        }
+    }
+
+    private synchronized BookingDateIndex indexDates() {
+        if (dateIndex == null) {
+            dateIndex = new BookingDateIndex(bookings);
+        }
+        return dateIndex;
     }
 
     // Checks if a booking with the given ID already exists
     public boolean bookingExists(String bookingID) {
-        return findBooking(bookingID) != null;
+        return bookings.containsID(bookingID);
     }
 
     // Updates the status of an existing booking
     public boolean updateBookingStatus(String bookingID, String newStatus) {
+        long start = UPDATE_TIME.start();
+        try {
+            // Validate the new status
+            BookingStatus status = BookingStatus.fromString(newStatus);
+            if (status == null) {
+                System.out.println("Invalid status: " + newStatus);
+                return false;
+            }
 
-        // Validate the new status
-        if (!isValidStatus(newStatus)) {
-            System.out.println("Invalid status: " + newStatus);
-            return false;
-        }
-
-        // Find the booking to update
-        Booking booking = findBooking(bookingID);
-        if (booking != null) {
-
-            // Update booking status
-            booking.setStatus(newStatus);
+            // Find and update the booking in one step, so a desk deleting it
+            // meanwhile cannot leave a status change for a booking that is gone
+            // (listeners such as the availability engine are notified)
+            Booking b;
+            BookingStatus oldStatus;
+            synchronized (bookings) {
+                b = bookings.find(bookingID);
+                if (b == null) return false;
+                oldStatus = b.getBookingStatus();
+                bookings.setStatus(b, status);
+            }
+            awaitSaved(() -> bookings.setStatus(b, oldStatus));
             return true;
+        } finally {
+            UPDATE_TIME.recordSince(start);
         }
-        return false;
     }
 
     // Deletes a booking by booking ID
     public boolean deleteBooking(String bookingID) {
-
-        // Find the booking first
-        Booking found = findBooking(bookingID);
-        if (found != null) {
-
-            // Remove booking from the list
-            bookings.remove(found);
+        long start = DELETE_TIME.start();
+        try {
+            // Remove booking from the store by its ID (if that cannot be saved,
+            // it is put back, at the end of the list, unless the ID was taken meanwhile)
+            Booking removed = bookings.removeID(bookingID);
+            if (removed == null) return false;
+            awaitSaved(() -> bookings.addIfAbsent(removed));
             return true;
+        } finally {
+            DELETE_TIME.recordSince(start);
         }
-        return false;
     }
 
     // Returns a list of all bookings with PAID status
     public List<Booking> getPaidBookings() {
-        List<Booking> paid = new ArrayList<>();
-        for (Booking b : bookings) {
-
-            // Check if booking status is PAID
-            if (b.getStatus().equalsIgnoreCase("PAID")) {
-                paid.add(b);
-            }
-        }
-        return paid;
+        return bookings.withStatus(BookingStatus.PAID);
     }
 
     // Returns a list of all bookings with PENDING PAYMENT status
     public List<Booking> getPendingPayments() {
-        List<Booking> pending = new ArrayList<>();
-        for (Booking b : bookings) {
-
-            // Check if booking status is PENDING PAYMENT
-            if (b.getStatus().equalsIgnoreCase("PENDING PAYMENT")) {
-                pending.add(b);
-            }
-        }
-        return pending;
+        return bookings.withStatus(BookingStatus.PENDING_PAYMENT);
     }
 
-    // Validates allowed booking statuses
-    private boolean isValidStatus(String status) {
-        return status.equalsIgnoreCase("PAID")
-            || status.equalsIgnoreCase("PENDING PAYMENT")
-            || status.equalsIgnoreCase("REFUNDED");
+    // Returns the number of bookings with a status in O(1)
+    public int countBookings(BookingStatus status) {
+        return bookings.countWithStatus(status);
     }
 }
@@ -0,0 +1,305 @@
+// For writing the snapshot file
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// For reading the whole file into one buffer
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// For handling dates without time
+import java.time.LocalDate;
+
+// Collections used for the dictionary and the result
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Binary, column-by-column snapshot of the bookings (an alternative to booking.csv)
+//
+// Layout (big-endian):
+//   int magic, int version, int rows
+//   int words, then per word: int byteLength + UTF-8 bytes   (name dictionary)
+//   int[rows + 1] ID offsets, then the UTF-8 bytes of all IDs
+//   int[rows] surname, int[rows] first name, int[rows] middle name   (dictionary indexes, -1 = null)
+//   int[rows] partySize << 8 | status ordinal
+//   int[rows] start epoch day, int[rows] end epoch day              (NO_DATE = null)
+//   int[rows] unit (0 = none; not in version 1 files, which are still read)
+//
+// Names repeat a lot, so each distinct name is stored once and rows only hold
+// its index. Loading reads the whole file with one sequential read and
+// copies every column out with a bulk IntBuffer get; no text is parsed
+// except the IDs. Equal names and dates share one object in the result.
+//
+// Convert with: java BookingSnapshot toBinary booking.csv booking.bin
+//               java BookingSnapshot toCsv booking.bin booking.csv
+public class BookingSnapshot {
+
+    // "HBKS" - marks a booking snapshot file
+    static final int MAGIC = 0x48424B53;
+
+    // Bump when the layout changes (2 added the unit column)
+    static final int VERSION = 2;
+
+    // Stored instead of an epoch day when a date is missing
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    // Read and write speed (see Metrics)
+    private static final Metrics.Throughput READ = Metrics.throughput("snapshot.read");
+    private static final Metrics.Throughput WRITE = Metrics.throughput("snapshot.write");
+
+    // Writes the bookings as a binary snapshot and forces it to disk
+    public static void write(String filePath, List<Booking> bookings) throws IOException {
+        long start = Metrics.start();
+        int rows = bookings.size();
+
+        // Build the name dictionary
+        Map<String, Integer> index = new HashMap<>();
+        List<String> words = new ArrayList<>();
+        int[] surnames = new int[rows];
+        int[] firstNames = new int[rows];
+        int[] middleNames = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            Booking b = bookings.get(i);
+            surnames[i] = wordIndex(b.getSurname(), index, words);
+            firstNames[i] = wordIndex(b.getFirstName(), index, words);
+            middleNames[i] = wordIndex(b.getMiddleName(), index, words);
+        }
+
+        try (FileOutputStream file = new FileOutputStream(filePath);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+
+            // Header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+
+            // Dictionary
+            out.writeInt(words.size());
+            for (String w : words) {
+                byte[] bytes = w.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            // Booking IDs: offsets, then the bytes
+            byte[][] ids = new byte[rows][];
+            int offset = 0;
+            out.writeInt(0);
+            for (int i = 0; i < rows; i++) {
+                ids[i] = bookings.get(i).getBookingID().getBytes(StandardCharsets.UTF_8);
+                offset += ids[i].length;
+                out.writeInt(offset);
+            }
+            for (byte[] id : ids) {
+                out.write(id);
+            }
+
+            // Name columns
+            writeColumn(out, surnames);
+            writeColumn(out, firstNames);
+            writeColumn(out, middleNames);
+
+            // Party size and status packed together
+            for (Booking b : bookings) {
+                out.writeInt(b.getPartySize() << 8 | b.getBookingStatus().ordinal());
+            }
+
+            // Date columns
+            for (Booking b : bookings) {
+                out.writeInt(epochDay(b.getStartDate()));
+            }
+            for (Booking b : bookings) {
+                out.writeInt(epochDay(b.getEndDate()));
+            }
+
+            // Unit column
+            for (Booking b : bookings) {
+                out.writeInt(b.getUnit());
+            }
+
+            // Make sure the data reached the disk
+            out.flush();
+            file.getFD().sync();
+            WRITE.recordSince(start, rows, file.getChannel().size());
+        }
+    }
+
+    // Reads a binary snapshot written by write()
+    public static List<Booking> read(String filePath) throws IOException {
+        long start = Metrics.start();
+        ByteBuffer buf;
+
+        // One sequential read of the whole file
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is too large for a booking snapshot");
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) throw new IOException(filePath + " ended early");
+            }
+            buf.flip();
+        }
+
+        // Header
+        if (buf.remaining() < 12 || buf.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a booking snapshot");
+        }
+        int version = buf.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException(filePath + " has unsupported snapshot version " + version);
+        }
+        int rows = buf.getInt();
+
+        // Dictionary (shared with the names of bookings loaded or added elsewhere)
+        String[] words = new String[buf.getInt()];
+        for (int i = 0; i < words.length; i++) {
+            int length = buf.getInt();
+            words[i] = NameDictionary.GUEST_NAMES.intern(
+                    new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8));
+            buf.position(buf.position() + length);
+        }
+
+        // Booking IDs
+        int[] idOffsets = readColumn(buf, rows + 1);
+        int idStart = buf.position();
+        buf.position(idStart + idOffsets[rows]);
+
+        // Remaining columns
+        int[] surnames = readColumn(buf, rows);
+        int[] firstNames = readColumn(buf, rows);
+        int[] middleNames = readColumn(buf, rows);
+        int[] packed = readColumn(buf, rows);
+        int[] starts = readColumn(buf, rows);
+        int[] ends = readColumn(buf, rows);
+        int[] units = version >= 2 ? readColumn(buf, rows) : new int[rows];
+
+        // Build the bookings
+        BookingStatus[] statuses = BookingStatus.values();
+        DateCache dates = new DateCache(starts, ends);
+        List<Booking> bookings = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String id = new String(buf.array(), idStart + idOffsets[i],
+                                   idOffsets[i + 1] - idOffsets[i], StandardCharsets.UTF_8);
+            Booking b = new Booking(id,
+                                    word(words, surnames[i]),
+                                    word(words, firstNames[i]),
+                                    word(words, middleNames[i]),
+                                    packed[i] >> 8,
+                                    dates.get(starts[i]),
+                                    dates.get(ends[i]),
+                                    statuses[packed[i] & 0xFF]);
+            b.setUnit(units[i]);
+            bookings.add(b);
+        }
+        READ.recordSince(start, rows, buf.capacity());
+        return bookings;
+    }
+
+    // Converts between booking.csv and the binary snapshot
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("toBinary") || args[0].equals("toCsv"))) {
+            System.out.println("Usage: java BookingSnapshot toBinary <booking.csv> <booking.bin>");
+            System.out.println("       java BookingSnapshot toCsv <booking.bin> <booking.csv>");
+            return;
+        }
+
+        List<Booking> bookings;
+        if (args[0].equals("toBinary")) {
+            try (Stream<Booking> rows = ReadBooking.streamBookings(args[1])) {
+                bookings = new ArrayList<>();
+                rows.forEach(bookings::add);
+            }
+            write(args[2], bookings);
+        } else {
+            bookings = read(args[1]);
+            WriteBooking.writeSnapshot(args[2], bookings);
+        }
+        System.out.println("Converted " + bookings.size() + " bookings to " + args[2]);
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // Returns the dictionary index of a name, adding it if new (-1 for null)
+    private static int wordIndex(String word, Map<String, Integer> index, List<String> words) {
+        if (word == null) return -1;
+        Integer i = index.get(word);
+        if (i == null) {
+            i = words.size();
+            index.put(word, i);
+            words.add(word);
+        }
+        return i;
+    }
+
+    private static String word(String[] words, int i) {
+        return i < 0 ? null : words[i];
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static void writeColumn(DataOutputStream out, int[] column) throws IOException {
+        for (int v : column) {
+            out.writeInt(v);
+        }
+    }
+
+    // Copies rows ints out of the buffer and moves past them
+    private static int[] readColumn(ByteBuffer buf, int rows) {
+        int[] column = new int[rows];
+        IntBuffer ints = buf.asIntBuffer();
+        ints.get(column);
+        buf.position(buf.position() + rows * 4);
+        return column;
+    }
+
+    // Hands out one LocalDate per distinct epoch day
+    private static class DateCache {
+
+        // Dates from first to first + cache.length - 1 are cached
+        private final long first;
+        private final LocalDate[] cache;
+
+        DateCache(int[] starts, int[] ends) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int[] column : new int[][]{starts, ends}) {
+                for (int d : column) {
+                    if (d == NO_DATE) continue;
+                    min = Math.min(min, d);
+                    max = Math.max(max, d);
+                }
+            }
+
+            // Only cache a sensible range (dates far apart are just created)
+            boolean useCache = min <= max && max - min < 1 << 20;
+            first = useCache ? min : 0;
+            cache = new LocalDate[useCache ? (int) (max - min + 1) : 0];
+        }
+
+        LocalDate get(int epochDay) {
+            if (epochDay == NO_DATE) return null;
+            long slot = epochDay - first;
+            if (slot < 0 || slot >= cache.length) return LocalDate.ofEpochDay(epochDay);
+            LocalDate date = cache[(int) slot];
+            if (date == null) {
+                date = LocalDate.ofEpochDay(epochDay);
+                cache[(int) slot] = date;
+            }
+            return date;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+// Allowed booking statuses
+//
+// The label is the text used in booking.csv and shown in the UI.
+public enum BookingStatus {
+    PENDING_PAYMENT("PENDING PAYMENT"),
+    PAID("PAID"),
+    REFUNDED("REFUNDED");
+
+    // Text stored in booking.csv
+    private final String label;
+
+    BookingStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // Returns the status for a label (case is ignored), or null if it is not a booking status
+    public static BookingStatus fromString(String text) {
+        if (text == null) return null;
+        for (BookingStatus s : values()) {
+            if (s.label.equalsIgnoreCase(text)) return s;
+        }
+        return null;
+    }
+
+    // Same as fromString, but an unknown label is an error
+    public static BookingStatus parse(String text) {
+        BookingStatus s = fromString(text);
+        if (s == null) {
+            throw new IllegalArgumentException("Invalid booking status: " + text);
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,444 @@
+// AbstractList gives us the List view MainLayout already works with
+import java.util.AbstractList;
+
+// Dynamic array and hash map used as the backing storage
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+
+// Visitor for scan()
+import java.util.function.Predicate;
+
+// Listener list that can be iterated while listeners are being added
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Booking storage keyed by bookingID that still behaves like a List
+//
+// Rows live in an ArrayList in the order they were added and a HashMap
+// remembers which slot every bookingID sits in, so add and find are O(1).
+// Removing a row leaves an empty slot (a tombstone) instead of shifting the
+// rows after it, so the table and the saved file keep their order; a
+// Fenwick tree counts the rows still in use, so get(i) and indexOf are
+// O(log n) while tombstones exist (O(1) when there are none). Once the
+// tombstones outnumber the rows, the slots are compacted in one pass.
+// A set of bookings per status is kept next to the rows, so listing the
+// bookings of one status costs the size of the result and counting is O(1).
+//
+// All methods are synchronized on the store, so several desks can share it
+// and holding its lock gives a consistent copy (the journal's compactor
+// relies on this). Listeners are called while that lock is held, so changes
+// reach them in order; they take their own locks inside it (calendar locks
+// in AvailabilityEngine, the indexes, the journal queue, the database file).
+// Lock order: the store before any listener's lock. No listener may call
+// back into RoomService, and nothing holding a listener's lock may take the
+// store's. Iterating walks an immutable snapshot, so readers never
+// see a ConcurrentModificationException; the snapshot is only rebuilt after
+// the store has changed.
+public class BookingStore extends AbstractList<Booking> {
+
+    // Booking rows in slot order (null = removed row not compacted yet)
+    private final List<Booking> rows;
+
+    // bookingID -> slot in rows
+    private final Map<String, Integer> slots;
+
+    // Fenwick tree over the slots: 1 for a booking, 0 for a tombstone
+    // (only kept while tombstones exist; tree.length - 1 slots)
+    private int[] tree;
+
+    // Number of tombstones in rows
+    private int removed;
+
+    // status -> bookings with that status (Booking has identity equality)
+    private final Map<BookingStatus, Set<Booking>> byStatus = new EnumMap<>(BookingStatus.class);
+
+    // Components notified after every change
+    private final List<BookingListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Immutable copy of rows handed to readers, and the modCount it was taken at
+    private List<Booking> snapshot = Collections.emptyList();
+    private int snapshotModCount = -1;
+
+    // Creates a store holding the given bookings (usually loaded from CSV)
+    public BookingStore(List<Booking> bookings) {
+        this.rows = new ArrayList<>(bookings.size());
+        this.slots = new HashMap<>(Math.max(16, bookings.size() * 4 / 3 + 1));
+        for (BookingStatus status : BookingStatus.values()) {
+            byStatus.put(status, new LinkedHashSet<>());
+        }
+
+        // Index every row; a repeated booking ID is an error, since saving
+        // the store would silently drop the second row
+        for (Booking b : bookings) {
+            if (slots.containsKey(b.getBookingID())) {
+                throw new IllegalArgumentException("Booking ID appears twice: " + b.getBookingID());
+            }
+            slots.put(b.getBookingID(), rows.size());
+            rows.add(b);
+            byStatus.get(b.getBookingStatus()).add(b);
+            GenerateID.observe(b.getBookingID());
+        }
+    }
+
+    // Finds a booking by its booking ID in O(1)
+    public synchronized Booking find(String bookingID) {
+        Integer slot = slots.get(bookingID);
+        return slot == null ? null : rows.get(slot);
+    }
+
+    // Checks if a booking ID is stored
+    public synchronized boolean containsID(String bookingID) {
+        return slots.containsKey(bookingID);
+    }
+
+    // Removes a booking by its booking ID in O(1), returns the removed booking
+    public synchronized Booking removeID(String bookingID) {
+        Integer slot = slots.get(bookingID);
+        return slot == null ? null : removeSlot(slot);
+    }
+
+    // Adds a booking unless its booking ID is already stored
+    public synchronized boolean addIfAbsent(Booking b) {
+        if (slots.containsKey(b.getBookingID())) return false;
+        return add(b);
+    }
+
+    // Returns an immutable copy of all bookings (reused until the next change)
+    public synchronized List<Booking> snapshot() {
+        if (snapshotModCount != modCount) {
+            List<Booking> copy = new ArrayList<>(rows.size() - removed);
+            for (Booking b : rows) {
+                if (b != null) copy.add(b);
+            }
+            snapshot = Collections.unmodifiableList(copy);
+            snapshotModCount = modCount;
+        }
+        return snapshot;
+    }
+
+    // Visits the bookings in row order (or from the last row back) under the
+    // store's lock, until the visitor returns false
+    public synchronized void scan(boolean descending, Predicate<Booking> visitor) {
+        int n = rows.size();
+        for (int i = 0; i < n; i++) {
+            Booking b = rows.get(descending ? n - 1 - i : i);
+            if (b != null && !visitor.test(b)) return;
+        }
+    }
+
+    // Registers a listener that is told about every add, remove and update
+    public void addListener(BookingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BookingListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Returns the bookings with a status, in O(number of matches)
+    public synchronized List<Booking> withStatus(BookingStatus status) {
+        return new ArrayList<>(byStatus.get(status));
+    }
+
+    // Counts the bookings with a status in O(1)
+    public synchronized int countWithStatus(BookingStatus status) {
+        return byStatus.get(status).size();
+    }
+
+    // Changes the status of the booking with a booking ID as one step,
+    // returns false if no booking has that ID
+    public synchronized boolean setStatus(String bookingID, BookingStatus newStatus) {
+        Booking b = find(bookingID);
+        return b != null && setStatus(b, newStatus);
+    }
+
+    // Changes the status of a stored booking and notifies listeners,
+    // returns false (and changes nothing) if the object is not in the store
+    public synchronized boolean setStatus(Booking b, BookingStatus newStatus) {
+        int row = indexOf(b);
+        if (row < 0) return false;
+        BookingStatus oldStatus = b.getBookingStatus();
+        byStatus.get(oldStatus).remove(b);
+        byStatus.get(newStatus).add(b);
+        b.setStatus(newStatus);
+        for (BookingListener l : listeners) {
+            l.bookingStatusChanged(row, b, oldStatus);
+        }
+        return true;
+    }
+
+    // Assigns a stored booking to a unit (0 = none) and notifies listeners,
+    // returns false (and changes nothing) if the object is not in the store
+    public synchronized boolean setUnit(Booking b, int unit) {
+        int row = indexOf(b);
+        if (row < 0) return false;
+        int oldUnit = b.getUnit();
+        if (oldUnit == unit) return true;
+        b.setUnit(unit);
+        for (BookingListener l : listeners) {
+            l.bookingUnitChanged(row, b, oldUnit);
+        }
+        return true;
+    }
+
+    // Same, for the booking with a booking ID; returns false if no booking has that ID
+    public synchronized boolean setUnit(String bookingID, int unit) {
+        Booking b = find(bookingID);
+        return b != null && setUnit(b, unit);
+    }
+
+    // ======================
+    // List methods
+    // ======================
+
+    @Override
+    public synchronized Booking get(int index) {
+        return rows.get(slotOf(index));
+    }
+
+    @Override
+    public synchronized int size() {
+        return rows.size() - removed;
+    }
+
+    // Adds a booking at the end, rejecting duplicate booking IDs
+    @Override
+    public synchronized boolean add(Booking b) {
+        if (slots.containsKey(b.getBookingID())) {
+            throw new IllegalArgumentException("Booking already exists: " + b.getBookingID());
+        }
+        append(b);
+        modCount++;
+
+        // Keep generated IDs ahead of every stored ID
+        GenerateID.observe(b.getBookingID());
+        int row = size() - 1;
+        for (BookingListener l : listeners) {
+            l.bookingAdded(row, b);
+        }
+        return true;
+    }
+
+    /**
+     * Appends all bookings in one step: either every booking is added or,
+     * if any ID is already stored or repeated, none is. Listeners get one
+     * bookingsAdded call for the whole batch.
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends Booking> batch) {
+        Set<String> ids = new HashSet<>(batch.size() * 4 / 3 + 1);
+        for (Booking b : batch) {
+            if (slots.containsKey(b.getBookingID()) || !ids.add(b.getBookingID())) {
+                throw new IllegalArgumentException("Booking already exists: " + b.getBookingID());
+            }
+        }
+
+        int first = size();
+        int firstSlot = rows.size();
+        for (Booking b : batch) {
+            append(b);
+            GenerateID.observe(b.getBookingID());
+        }
+        modCount++;
+
+        List<Booking> added = Collections.unmodifiableList(new ArrayList<>(rows.subList(firstSlot, rows.size())));
+        for (BookingListener l : listeners) {
+            l.bookingsAdded(first, added);
+        }
+        return !batch.isEmpty();
+    }
+
+    // Only appending keeps the slot index valid, so inserting in the middle is not supported
+    @Override
+    public synchronized void add(int index, Booking b) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Bookings can only be appended");
+        }
+        add(b);
+    }
+
+    // Replaces the booking in a slot and re-indexes its booking ID
+    @Override
+    public synchronized Booking set(int index, Booking b) {
+        int slot = slotOf(index);
+        Booking old = rows.get(slot);
+        Integer other = slots.get(b.getBookingID());
+        if (other != null && other != slot) {
+            throw new IllegalArgumentException("Booking already exists: " + b.getBookingID());
+        }
+        slots.remove(old.getBookingID());
+        slots.put(b.getBookingID(), slot);
+        rows.set(slot, b);
+        byStatus.get(old.getBookingStatus()).remove(old);
+        byStatus.get(b.getBookingStatus()).add(b);
+        modCount++;
+        GenerateID.observe(b.getBookingID());
+        for (BookingListener l : listeners) {
+            l.bookingReplaced(index, old, b);
+        }
+        return old;
+    }
+
+    // Removes the booking at a row; the rows after it move up by one
+    @Override
+    public synchronized Booking remove(int index) {
+        return removeSlot(slotOf(index));
+    }
+
+    // Leaves a tombstone in the slot, so no other row has to move
+    private Booking removeSlot(int slot) {
+        int index = rowOf(slot);
+        Booking b = rows.get(slot);
+        if (tree == null) {
+            tree = buildTree(rows);
+        }
+        rows.set(slot, null);
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i]--;
+        }
+        removed++;
+        slots.remove(b.getBookingID());
+        byStatus.get(b.getBookingStatus()).remove(b);
+        modCount++;
+
+        // Compact once most slots are tombstones (the row order does not change)
+        if (removed > rows.size() - removed) {
+            compact();
+        }
+        for (BookingListener l : listeners) {
+            l.bookingRemoved(index, b);
+        }
+        return b;
+    }
+
+    // Removes a Booking object (looked up by its booking ID instead of a scan)
+    @Override
+    public synchronized boolean remove(Object o) {
+        if (!(o instanceof Booking)) return false;
+        Booking b = (Booking) o;
+        Integer slot = slots.get(b.getBookingID());
+        if (slot == null || rows.get(slot) != b) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        if (!(o instanceof Booking)) return false;
+        Booking b = (Booking) o;
+        return find(b.getBookingID()) == b;
+    }
+
+    @Override
+    public synchronized int indexOf(Object o) {
+        if (!(o instanceof Booking)) return -1;
+        Integer slot = slots.get(((Booking) o).getBookingID());
+        return slot != null && rows.get(slot) == o ? rowOf(slot) : -1;
+    }
+
+    // Iterates over a snapshot, so other desks may change the store meanwhile
+    @Override
+    public Iterator<Booking> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public Spliterator<Booking> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    // Removes every booking (listeners are told about each one, last row first)
+    @Override
+    public synchronized void clear() {
+        for (int i = size() - 1; i >= 0; i--) {
+            remove(i);
+        }
+    }
+
+    // ======================
+    // Slots and tombstones
+    // ======================
+
+    // Appends a booking in a new slot
+    private void append(Booking b) {
+        slots.put(b.getBookingID(), rows.size());
+        rows.add(b);
+        byStatus.get(b.getBookingStatus()).add(b);
+        if (tree != null) {
+            if (rows.size() >= tree.length) {
+                tree = buildTree(rows);
+            } else {
+                for (int i = rows.size(); i < tree.length; i += i & -i) {
+                    tree[i]++;
+                }
+            }
+        }
+    }
+
+    // Slot of the row with the given index
+    private int slotOf(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (tree == null) return index;
+
+        // Walk down the Fenwick tree to the slot holding the (index + 1)th booking
+        int pos = 0;
+        int rest = index + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] < rest) {
+                pos = next;
+                rest -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    // Row index of a slot holding a booking (the bookings in the slots before it)
+    private int rowOf(int slot) {
+        if (tree == null) return slot;
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    // Fenwick tree over the slots with room to grow
+    private static int[] buildTree(List<Booking> rows) {
+        int[] t = new int[Math.max(16, rows.size() * 2) + 1];
+        for (int i = 1; i < t.length; i++) {
+            if (i <= rows.size() && rows.get(i - 1) != null) t[i]++;
+            int parent = i + (i & -i);
+            if (parent < t.length) t[parent] += t[i];
+        }
+        return t;
+    }
+
+    // Drops the tombstones and renumbers the slots, keeping the row order
+    private void compact() {
+        int to = 0;
+        for (int from = 0; from < rows.size(); from++) {
+            Booking b = rows.get(from);
+            if (b == null) continue;
+            if (to != from) {
+                rows.set(to, b);
+                slots.put(b.getBookingID(), to);
+            }
+            to++;
+        }
+        rows.subList(to, rows.size()).clear();
+        removed = 0;
+        tree = null;
+    }
+}
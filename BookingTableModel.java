@@ -0,0 +1,89 @@
+// List interface for the booking store
+import java.util.List;
+
+// Booking table that reads rows straight from BookingService
+//
+// No rows are copied: getValueAt reads the booking in that slot and formats
+// the cell on demand, so opening the view costs the same for ten bookings
+// or ten million. Changes arrive as BookingListener row events.
+public class BookingTableModel extends LiveTableModel implements BookingListener {
+
+    // Version of the serialized form (models are not actually serialized)
+    private static final long serialVersionUID = 1L;
+
+    // Column names for bookings table
+    static final String[] COLUMNS = {"BookingID", "Surname", "Middle", "First", "PartySize", "StartDate", "EndDate", "Status", "Unit"};
+
+    // Live view of the bookings (slot order)
+    private final List<Booking> bookings;
+
+    // Creates a model over the service's bookings and starts listening for changes
+    public BookingTableModel(BookingService bookingService) {
+        super(COLUMNS);
+        this.bookings = bookingService.getBookings();
+
+        // Read the size and start listening at the same point
+        synchronized (bookings) {
+            setInitialRowCount(bookings.size());
+            bookingService.addBookingListener(this);
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Booking b;
+        synchronized (bookings) {
+            // The store may already be ahead of the events this table has seen
+            if (row >= bookings.size()) return null;
+            b = bookings.get(row);
+        }
+        return cell(b, column);
+    }
+
+    // Text of one cell of a booking's row (shared with BookingResultsTableModel)
+    static Object cell(Booking b, int column) {
+        switch (column) {
+            case 0: return b.getBookingID();
+            case 1: return b.getSurname();
+            case 2: return b.getMiddleName();
+            case 3: return b.getFirstName();
+            case 4: return b.getPartySize();
+            case 5: return b.getStartDate().toString();
+            case 6: return b.getEndDate().toString();
+            case 7: return b.getStatus();
+            case 8: return b.getUnit() == 0 ? "" : String.valueOf(b.getUnit());
+            default: return null;
+        }
+    }
+
+    // ======================
+    // BookingListener methods
+    // Called inside the store's lock, so the store size matches the change
+    // ======================
+
+    @Override
+    public void bookingAdded(int row, Booking booking) {
+        postInserted(row);
+    }
+
+    @Override
+    public void bookingRemoved(int row, Booking booking) {
+        // The rows after it moved up by one
+        postDeleted(row);
+    }
+
+    @Override
+    public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        postUpdated(row);
+    }
+
+    @Override
+    public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+        postUpdated(row);
+    }
+
+    @Override
+    public void bookingUnitChanged(int row, Booking booking, int oldUnit) {
+        postUpdated(row);
+    }
+}
@@ -0,0 +1,237 @@
+// For reading the file through NIO
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// For holding chunk bounds and results
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Fork-join pool that parses the chunks in parallel
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// For draining each chunk's rows
+import java.util.stream.Stream;
+
+// Loads booking.csv at startup, in parallel for large files
+//
+// The parallel mode memory-maps the file, cuts it into chunks that end on a
+// line break and parses every chunk on the fork-join pool with the same
+// CsvReader/ReadBooking code the sequential reader uses. Chunk results are
+// joined in file order, so the list is identical to ReadBooking.readBookings,
+// including which bad rows are skipped.
+//
+// The mode can be forced with -Dhotel.loader=parallel or -Dhotel.loader=sequential.
+// DataLoader makes the same choice at startup and adds each chunk to the
+// services as soon as it is joined (see forEachChunk).
+public class BulkBookingLoader {
+
+    // Receives the parsed chunks in file order
+    public interface ChunkConsumer {
+
+        // rows: the bookings of the next chunk; bytesRead: file bytes parsed up to
+        // the end of it. Returns false to stop loading.
+        boolean accept(List<Booking> rows, long bytesRead);
+    }
+
+    // Files at least this large are loaded in parallel by default
+    private static final long PARALLEL_THRESHOLD = 32L * 1024 * 1024;
+
+    // Target size of one chunk
+    private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    // Read speed of the parallel reader and failed reads (see Metrics)
+    private static final Metrics.Throughput READ = Metrics.throughput("csv.read.booking.parallel");
+    private static final Metrics.Counter READ_ERRORS = Metrics.counter("csv.read.booking.errors");
+
+    // Loads bookings, choosing the sequential or parallel reader
+    public static List<Booking> load(String filePath) {
+        return isParallel(filePath) ? loadParallel(filePath) : ReadBooking.readBookings(filePath);
+    }
+
+    /**
+     * Loads bookings like load(), but a file that cannot be read to the end
+     * is an error instead of a shorter list. A damaged save is still replaced
+     * by the previous one, rows with a bad value are still skipped, and a
+     * missing file (with no previous save) has no bookings.
+     */
+    public static List<Booking> loadAll(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        List<Booking> bookings = new ArrayList<>();
+        if (!Files.exists(path) && !Files.exists(SnapshotChecksums.previous(path))) return bookings;
+
+        // Check the whole file first; a damaged save is replaced by the previous one
+        try {
+            SnapshotChecksums.verify(path);
+        } catch (SnapshotChecksums.ChecksumException e) {
+            READ_ERRORS.increment();
+            if (!ReadBooking.restorePrevious(filePath)) throw e;
+            System.out.println(filePath + " is damaged - loading the previous save");
+        }
+
+        if (isParallel(filePath)) {
+            forEachChunk(filePath, (rows, bytesRead) -> {
+                bookings.addAll(rows);
+                return true;
+            });
+        } else {
+            try (Stream<Booking> rows = ReadBooking.streamBookings(filePath)) {
+                rows.forEach(bookings::add);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return bookings;
+    }
+
+    // True if a file is loaded in parallel (see -Dhotel.loader)
+    public static boolean isParallel(String filePath) {
+        String mode = System.getProperty("hotel.loader", "auto");
+        return mode.equalsIgnoreCase("parallel")
+                || (mode.equalsIgnoreCase("auto") && new File(filePath).length() >= PARALLEL_THRESHOLD);
+    }
+
+    // Loads bookings by parsing memory-mapped chunks of the file in parallel
+    public static List<Booking> loadParallel(String filePath) {
+        List<Booking> bookings = new ArrayList<>();
+        long start = Metrics.start();
+        long size = 0;
+
+        // Check the whole file first (in parallel); a damaged save is replaced by the previous one
+        try {
+            SnapshotChecksums.verify(Paths.get(filePath));
+        } catch (Exception e) {
+            READ_ERRORS.increment();
+            if (SnapshotChecksums.isDamaged(Paths.get(filePath), e) && ReadBooking.restorePrevious(filePath)) {
+                System.out.println(filePath + " is damaged - loading the previous save");
+                return loadParallel(filePath);
+            }
+            e.printStackTrace();
+            return bookings;
+        }
+
+        try {
+            size = forEachChunk(filePath, (rows, bytesRead) -> {
+                bookings.addAll(rows);
+                return true;
+            });
+        } catch (Exception e) {
+            // Print stack trace if the file cannot be opened, mapped or read
+            // (the rows before the failed one are kept)
+            READ_ERRORS.increment();
+            e.printStackTrace();
+        }
+        READ.recordSince(start, bookings.size(), size);
+
+        return bookings;
+    }
+
+    /**
+     * Parses the file's chunks in parallel and hands each one to the consumer
+     * in file order as soon as it and the chunks before it are done. A chunk
+     * that fails to read is handed over up to the failure and its error is
+     * then thrown; the chunks after it are cancelled. The file's checksums
+     * are not checked here. Returns the file size.
+     */
+    public static long forEachChunk(String filePath, ChunkConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+
+            // Split the file into chunks and start parsing each one
+            List<long[]> chunks = splitAtLines(channel, CHUNK_SIZE);
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                long[] range = chunks.get(i);
+                boolean first = i == 0;
+                tasks.add(ForkJoinPool.commonPool().submit(() -> parseChunk(channel, range[0], range[1], first)));
+            }
+
+            // Join the chunks in file order, stopping at the first one that failed
+            try {
+                for (int i = 0; i < tasks.size(); i++) {
+                    Chunk chunk = tasks.get(i).join();
+                    if (!consumer.accept(chunk.rows, chunks.get(i)[1])) break;
+                    if (chunk.error instanceof IOException) throw (IOException) chunk.error;
+                    if (chunk.error != null) throw new IOException("Reading " + filePath + " failed", chunk.error);
+                }
+            } finally {
+                for (ForkJoinTask<Chunk> t : tasks) t.cancel(false);
+            }
+            return channel.size();
+        }
+    }
+
+    // Returns [start, end) byte ranges of about chunkSize bytes that each end after a '\n'
+    static List<long[]> splitAtLines(FileChannel channel, long chunkSize) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+
+            // Move the end forward to just past the next line break
+            while (end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                if (n <= 0) { end = size; break; }
+                int newline = -1;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') { newline = i; break; }
+                }
+                if (newline >= 0) { end += newline + 1; break; }
+                end += n;
+            }
+
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Parses one mapped chunk; the first chunk also skips the header line
+    private static Chunk parseChunk(FileChannel channel, long start, long end, boolean first) {
+        Chunk chunk = new Chunk();
+
+        // Names go into a dictionary of this chunk's own, so the workers never wait
+        // for each other on the shared one; it is merged into GUEST_NAMES at the end
+        NameDictionary names = new NameDictionary();
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            CharBuffer chars = StandardCharsets.UTF_8.decode(mapped);
+            CsvReader csv = new CsvReader(new CharArrayReader(chars.array(), chars.arrayOffset(), chars.limit()));
+
+            try (Stream<Booking> rows = ReadBooking.streamBookings(csv, first, names)) {
+                rows.forEach(chunk.rows::add);
+            }
+        } catch (Exception e) {
+            // Keep the rows parsed so far, like the sequential reader does
+            chunk.error = e;
+        }
+
+        // Swap in the shared copies of the names
+        Map<String, String> shared = names.mergeInto(NameDictionary.GUEST_NAMES);
+        for (Booking b : chunk.rows) {
+            NameDictionary.replaceNames(b, shared);
+        }
+        return chunk;
+    }
+
+    // Rows parsed from one chunk, and the error that stopped it (if any)
+    private static class Chunk {
+        final List<Booking> rows = new ArrayList<>();
+        Exception error;
+    }
+}
@@ -0,0 +1,246 @@
+// For reading characters from files or any other source
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+// For building dates without going through a formatter
+import java.time.LocalDate;
+
+// For growing the field bound arrays
+import java.util.Arrays;
+
+// Streaming CSV tokenizer shared by ReadBooking and ReadRooms
+//
+// Reads the input through one reusable char buffer and records where each
+// field of the current line starts and ends, so a line is never copied into
+// a String and never split with a regex. Ints and yyyy-MM-dd dates are
+// parsed directly from the buffer; only text fields become Strings.
+// Names can be looked up in a NameDictionary instead (no String for a name
+// seen before), and equal dates share one LocalDate.
+// Fields are trimmed of surrounding spaces. Quoted fields are not supported
+// (none of our files use them).
+public class CsvReader implements Closeable {
+
+    // Default buffer size (grows if a single line is longer)
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Source of characters
+    private final Reader in;
+
+    // Characters read but not yet consumed
+    private char[] buf = new char[BUFFER_SIZE];
+
+    // Start of the current line and end of valid data in buf
+    private int lineStart, limit;
+
+    // Where the next line starts (just past the current line's end)
+    private int next;
+
+    // True once the Reader has no more characters
+    private boolean eof;
+
+    // Start (inclusive) and end (exclusive) of each field in the current line
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+
+    // Number of the current line (1 = first line of the input)
+    private long lineNumber;
+
+    // Dates parsed so far, by a hash of year/month/day (a miss just parses again)
+    private final LocalDate[] dates = new LocalDate[4096];
+
+    // Creates a tokenizer over the given character source
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    // Moves to the next line that is not blank, returns false at end of input
+    public boolean next() throws IOException {
+        while (readLine()) {
+            if (fieldCount > 1 || ends[0] > starts[0]) return true;
+        }
+        return false;
+    }
+
+    // Number of fields in the current line
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // Line number of the current line (1 = first line of the input)
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    // Checks if a field is empty after trimming
+    public boolean isEmpty(int field) {
+        return ends[field] == starts[field];
+    }
+
+    // Returns a field as a String (the only place a field is copied)
+    public String getString(int field) {
+        return new String(buf, starts[field], ends[field] - starts[field]);
+    }
+
+    // Checks if a field equals a text, ignoring case, without creating a String
+    public boolean equalsIgnoreCase(int field, String text) {
+        int p = starts[field];
+        if (ends[field] - p != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            char a = buf[p + i];
+            char b = text.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)) return false;
+        }
+        return true;
+    }
+
+    // Returns a field as the dictionary's shared copy (a String is only built for a new name)
+    public String getName(int field, NameDictionary names) {
+        return names.intern(buf, starts[field], ends[field]);
+    }
+
+    // Parses a field as an int without creating a String
+    public int getInt(int field) {
+        int p = starts[field];
+        int end = ends[field];
+        if (p == end) throw error(field, "empty number");
+
+        boolean negative = buf[p] == '-';
+        if (negative || buf[p] == '+') p++;
+        if (p == end) throw error(field, "not a number");
+
+        // Accumulate as a negative number so Integer.MIN_VALUE fits
+        int value = 0;
+        for (; p < end; p++) {
+            int digit = buf[p] - '0';
+            if (digit < 0 || digit > 9) throw error(field, "not a number");
+            if (value < (Integer.MIN_VALUE + digit) / 10) throw error(field, "number too large");
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Integer.MIN_VALUE) throw error(field, "number too large");
+        return negative ? value : -value;
+    }
+
+    // Parses a field as a double; whole numbers take the int path (no String)
+    public double getDouble(int field) {
+        for (int p = starts[field]; p < ends[field]; p++) {
+            char c = buf[p];
+            if (c == '.' || c == 'e' || c == 'E') {
+                try {
+                    return Double.parseDouble(getString(field));
+                } catch (NumberFormatException e) {
+                    throw error(field, "not a number");
+                }
+            }
+        }
+        return getInt(field);
+    }
+
+    // Parses a yyyy-MM-dd field as a LocalDate without a formatter
+    public LocalDate getDate(int field) {
+        int p = starts[field];
+        if (ends[field] - p != 10 || buf[p + 4] != '-' || buf[p + 7] != '-') {
+            throw error(field, "date must be yyyy-MM-dd");
+        }
+        int year = digits(field, p, 4);
+        int month = digits(field, p + 5, 2);
+        int day = digits(field, p + 8, 2);
+
+        // Bookings share a few thousand distinct dates, so hand out the same object for each
+        int slot = (((year << 9) | (month << 5) | day) * 0x9E3779B9) >>> 20;
+        LocalDate d = dates[slot];
+        if (d == null || d.getDayOfMonth() != day || d.getMonthValue() != month || d.getYear() != year) {
+            d = LocalDate.of(year, month, day);
+            dates[slot] = d;
+        }
+        return d;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Reads the next line into the buffer and records its field bounds
+    private boolean readLine() throws IOException {
+        lineStart = next;
+
+        // Find the end of the line, refilling the buffer as needed
+        int scan = lineStart;
+        while (true) {
+            while (scan < limit && buf[scan] != '\n') scan++;
+            if (scan < limit || eof) break;
+
+            // Line continues past the buffer: move it to the front and read more
+            int kept = scan - lineStart;
+            if (kept == buf.length) {
+                char[] bigger = new char[buf.length * 2];
+                System.arraycopy(buf, lineStart, bigger, 0, kept);
+                buf = bigger;
+            } else {
+                System.arraycopy(buf, lineStart, buf, 0, kept);
+            }
+            lineStart = 0;
+            scan = kept;
+            limit = kept;
+
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+
+        if (lineStart >= limit && eof) return false;
+
+        int lineEnd = scan;
+        next = scan < limit ? scan + 1 : scan;
+        if (lineEnd > lineStart && buf[lineEnd - 1] == '\r') lineEnd--;
+        lineNumber++;
+
+        tokenize(lineStart, lineEnd);
+        return true;
+    }
+
+    // Records the trimmed bounds of every comma-separated field in [from, to)
+    private void tokenize(int from, int to) {
+        fieldCount = 0;
+        int fieldStart = from;
+        for (int p = from; p <= to; p++) {
+            if (p == to || buf[p] == ',') {
+                int s = fieldStart;
+                int e = p;
+                while (s < e && buf[s] == ' ') s++;
+                while (e > s && buf[e - 1] == ' ') e--;
+
+                if (fieldCount == starts.length) {
+                    starts = Arrays.copyOf(starts, fieldCount * 2);
+                    ends = Arrays.copyOf(ends, fieldCount * 2);
+                }
+                starts[fieldCount] = s;
+                ends[fieldCount] = e;
+                fieldCount++;
+                fieldStart = p + 1;
+            }
+        }
+    }
+
+    // Parses a fixed number of digits starting at p
+    private int digits(int field, int p, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buf[p + i] - '0';
+            if (digit < 0 || digit > 9) throw error(field, "date must be yyyy-MM-dd");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Builds a parse error that names the line and the offending field
+    private NumberFormatException error(int field, String message) {
+        return new NumberFormatException("Line " + lineNumber + ", field " + (field + 1)
+                + ": " + message + " (\"" + getString(field) + "\")");
+    }
+}
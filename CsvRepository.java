@@ -0,0 +1,113 @@
+// For reading and writing the CSV file
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// For the rows in memory
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// For getting a row's key and visiting rows
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// A Repository over one of the CSV files (rooms.csv or booking.csv)
+//
+// The whole file is read when the repository is created (a missing file is
+// an empty repository) and kept in memory in file order; flush() writes it
+// back through WriteRoom / WriteBooking when something changed. Used to
+// import the CSV files into the database and to export them again (see
+// HotelDatabase); the application itself saves CSV files through
+// BookingJournal.
+public class CsvRepository<K, V> implements Repository<K, V> {
+
+    // Writes all rows to the file, replacing it
+    interface Writer<V> {
+        void write(String path, List<V> rows) throws IOException;
+    }
+
+    // The file, how rows are keyed and written, and the rows by key
+    private final String path;
+    private final Function<V, K> keyOf;
+    private final Writer<V> writer;
+    private final Map<K, V> rows = new LinkedHashMap<>();
+
+    // True if the rows differ from the file
+    private boolean changed;
+
+    // loaded == null: start empty and replace the file on flush()
+    private CsvRepository(String path, List<V> loaded, Function<V, K> keyOf, Writer<V> writer) {
+        this.path = path;
+        this.keyOf = keyOf;
+        this.writer = writer;
+        this.changed = loaded == null;
+        if (loaded == null) return;
+        for (V v : loaded) {
+            rows.put(keyOf.apply(v), v);
+        }
+    }
+
+    // Bookings in a booking.csv, by booking ID
+    public static CsvRepository<String, Booking> bookings(String path) {
+        List<Booking> loaded = Files.exists(Paths.get(path)) ? ReadBooking.readBookings(path) : new ArrayList<>();
+        return new CsvRepository<>(path, loaded, Booking::getBookingID, WriteBooking::writeSnapshot);
+    }
+
+    // Rooms in a rooms.csv, by unit number
+    public static CsvRepository<Integer, Room> rooms(String path) {
+        List<Room> loaded = Files.exists(Paths.get(path)) ? ReadRooms.readRooms(path) : new ArrayList<>();
+        return new CsvRepository<>(path, loaded, Room::getUnitNumber, WriteRoom::writeSnapshot);
+    }
+
+    // An empty booking.csv (the file is not read; flush() replaces it)
+    public static CsvRepository<String, Booking> newBookings(String path) {
+        return new CsvRepository<>(path, null, Booking::getBookingID, WriteBooking::writeSnapshot);
+    }
+
+    // An empty rooms.csv (the file is not read; flush() replaces it)
+    public static CsvRepository<Integer, Room> newRooms(String path) {
+        return new CsvRepository<>(path, null, Room::getUnitNumber, WriteRoom::writeSnapshot);
+    }
+
+    @Override
+    public synchronized V find(K key) {
+        return rows.get(key);
+    }
+
+    @Override
+    public synchronized void save(V value) {
+        rows.put(keyOf.apply(value), value);
+        changed = true;
+    }
+
+    @Override
+    public synchronized boolean delete(K key) {
+        if (rows.remove(key) == null) return false;
+        changed = true;
+        return true;
+    }
+
+    @Override
+    public synchronized void forEach(Consumer<? super V> action) {
+        rows.values().forEach(action);
+    }
+
+    @Override
+    public synchronized long size() {
+        return rows.size();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!changed) return;
+        writer.write(path, new ArrayList<>(rows.values()));
+        changed = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
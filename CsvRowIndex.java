@@ -0,0 +1,216 @@
+// For reading the file as raw bytes
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// For collecting the changed rows
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Remembers a hash of every row of a CSV file, keyed by the row's first field,
+// so a new version of the file can be compared row by row
+//
+// Rows are hashed straight from the file's bytes; only rows whose hash
+// differs from the last version are turned into Strings and handed back, so
+// a one-row edit of a 1M-row file costs one pass over the bytes and one
+// parsed row. Keys and rows are stored as 64-bit FNV-1a hashes in an
+// open-addressing table (no per-row objects); two different keys or rows
+// sharing a 64-bit hash is treated as impossible.
+//
+// Not thread-safe: each index belongs to one watcher thread.
+public class CsvRowIndex {
+
+    // Marks an empty slot (a key that hashes to 0 is stored as 1)
+    private static final long EMPTY = 0;
+
+    // keyHash -> rowHash, linear probing
+    private long[] keys = new long[16];
+    private long[] rows = new long[16];
+    private int size;
+
+    // Changes between two versions of a file
+    public static class Diff {
+
+        // Lines (without the line break) that are new or changed
+        public final List<String> changedLines = new ArrayList<>();
+
+        // Key hashes of rows that are gone (compare with keyHash(...))
+        public long[] removedKeys = new long[0];
+
+        public boolean isEmpty() {
+            return changedLines.isEmpty() && removedKeys.length == 0;
+        }
+    }
+
+    /**
+     * Reads the file, remembers it as the current version and returns what
+     * changed since the previous version. The first line (header) is ignored.
+     */
+    public Diff update(Path file) throws IOException {
+        Diff diff = new Diff();
+        long[] oldKeys = keys;
+        long[] oldRows = rows;
+        int oldSize = size;
+
+        // The new version starts empty and is filled line by line
+        keys = new long[Math.max(16, tableSize(oldSize))];
+        rows = new long[keys.length];
+        size = 0;
+
+        // Which old keys were seen again (by slot in the old table)
+        boolean[] seen = new boolean[oldKeys.length];
+
+        try {
+            read(file, oldKeys, oldRows, seen, diff);
+        } catch (IOException | RuntimeException e) {
+            // Keep the previous version, so the next read is compared with it
+            keys = oldKeys;
+            rows = oldRows;
+            size = oldSize;
+            throw e;
+        }
+
+        // Old keys that were not seen again are removed rows
+        long[] removed = new long[oldSize];
+        int count = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY && !seen[slot]) removed[count++] = oldKeys[slot];
+        }
+        diff.removedKeys = Arrays.copyOf(removed, count);
+        return diff;
+    }
+
+    // Hash of a key as stored in the index (spaces around it are ignored, as CsvReader does)
+    public static long keyHash(String key) {
+        byte[] bytes = key.trim().getBytes(StandardCharsets.UTF_8);
+        return keyHash(bytes, 0, bytes.length);
+    }
+
+    // Number of rows in the current version
+    public int size() {
+        return size;
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // Hashes every line of the file (except the header) into the new version
+    private void read(Path file, long[] oldKeys, long[] oldRows, boolean[] seen, Diff diff) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[1 << 16];
+            int filled = 0;
+            boolean header = true;
+            int n;
+            while (true) {
+                n = in.read(buf, filled, buf.length - filled);
+                if (n > 0) filled += n;
+
+                // Hand out every complete line in the buffer
+                int start = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (buf[i] != '\n') continue;
+                    if (!header) row(buf, start, i, oldKeys, oldRows, seen, diff);
+                    header = false;
+                    start = i + 1;
+                }
+
+                if (n < 0) {
+                    // Last line without a line break
+                    if (start < filled && !header) row(buf, start, filled, oldKeys, oldRows, seen, diff);
+                    break;
+                }
+
+                // Keep the unfinished line; grow the buffer if one line fills it
+                System.arraycopy(buf, start, buf, 0, filled - start);
+                filled -= start;
+                if (filled == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+        }
+    }
+
+    // Records one line [from, to) of the new version and compares it with the old one
+    private void row(byte[] buf, int from, int to, long[] oldKeys, long[] oldRows, boolean[] seen, Diff diff) {
+        if (to > from && buf[to - 1] == '\r') to--;
+        if (to == from) return;
+
+        // Key = first field
+        int comma = from;
+        while (comma < to && buf[comma] != ',') comma++;
+        int keyFrom = from;
+        int keyTo = comma;
+        while (keyFrom < keyTo && buf[keyFrom] == ' ') keyFrom++;
+        while (keyTo > keyFrom && buf[keyTo - 1] == ' ') keyTo--;
+        long key = keyHash(buf, keyFrom, keyTo);
+        long row = fnv(buf, from, to);
+
+        put(key, row);
+
+        // Compare with the previous version
+        int slot = find(oldKeys, key);
+        if (slot >= 0) {
+            seen[slot] = true;
+            if (oldRows[slot] == row) return;
+        }
+        diff.changedLines.add(new String(buf, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    private void put(long key, long row) {
+        if (size * 2 >= keys.length) {
+            long[] oldKeys = keys;
+            long[] oldRows = rows;
+            keys = new long[keys.length * 2];
+            rows = new long[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldRows[i]);
+            }
+        }
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) size++;
+        keys[slot] = key;
+        rows[slot] = row;
+    }
+
+    // Slot of a key in a table, or -1
+    private static int find(long[] table, long key) {
+        int mask = table.length - 1;
+        for (int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (table[slot] == key) return slot;
+            if (table[slot] == EMPTY) return -1;
+        }
+    }
+
+    private static int tableSize(int rows) {
+        return Integer.highestOneBit(Math.max(1, rows) * 2) * 2;
+    }
+
+    private static long keyHash(byte[] buf, int from, int to) {
+        long h = fnv(buf, from, to);
+        return h == EMPTY ? 1 : h;
+    }
+
+    // 64-bit FNV-1a
+    private static long fnv(byte[] buf, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= buf[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Spreads a hash over the table slots
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+}
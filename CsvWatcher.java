@@ -0,0 +1,208 @@
+// For watching the DB folder
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// For matching removed rows
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Picks up hand edits of rooms.csv and booking.csv while the app is running
+//
+// A background thread waits for the files to change (WatchService), gives
+// the editor a moment to finish writing and then compares the new file with
+// the previous version row by row (CsvRowIndex). Only new, changed and
+// removed rows are applied to the services, which tell the open tables
+// about exactly those rows. Unchanged rows are never parsed.
+//
+// Applied changes go through the services like any other change, so they
+// are saved in the booking journal. A version of a file this program wrote
+// itself (a save, or the journal's compaction rewriting booking.csv; see
+// CsvWriter.isOwnVersion) only becomes the new previous version: its rows
+// are never applied, since memory is already as new or newer than them.
+public class CsvWatcher {
+
+    // Time to wait after the last change before reading the file
+    private static final long SETTLE_MILLIS = 200;
+
+    // Services the edits are applied to
+    private final RoomService roomService;
+    private final BookingService bookingService;
+
+    // Watched files
+    private final Path roomPath;
+    private final Path bookingPath;
+
+    // Row hashes of the last version of each file
+    private final CsvRowIndex roomRows = new CsvRowIndex();
+    private final CsvRowIndex bookingRows = new CsvRowIndex();
+
+    // Change events for the watched folders (null when stopped)
+    private WatchService watchService;
+
+    public CsvWatcher(RoomService roomService, BookingService bookingService,
+                      String roomPath, String bookingPath) {
+        this.roomService = roomService;
+        this.bookingService = bookingService;
+        this.roomPath = Paths.get(roomPath).toAbsolutePath();
+        this.bookingPath = Paths.get(bookingPath).toAbsolutePath();
+    }
+
+    // Remembers the current files and starts watching for changes
+    public synchronized void start() throws IOException {
+        roomRows.update(roomPath);
+        bookingRows.update(bookingPath);
+
+        watchService = FileSystems.getDefault().newWatchService();
+        register(roomPath.getParent());
+        if (!bookingPath.getParent().equals(roomPath.getParent())) {
+            register(bookingPath.getParent());
+        }
+
+        Thread thread = new Thread(this::run, "csv-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Stops watching
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+
+    // Applies the changes made to rooms.csv since it was last read, returns the number of rows applied
+    public int reloadRooms() throws IOException {
+        CsvRowIndex.Diff diff = update(roomRows, roomPath);
+        int applied = 0;
+
+        // New and changed rows
+        for (String line : diff.changedLines) {
+            try {
+                CsvReader csv = new CsvReader(new StringReader(line));
+                if (!csv.next() || csv.fieldCount() < 5) continue;
+                if (roomService.putRoom(ReadRooms.toRoom(csv))) applied++;
+            } catch (RuntimeException e) {
+                System.out.println("Skipping room row \"" + line + "\": " + e.getMessage());
+            }
+        }
+
+        // Removed rows
+        if (diff.removedKeys.length > 0) {
+            long[] removed = sorted(diff.removedKeys);
+            for (Room r : roomService.getRooms()) {
+                long key = CsvRowIndex.keyHash(String.valueOf(r.getUnitNumber()));
+                if (Arrays.binarySearch(removed, key) >= 0 && roomService.deleteRoom(r.getUnitNumber())) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    // Applies the changes made to booking.csv since it was last read, returns the number of rows applied
+    public int reloadBookings() throws IOException {
+        CsvRowIndex.Diff diff = update(bookingRows, bookingPath);
+        int applied = 0;
+
+        // New and changed rows
+        for (String line : diff.changedLines) {
+            try {
+                CsvReader csv = new CsvReader(new StringReader(line));
+                if (!csv.next() || csv.fieldCount() < ReadBooking.COLUMNS) continue;
+                if (bookingService.upsertBooking(ReadBooking.toBooking(csv))) applied++;
+            } catch (RuntimeException e) {
+                System.out.println("Skipping booking row \"" + line + "\": " + e.getMessage());
+            }
+        }
+
+        // Removed rows
+        if (diff.removedKeys.length > 0) {
+            long[] removed = sorted(diff.removedKeys);
+            for (Booking b : bookingService.getBookingSnapshot()) {
+                long key = CsvRowIndex.keyHash(b.getBookingID());
+                if (Arrays.binarySearch(removed, key) >= 0 && bookingService.deleteBooking(b.getBookingID())) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    // ======================
+    // Watcher thread
+    // ======================
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService,
+                     StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    private void run() {
+        WatchService ws = watchService;
+        try {
+            while (true) {
+                boolean rooms = false;
+                boolean bookings = false;
+
+                // Wait for the first change, then keep collecting until the files are quiet
+                WatchKey key = ws.take();
+                while (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            rooms = true;
+                            bookings = true;
+                            continue;
+                        }
+                        Path changed = dir.resolve((Path) event.context());
+                        if (changed.equals(roomPath)) rooms = true;
+                        if (changed.equals(bookingPath)) bookings = true;
+                    }
+                    key.reset();
+                    key = ws.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                try {
+                    if (rooms) report("rooms.csv", reloadRooms());
+                    if (bookings) report("booking.csv", reloadBookings());
+                } catch (IOException e) {
+                    // The file may be mid-rewrite; the next change event reads it again
+                    System.out.println("Could not reload: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    // Reads the file's new version into its row index; returns the changes to
+    // apply, which are none if this program wrote that version itself (checked
+    // before and after reading, so a hand edit made meanwhile is not lost)
+    private static CsvRowIndex.Diff update(CsvRowIndex rows, Path file) throws IOException {
+        boolean own = CsvWriter.isOwnVersion(file);
+        CsvRowIndex.Diff diff = rows.update(file);
+        return own && CsvWriter.isOwnVersion(file) ? new CsvRowIndex.Diff() : diff;
+    }
+
+    private static void report(String file, int applied) {
+        if (applied > 0) {
+            System.out.println("Reloaded " + applied + " changed row(s) from " + file);
+        }
+    }
+
+    private static long[] sorted(long[] keys) {
+        long[] copy = keys.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
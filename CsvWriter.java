@@ -0,0 +1,299 @@
+// For writing bytes to files
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// For the temp file and the rename over the target
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// For formatting dates without a formatter
+import java.time.LocalDate;
+
+// For the buffer pool and the versions written by this program
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Streaming CSV encoder shared by WriteBooking and WriteRoom (the writing side of CsvReader)
+//
+// Fields are encoded as UTF-8 straight into a direct ByteBuffer taken from a
+// small pool, so a row never becomes a String: ints and yyyy-MM-dd dates are
+// written digit by digit and text is copied char by char. A full buffer is
+// written to a FileChannel in one call, with no copy through the heap.
+//
+// create() writes to <target>.tmp next to the target; commit() forces it to
+// disk and renames it over the target, so readers (and a crash) only ever
+// see the old file or the new one. The CRC32C of every block is worked out
+// on the way and saved next to the file, and the file it replaces is kept as
+// the previous generation (see SnapshotChecksums). Closing without commit()
+// deletes the temp file. append() adds lines to the end of the target itself.
+//
+// The size and modification time of the last version this program wrote to
+// each file are remembered, so CsvWatcher can tell its own saves (including
+// a journal compaction that rewrites booking.csv) from hand edits.
+//
+// Fields are separated by commas automatically; endLine() ends the row.
+// Quoting is not supported (like CsvReader), and a null field is written empty.
+public class CsvWriter implements Closeable {
+
+    // Size of each pooled buffer, and how many idle buffers are kept
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int POOL_SIZE = 4;
+
+    // Idle buffers ready for the next writer
+    private static final ArrayDeque<ByteBuffer> POOL = new ArrayDeque<>();
+
+    // file -> "size:modified" of the last version written by this program
+    private static final Map<Path, String> WRITTEN = new ConcurrentHashMap<>();
+
+    // Channel written to, the temp file (null when appending), the file that
+    // ends up holding the rows, and the block checksums (null when appending)
+    private final FileChannel channel;
+    private final Path temp;
+    private final Path target;
+    private final SnapshotChecksums.Builder checksums;
+
+    // Bytes waiting to be written (null once closed)
+    private ByteBuffer buf;
+
+    // True if the current line has a field already (the next one needs a comma)
+    private boolean inLine;
+
+    // Bytes handed to the channel so far
+    private long written;
+
+    private CsvWriter(FileChannel channel, Path temp, Path target) {
+        this.channel = channel;
+        this.temp = temp;
+        this.target = target;
+        this.checksums = temp == null ? null : new SnapshotChecksums.Builder();
+        this.buf = takeBuffer();
+    }
+
+    // Starts a new version of the file; nothing changes on disk until commit()
+    public static CsvWriter create(Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        return new CsvWriter(channel, temp, target);
+    }
+
+    // Adds lines to the end of the file (created if missing); close() writes them
+    public static CsvWriter append(Path target) throws IOException {
+        return new CsvWriter(FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                              StandardOpenOption.APPEND), null, target);
+    }
+
+    // ======================
+    // Fields
+    // ======================
+
+    public CsvWriter text(String value) throws IOException {
+        separate();
+        if (value == null) return this;
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (buf.remaining() < 4) drain();
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | c >> 6));
+                buf.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buf.put((byte) (0xF0 | cp >> 18));
+                buf.put((byte) (0x80 | cp >> 12 & 0x3F));
+                buf.put((byte) (0x80 | cp >> 6 & 0x3F));
+                buf.put((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf.put((byte) '?');
+            } else {
+                buf.put((byte) (0xE0 | c >> 12));
+                buf.put((byte) (0x80 | c >> 6 & 0x3F));
+                buf.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    public CsvWriter number(long value) throws IOException {
+        separate();
+        if (buf.remaining() < 20) drain();
+        digits(value);
+        return this;
+    }
+
+    // Whole prices as ints (what ReadRooms expects), others with two decimals
+    public CsvWriter price(double value) throws IOException {
+        long cents = Math.round(value * 100);
+        if (cents % 100 == 0) return number(cents / 100);
+        separate();
+        if (buf.remaining() < 24) drain();
+        if (cents < 0) {
+            buf.put((byte) '-');
+            cents = -cents;
+        }
+        digits(cents / 100);
+        buf.put((byte) '.');
+        twoDigits((int) (cents % 100));
+        return this;
+    }
+
+    // yyyy-MM-dd (the format CsvReader.getDate reads)
+    public CsvWriter date(LocalDate value) throws IOException {
+        if (value == null || value.getYear() < 0 || value.getYear() > 9999) {
+            return text(value == null ? null : value.toString());
+        }
+        separate();
+        if (buf.remaining() < 10) drain();
+        int year = value.getYear();
+        buf.put((byte) ('0' + year / 1000));
+        buf.put((byte) ('0' + year / 100 % 10));
+        buf.put((byte) ('0' + year / 10 % 10));
+        buf.put((byte) ('0' + year % 10));
+        buf.put((byte) '-');
+        twoDigits(value.getMonthValue());
+        buf.put((byte) '-');
+        twoDigits(value.getDayOfMonth());
+        return this;
+    }
+
+    public CsvWriter endLine() throws IOException {
+        if (!buf.hasRemaining()) drain();
+        buf.put((byte) '\n');
+        inLine = false;
+        return this;
+    }
+
+    // ======================
+    // Finishing
+    // ======================
+
+    // Bytes written so far (including those still in the buffer)
+    public long size() {
+        return written + (buf == null ? 0 : buf.position());
+    }
+
+    /**
+     * Writes what is buffered, forces the temp file to disk and renames it
+     * over the target (with its checksums; the old file becomes the previous
+     * generation). Only for writers from create().
+     */
+    public void commit() throws IOException {
+        if (temp == null) throw new IllegalStateException("Only a new file can be committed");
+        drain();
+        channel.force(false);
+        channel.close();
+        SnapshotChecksums.install(temp, target, checksums);
+        remember(target);
+        release();
+    }
+
+    // Appending: writes what is buffered. New file: drops it unless committed.
+    @Override
+    public void close() throws IOException {
+        if (buf == null) return;
+        try {
+            if (temp == null) drain();
+        } finally {
+            channel.close();
+            if (temp != null) Files.deleteIfExists(temp);
+            release();
+        }
+        if (temp == null) remember(target);
+    }
+
+    /**
+     * True if the file is still the version this program last wrote to it
+     * (same size and modification time), false after a change made by
+     * anything else, or if this program never wrote it.
+     */
+    public static boolean isOwnVersion(Path file) {
+        String stamp = WRITTEN.get(file.toAbsolutePath().normalize());
+        return stamp != null && stamp.equals(stamp(file));
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    private void separate() throws IOException {
+        if (inLine) {
+            if (!buf.hasRemaining()) drain();
+            buf.put((byte) ',');
+        }
+        inLine = true;
+    }
+
+    // Writes a long's digits (the caller makes room for 20 bytes)
+    private void digits(long value) {
+        if (value < 0) {
+            buf.put((byte) '-');
+        } else {
+            value = -value;
+        }
+
+        // Work with the negative value, so Long.MIN_VALUE fits
+        int count = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) count++;
+        int end = buf.position() + count;
+        for (int p = end - 1; p >= end - count; p--) {
+            buf.put(p, (byte) ('0' - value % 10));
+            value /= 10;
+        }
+        buf.position(end);
+    }
+
+    private void twoDigits(int value) {
+        buf.put((byte) ('0' + value / 10));
+        buf.put((byte) ('0' + value % 10));
+    }
+
+    // Notes the file's new version as written by this program
+    private static void remember(Path file) {
+        String stamp = stamp(file);
+        if (stamp != null) WRITTEN.put(file.toAbsolutePath().normalize(), stamp);
+    }
+
+    // "size:modified" of a file, or null if it cannot be read
+    private static String stamp(Path file) {
+        try {
+            return Files.size(file) + ":" + Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Writes the whole buffer to the channel
+    private void drain() throws IOException {
+        buf.flip();
+        if (checksums != null) checksums.update(buf);
+        while (buf.hasRemaining()) {
+            written += channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private void release() {
+        ByteBuffer b = buf;
+        buf = null;
+        synchronized (POOL) {
+            if (POOL.size() < POOL_SIZE) POOL.push(b);
+        }
+    }
+
+    private static ByteBuffer takeBuffer() {
+        synchronized (POOL) {
+            ByteBuffer b = POOL.poll();
+            if (b != null) {
+                b.clear();
+                return b;
+            }
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+}
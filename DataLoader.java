@@ -0,0 +1,309 @@
+// Background worker that reports back on the Event Dispatch Thread
+import javax.swing.SwingWorker;
+
+// For reading the CSV files while counting bytes for the progress bar
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Batches of rows handed to the services
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Loads rooms and bookings into the services after the window is already showing
+//
+// Rows are streamed from the CSV files on a background thread and added to
+// the services in batches; the table models turn each batch into one row
+// insert event on the EDT. A booking file large enough for
+// BulkBookingLoader's parallel mode is parsed in chunks on the fork-join
+// pool instead, and each chunk is added as soon as it is joined. The number of loaded rows is published through
+// publish/process and the share of the booking file read so far through the
+// progress property. When every row is in, leftover journal records are
+// replayed and the journal is attached, so changes are saved from then on.
+// Last, the room calendars (AvailabilityEngine) are built from the loaded
+// bookings and handed to RoomService.
+// A cancelled or failed load leaves the data read-only (the journal is not
+// attached), so a partial load can never overwrite booking.csv.
+//
+// With -Dhotel.storage=btree the rows come from hotel.db next to booking.csv
+// instead (imported from the CSV files the first time), and the database
+// is attached in place of the journal (see HotelDatabase).
+public class DataLoader extends SwingWorker<Boolean, Integer> {
+
+    // Rows added to a service at a time
+    private static final int BATCH_SIZE = 5_000;
+
+    // Speed of the background booking load (see Metrics)
+    private static final Metrics.Throughput READ = Metrics.throughput("csv.read.booking.background");
+
+    // Services to fill
+    private final RoomService roomService;
+    private final BookingService bookingService;
+
+    // Files to read
+    private final String roomPath;
+    private final String bookingPath;
+    private final String bookingLogPath;
+
+    // Told about progress and the result (called on the EDT)
+    private final Listener listener;
+
+    // Rows loaded so far (rooms + bookings)
+    private int loaded;
+
+    // Room calendars and occupancy totals built after a successful load
+    private volatile AvailabilityEngine availability;
+    private volatile OccupancyAnalytics analytics;
+
+    // Receives loader updates on the EDT
+    public interface Listener {
+        void rowsLoaded(int rows);
+        void loadingFinished(boolean saved, String message);
+    }
+
+    public DataLoader(RoomService roomService, BookingService bookingService,
+                      String roomPath, String bookingPath, String bookingLogPath, Listener listener) {
+        this.roomService = roomService;
+        this.bookingService = bookingService;
+        this.roomPath = roomPath;
+        this.bookingPath = bookingPath;
+        this.bookingLogPath = bookingLogPath;
+        this.listener = listener;
+    }
+
+    // Runs on the background thread; returns false if loading was cancelled
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        // New booking IDs continue after the ones handed out by earlier runs
+        GenerateID.persistTo(Paths.get(bookingPath).resolveSibling("booking.seq"));
+
+        if (HotelDatabase.isEnabled()) return loadDatabase();
+
+        // Rooms first (small file); saves that fail their checksums are replaced by the previous ones
+        verifyOrRestore(roomPath);
+        verifyOrRestore(bookingPath);
+        try (Stream<Room> rooms = ReadRooms.streamRooms(roomPath)) {
+            for (Room r : (Iterable<Room>) rooms::iterator) {
+                if (isCancelled()) return false;
+                roomService.addRoom(r);
+                loaded++;
+            }
+        }
+        publish(loaded);
+
+        // Then bookings, in batches
+        if (BulkBookingLoader.isParallel(bookingPath)) {
+            if (!loadBookingsParallel()) return false;
+        } else if (!loadBookings()) {
+            return false;
+        }
+
+        // Everything is in memory: bring in unsaved changes and start saving
+        BookingJournal journal = new BookingJournal(bookingPath, bookingLogPath);
+        journal.replayInto(bookingService);
+        journal.attach(bookingService);
+        journal.closeOnExit();
+        buildAvailability();
+        return true;
+    }
+
+    // Builds the room calendars and occupancy totals from the loaded bookings (units
+    // found only in rooms.csv are saved with their bookings, so this runs after attaching)
+    private void buildAvailability() {
+        availability = new AvailabilityEngine(roomService, bookingService);
+        roomService.setAvailability(availability);
+        analytics = new OccupancyAnalytics(roomService, bookingService);
+    }
+
+    // Room calendars, once loading has finished successfully (null before, or after a failed load)
+    public AvailabilityEngine getAvailability() {
+        return availability;
+    }
+
+    // Occupancy totals, once loading has finished successfully (null before, or after a failed load)
+    public OccupancyAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    // Streams booking.csv row by row; returns false if loading was cancelled
+    private boolean loadBookings() throws IOException {
+        Path path = Paths.get(bookingPath);
+        long size = Math.max(1, Files.size(path));
+        CountingInputStream in = new CountingInputStream(SnapshotChecksums.open(path));
+        CsvReader csv = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        long start = Metrics.start();
+        int before = loaded;
+
+        try (Stream<Booking> rows = ReadBooking.streamBookings(csv, true)) {
+            List<Booking> batch = new ArrayList<>(BATCH_SIZE);
+            for (Booking b : (Iterable<Booking>) rows::iterator) {
+                if (isCancelled()) return false;
+                batch.add(b);
+                if (batch.size() == BATCH_SIZE) {
+                    addBatch(batch);
+                    setProgress((int) Math.min(100, in.count * 100 / size));
+                }
+            }
+            addBatch(batch);
+        }
+        READ.recordSince(start, loaded - before, in.count);
+        setProgress(100);
+        return true;
+    }
+
+    // Parses booking.csv in parallel chunks (see BulkBookingLoader) and adds
+    // them in file order; returns false if loading was cancelled
+    private boolean loadBookingsParallel() throws IOException {
+        long size = Math.max(1, Files.size(Paths.get(bookingPath)));
+        long start = Metrics.start();
+        int before = loaded;
+
+        long bytes = BulkBookingLoader.forEachChunk(bookingPath, (rows, bytesRead) -> {
+            for (int from = 0; from < rows.size() && !isCancelled(); from += BATCH_SIZE) {
+                addBatch(new ArrayList<>(rows.subList(from, Math.min(rows.size(), from + BATCH_SIZE))));
+            }
+            setProgress((int) Math.min(100, bytesRead * 100 / size));
+            return !isCancelled();
+        });
+        if (isCancelled()) return false;
+        READ.recordSince(start, loaded - before, bytes);
+        setProgress(100);
+        return true;
+    }
+
+    // Loads rooms and bookings from the database, importing the CSV files into a new one
+    // (a database file only exists once an import has completed; see HotelDatabase.create)
+    private boolean loadDatabase() throws IOException {
+        String databasePath = Paths.get(bookingPath).resolveSibling("hotel.db").toString();
+        if (!Files.exists(Paths.get(databasePath))) {
+            verifyOrRestore(roomPath);
+            verifyOrRestore(bookingPath);
+            HotelDatabase.create(databasePath, roomPath, bookingPath, bookingLogPath);
+            System.out.println("Imported the CSV files into " + databasePath);
+        }
+
+        HotelDatabase db = HotelDatabase.open(databasePath);
+        boolean attached = false;
+        try {
+
+            // Rooms first, then bookings in batches (both in key order);
+            // a cancel stops the scan at the next record
+            db.rooms().forEach(r -> {
+                if (isCancelled()) throw new Cancelled();
+                roomService.addRoom(r);
+                loaded++;
+            });
+            publish(loaded);
+
+            long total = Math.max(1, db.bookings().size());
+            List<Booking> batch = new ArrayList<>(BATCH_SIZE);
+            db.bookings().forEach(b -> {
+                if (isCancelled()) throw new Cancelled();
+                batch.add(b);
+                if (batch.size() == BATCH_SIZE) {
+                    addBatch(batch);
+                    setProgress((int) Math.min(100, (loaded - roomService.getRoomCount()) * 100 / total));
+                }
+            });
+            if (isCancelled()) return false;
+            addBatch(batch);
+            setProgress(100);
+
+            db.attach(roomService, bookingService);
+            db.closeOnExit();
+            attached = true;
+            buildAvailability();
+            return true;
+        } catch (Cancelled e) {
+            return false;
+        } finally {
+            if (!attached) db.close();
+        }
+    }
+
+    // Checks a file's blocks before any row is added, so a damaged save is never half loaded
+    private static void verifyOrRestore(String filePath) throws IOException {
+        try {
+            SnapshotChecksums.verify(Paths.get(filePath));
+        } catch (SnapshotChecksums.ChecksumException e) {
+            if (!SnapshotChecksums.restorePrevious(Paths.get(filePath))) throw e;
+            System.out.println(filePath + " is damaged - loading the previous save");
+        }
+    }
+
+    // Adds a batch under one store lock, so the tables see it as one insert;
+    // a booking ID seen twice stops the load (saving would drop the second row)
+    private void addBatch(List<Booking> batch) {
+        BookingStore store = bookingService.getStore();
+        synchronized (store) {
+            for (Booking b : batch) {
+                if (!store.addIfAbsent(b)) {
+                    throw new IllegalStateException("Booking ID appears twice: " + b.getBookingID());
+                }
+            }
+        }
+        loaded += batch.size();
+        batch.clear();
+        publish(loaded);
+    }
+
+    // Runs on the EDT with the latest published row counts
+    @Override
+    protected void process(List<Integer> counts) {
+        listener.rowsLoaded(counts.get(counts.size() - 1));
+    }
+
+    // Runs on the EDT once the background work has ended
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            listener.loadingFinished(false, "Loading cancelled - data is read-only");
+            return;
+        }
+        try {
+            get();
+            listener.loadingFinished(true, "Loaded " + loaded + " rows");
+        } catch (Exception e) {
+            e.printStackTrace();
+            listener.loadingFinished(false, "Loading failed - data is read-only: " + e.getCause());
+        }
+    }
+
+    // Thrown out of a database scan to stop it when loading is cancelled
+    private static class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Input stream that counts the bytes read through it
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -1,5 +1,14 @@
-// Used to get the current date and time
-import java.time.LocalDateTime;
+// For the file the highest reserved number is saved in
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Used to get the current date
+import java.time.LocalDate;
 
 // Used to format date into a specific string pattern
 import java.time.format.DateTimeFormatter;
@@ -7,44 +16,161 @@ import java.time.format.DateTimeFormatter;
 // List interface to store bookings
 import java.util.List;
 
+// Lock-free counter shared by every clerk
+import java.util.concurrent.atomic.AtomicLong;
+
 // Utility class for generating unique booking IDs
-public class GenerateID 
+//
+// IDs look like BKT-<n>-<ddMMyy>. The number comes from one AtomicLong that
+// only moves forward: every booking ID that enters a BookingStore (loaded
+// from CSV or created) pushes it past that ID's number, so IDs are never
+// reused - not after deletes, and not when two clerks create bookings at
+// the same moment.
+//
+// Once persistTo() has named a file, numbers are reserved in blocks: before
+// the first number of a new block is handed out, the end of the block is
+// saved to the file, and the next run starts after it. So a restart never
+// hands out a number again, even if the bookings with the highest numbers
+// were deleted (a crash only skips the rest of a block). Only the thread
+// that crosses into a new block waits for that save.
+public class GenerateID
 {
-    // Generates a booking ID based on booking count and current date
+    // Highest booking number handed out or seen so far
+    private static final AtomicLong sequence = new AtomicLong();
+
+    // Numbers reserved by each save of the high-water mark
+    private static final long BLOCK = 1000;
+
+    // File the high-water mark is saved in (null = not saved)
+    private static Path markFile;
+
+    // Highest number that may be handed out before more are reserved
+    private static volatile long reserved = Long.MAX_VALUE;
+
+    // Date format: day-month-year (ddMMyy)
+    private static final DateTimeFormatter format = DateTimeFormatter.ofPattern("ddMMyy");
+
+    // Today's date already formatted (replaced when the day changes)
+    private static volatile DateStamp today = new DateStamp(LocalDate.now());
+
+    // Generates the next booking ID
+    public static String generateID()
+    {
+        // BKT = Booking Ticket
+        // sequence = next unused booking number
+        // stamp.text = current date
+        long n = sequence.incrementAndGet();
+        if (n > reserved)
+        {
+            reserve(n);
+        }
+        DateStamp stamp = today;
+        LocalDate now = LocalDate.now();
+        if (stamp.day != now.toEpochDay())
+        {
+            stamp = new DateStamp(now);
+            today = stamp;
+        }
+        return "BKT-" + n + "-" + stamp.text;
+    }
+
+    // Generates a booking ID, seeding the counter from the list if nothing was seen yet
     public static String generateID(List<Booking> bookings)
     {
-        // Variable to store the generated ID
-        String ID;
+        if (sequence.get() == 0)
+        {
+            for (Booking b : bookings)
+            {
+                observe(b.getBookingID());
+            }
+        }
+        return generateID();
+    }
+
+    // Starts saving the high-water mark in a file, continuing after the mark
+    // the last run saved there (call once at startup, before any ID is generated)
+    public static synchronized void persistTo(Path file) throws IOException
+    {
+        if (Files.exists(file))
+        {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+            try
+            {
+                sequence.accumulateAndGet(Long.parseLong(text), Math::max);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException(file + " does not hold a booking number: " + text);
+            }
+        }
+        markFile = file;
+        reserved = sequence.get();
+    }
 
-        // Get the current date and time
-        LocalDateTime now = LocalDateTime.now();
+    // Saves a mark past n before n is handed out (throws if it cannot be saved;
+    // n is then skipped, and the next ID tries again)
+    private static synchronized void reserve(long n)
+    {
+        if (n <= reserved) return;
+        long mark = n + BLOCK;
+        Path temp = markFile.resolveSibling(markFile.getFileName() + ".tmp");
+        try
+        {
+            Files.write(temp, String.valueOf(mark).getBytes(StandardCharsets.US_ASCII),
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(temp, markFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not save the booking number", e);
+        }
+        reserved = mark;
+    }
 
-        // Date format: day-month-year (ddMMyy)
-        DateTimeFormatter format = DateTimeFormatter.ofPattern("ddMMyy");
+    // Moves the counter past the number in an existing BKT-n-ddMMyy ID (other IDs are ignored)
+    public static void observe(String bookingID)
+    {
+        long n = numberOf(bookingID);
+        if (n > 0)
+        {
+            sequence.accumulateAndGet(n, Math::max);
+        }
+    }
 
-        // Create booking ID
-        // BKT = Booking Ticket
-        // count(bookings) = number of existing bookings
-        // now.format(format) = current date
-        ID = "BKT-" + count(bookings) + "-" + now.format(format);
+    // Returns the n of a BKT-n-ddMMyy ID, or -1 if the ID has another format
+    static long numberOf(String bookingID)
+    {
+        if (bookingID == null || !bookingID.startsWith("BKT-")) return -1;
 
-        // Return the generated booking ID
-        return ID;
+        long n = 0;
+        int i = 4;
+        for (; i < bookingID.length() && i < 22; i++)
+        {
+            char c = bookingID.charAt(i);
+            if (c == '-') break;
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return i > 4 && i < bookingID.length() && bookingID.charAt(i) == '-' ? n : -1;
     }
 
     // Counts how many bookings exist in the list
     public static int count(List<Booking> bookings)
     {
-        // Counter variable
-        int bookingCount = 0;
+        return bookings.size();
+    }
 
-        // Loop until bookingCount equals the size of the list
-        while (bookingCount < bookings.size()) 
+    // A date together with its ddMMyy text
+    private static final class DateStamp
+    {
+        final long day;
+        final String text;
+
+        DateStamp(LocalDate date)
         {
-            bookingCount++;
+            this.day = date.toEpochDay();
+            this.text = date.format(format);
         }
-
-        // Return total number of bookings
-        return bookingCount;
     }
 }
@@ -0,0 +1,340 @@
+// For case-insensitive matching
+import java.util.Locale;
+
+// Sorted name index, trigram index and the result collections
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Finds bookings by guest name (surname, first or middle name) as the clerk types
+//
+// Every distinct name (lower case) is a key of a sorted map whose value lists
+// the bookings carrying that name, so all names starting with what was typed
+// are one subMap() away. Typo-tolerant matches ("Smiht", "Garica") allow one
+// edit for words of 3-5 letters and two for longer words, counting a swap of
+// neighbouring letters as one edit. Candidates for them come from an index of
+// the three-letter pieces (trigrams) of every name; queries too short for the
+// trigrams to narrow things down check every distinct name, which stays cheap
+// because there are far fewer distinct names than bookings.
+//
+// A query with several words ("jane doe") only matches bookings where every
+// word matches one of the booking's names.
+//
+// The index listens to the booking store, so creating, replacing and
+// deleting bookings keep it up to date at the cost of a few map lookups.
+public class GuestSearchIndex implements BookingListener {
+
+    // lower-case name -> bookings with that surname, first or middle name
+    // (sorted for prefix searches, hashed for the updates)
+    private final TreeMap<String, Posting> names = new TreeMap<>();
+    private final Map<String, Posting> postings = new HashMap<>();
+
+    // name as stored -> its lower-case key ("" for a blank name); names are
+    // shared Strings (NameDictionary), so this is a lookup on a cached hash
+    private final Map<String, String> keyCache = new HashMap<>();
+
+    // trigram -> names containing it ("^" marks the start of a name)
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+    // Indexes the bookings already in the store and follows every later change
+    GuestSearchIndex(BookingStore store) {
+        synchronized (store) {
+            for (Booking b : store) {
+                add(b);
+            }
+            store.addListener(this);
+        }
+    }
+
+    /**
+     * Returns up to limit bookings whose names match the query: first the
+     * bookings with a name starting with the query (in name order), then
+     * those that only match with a typo (closest first).
+     */
+    public synchronized List<Booking> search(String query, int limit) {
+        List<Booking> found = new ArrayList<>();
+        String[] terms = terms(query);
+        if (terms.length == 0 || limit <= 0) return found;
+
+        // The longest word picks the candidates, the others filter them
+        String driver = terms[0];
+        for (String t : terms) {
+            if (t.length() > driver.length()) driver = t;
+        }
+        Set<Booking> seen = new HashSet<>();
+
+        // Names starting with the word
+        for (Posting p : names.subMap(driver, true, driver + Character.MAX_VALUE, false).values()) {
+            if (collect(p, terms, seen, found, limit)) return found;
+        }
+
+        // Names that start with the word give or take a typo
+        for (String name : fuzzyNames(driver)) {
+            if (collect(postings.get(name), terms, seen, found, limit)) return found;
+        }
+        return found;
+    }
+
+    // Number of distinct names in the index
+    public synchronized int nameCount() {
+        return names.size();
+    }
+
+    // ======================
+    // BookingListener methods
+    // Called inside the store's lock, in the order the changes happen
+    // ======================
+
+    @Override
+    public synchronized void bookingAdded(int row, Booking booking) {
+        add(booking);
+    }
+
+    @Override
+    public synchronized void bookingRemoved(int row, Booking booking) {
+        remove(booking);
+    }
+
+    @Override
+    public synchronized void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        remove(oldBooking);
+        add(newBooking);
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // A booking is listed once under each of its distinct names
+    private void add(Booking b) {
+        String surname = cachedKey(b.getSurname());
+        String first = cachedKey(b.getFirstName());
+        String middle = cachedKey(b.getMiddleName());
+        add(surname, b);
+        if (first != null && !first.equals(surname)) add(first, b);
+        if (middle != null && !middle.equals(surname) && !middle.equals(first)) add(middle, b);
+    }
+
+    private void add(String key, Booking b) {
+        if (key == null) return;
+        Posting p = postings.get(key);
+        if (p == null) {
+            p = new Posting();
+            names.put(key, p);
+            postings.put(key, p);
+            for (String gram : trigrams(key)) {
+                trigrams.computeIfAbsent(gram, g -> new HashSet<>()).add(key);
+            }
+        }
+        p.add(b);
+    }
+
+    private void remove(Booking b) {
+        String surname = cachedKey(b.getSurname());
+        String first = cachedKey(b.getFirstName());
+        String middle = cachedKey(b.getMiddleName());
+        remove(surname, b);
+        if (first != null && !first.equals(surname)) remove(first, b);
+        if (middle != null && !middle.equals(surname) && !middle.equals(first)) remove(middle, b);
+    }
+
+    private void remove(String key, Booking b) {
+        if (key == null) return;
+        Posting p = postings.get(key);
+        if (p == null || !p.remove(b) || p.size > 0) return;
+
+        // Last booking with this name
+        names.remove(key);
+        postings.remove(key);
+        for (String gram : trigrams(key)) {
+            Set<String> withGram = trigrams.get(gram);
+            withGram.remove(key);
+            if (withGram.isEmpty()) trigrams.remove(gram);
+        }
+    }
+
+    // Adds the posting's bookings that match every term; returns true once limit is reached
+    private boolean collect(Posting p, String[] terms, Set<Booking> seen, List<Booking> found, int limit) {
+        for (int i = 0; i < p.size; i++) {
+            Booking b = p.items[i];
+            if (terms.length > 1 && !matchesAll(b, terms)) continue;
+            if (!seen.add(b)) continue;
+            found.add(b);
+            if (found.size() >= limit) return true;
+        }
+        return false;
+    }
+
+    private boolean matchesAll(Booking b, String[] terms) {
+        String surname = cachedKey(b.getSurname());
+        String first = cachedKey(b.getFirstName());
+        String middle = cachedKey(b.getMiddleName());
+        for (String t : terms) {
+            if (!matches(t, surname) && !matches(t, first) && !matches(t, middle)) return false;
+        }
+        return true;
+    }
+
+    // True if the name starts with the term, give or take a typo
+    private static boolean matches(String term, String name) {
+        if (name == null) return false;
+        if (name.startsWith(term)) return true;
+        int edits = maxEdits(term.length());
+        return edits > 0 && prefixDistance(term, name, edits) <= edits;
+    }
+
+    // Names that are not a plain prefix match but start with the term give or take a typo, closest first
+    private List<String> fuzzyNames(String term) {
+        int edits = maxEdits(term.length());
+        if (edits == 0) return new ArrayList<>();
+
+        // One edit changes at most 4 trigrams (a swap), so a close name shares the rest
+        List<String> grams = trigrams(term);
+        int needed = grams.size() - 4 * edits;
+        Iterable<String> candidates;
+        if (needed < 1) {
+            candidates = names.keySet();
+        } else {
+            Map<String, Integer> shared = new HashMap<>();
+            for (String gram : grams) {
+                Set<String> withGram = trigrams.get(gram);
+                if (withGram == null) continue;
+                for (String name : withGram) {
+                    shared.merge(name, 1, Integer::sum);
+                }
+            }
+            List<String> likely = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : shared.entrySet()) {
+                if (e.getValue() >= needed) likely.add(e.getKey());
+            }
+            candidates = likely;
+        }
+
+        // Keep the close ones, sorted by distance and then name
+        Map<String, Integer> distance = new HashMap<>();
+        for (String name : candidates) {
+            if (name.startsWith(term)) continue;
+            int d = prefixDistance(term, name, edits);
+            if (d <= edits) distance.put(name, d);
+        }
+        List<String> close = new ArrayList<>(distance.keySet());
+        close.sort(Comparator.comparing((String name) -> distance.get(name)).thenComparing(name -> name));
+        return close;
+    }
+
+    // Edits allowed for a word: none for 1-2 letters, one for 3-5, two for longer words
+    static int maxEdits(int length) {
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+
+    /**
+     * Smallest number of edits (insert, delete, change, swap of neighbours)
+     * turning the term into some prefix of the name; anything above max is
+     * reported as max + 1.
+     */
+    static int prefixDistance(String term, String name, int max) {
+        int m = term.length();
+        int n = Math.min(name.length(), m + max);
+
+        // Three rows of the edit-distance table (two back for swaps)
+        int[] before = new int[n + 1];
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) prev[j] = j;
+
+        for (int i = 1; i <= m; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            char c = term.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                char d = name.charAt(j - 1);
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + (c == d ? 0 : 1));
+                if (i > 1 && j > 1 && c == name.charAt(j - 2) && term.charAt(i - 2) == d) {
+                    v = Math.min(v, before[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = before;
+            before = prev;
+            prev = cur;
+            cur = t;
+        }
+
+        // Best match against any prefix of the name
+        int best = max + 1;
+        for (int j = Math.max(0, m - max); j <= n; j++) {
+            best = Math.min(best, prev[j]);
+        }
+        return best;
+    }
+
+    // key(name) without lower-casing a name seen before
+    private String cachedKey(String name) {
+        if (name == null) return null;
+        String k = keyCache.get(name);
+        if (k == null) {
+            k = key(name);
+            if (k == null) k = "";
+            keyCache.put(name, k);
+        }
+        return k.isEmpty() ? null : k;
+    }
+
+    // Index key of a name (null for a missing or blank name)
+    private static String key(String name) {
+        if (name == null) return null;
+        String k = name.trim().toLowerCase(Locale.ROOT);
+        return k.isEmpty() ? null : k;
+    }
+
+    // Lower-case words of a query
+    private static String[] terms(String query) {
+        String k = key(query);
+        return k == null ? new String[0] : k.split("\\s+");
+    }
+
+    // Trigrams of a name, with "^" marking its start
+    private static List<String> trigrams(String key) {
+        String padded = "^" + key;
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Bookings with one name, as a growable array (removal swaps in the last one)
+    private static class Posting {
+        Booking[] items = new Booking[2];
+        int size;
+
+        void add(Booking b) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = b;
+        }
+
+        boolean remove(Booking b) {
+            int i = indexOf(b);
+            if (i < 0) return false;
+            items[i] = items[--size];
+            items[size] = null;
+            return true;
+        }
+
+        // Searches from the end: recent bookings are the likeliest to change
+        private int indexOf(Booking b) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (items[i] == b) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+// For the database file
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// For handling dates without time
+import java.time.LocalDate;
+
+// For the rooms read by an import
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Background commits
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Embedded database for rooms and bookings (an alternative to the CSV files)
+//
+// One file (DB/hotel.db) holds two B+trees: bookings by booking ID and rooms
+// by unit number (see BTree and PageFile). Choose it with
+// -Dhotel.storage=btree; the default is still the CSV files with the
+// booking journal. On the first run the CSV files (and any journal left
+// over) are imported, after that the CSV files are no longer read.
+//
+// The services keep their in-memory stores and indexes; attach() registers
+// a listener that saves or deletes each changed record in the trees, so a
+// change costs a few page writes instead of a rewrite of the file.
+// BookingService commits before createBooking/updateBookingStatus/
+// deleteBooking return; other changes are committed at least once a second.
+//
+// Copy between the database and the CSV files with:
+//   java HotelDatabase import <hotel.db> <rooms.csv> <booking.csv>
+//   java HotelDatabase export <hotel.db> <rooms.csv> <booking.csv>
+public class HotelDatabase implements Closeable, BookingListener, RoomListener {
+
+    // System property that selects the storage ("csv" or "btree")
+    public static final String STORAGE_PROPERTY = "hotel.storage";
+
+    // Pages kept in the cache (4 KiB each)
+    private static final int CACHE_PAGES = 4096;
+
+    // How often changes not committed by BookingService are committed
+    private static final long COMMIT_INTERVAL_MILLIS = 1000;
+
+    // Tree slots in the file
+    private static final int BOOKING_SLOT = 0;
+    private static final int ROOM_SLOT = 1;
+
+    // Failed saves from the listeners (see Metrics)
+    private static final Metrics.Counter WRITE_ERRORS = Metrics.counter("db.write.errors");
+
+    // The file, its trees and the attached services
+    private final PageFile file;
+    private final BTree<String, Booking> bookings;
+    private final BTree<Integer, Room> rooms;
+    private RoomService roomService;
+    private BookingService bookingService;
+    private ScheduledExecutorService committer;
+
+    private HotelDatabase(PageFile file) {
+        this.file = file;
+        this.bookings = new BTree<>(file, BOOKING_SLOT, new BookingCodec());
+        this.rooms = new BTree<>(file, ROOM_SLOT, new RoomCodec());
+    }
+
+    // True if -Dhotel.storage=btree was given
+    public static boolean isEnabled() {
+        return "btree".equalsIgnoreCase(System.getProperty(STORAGE_PROPERTY, "csv"));
+    }
+
+    // Opens (or creates) the database file
+    public static HotelDatabase open(String path) throws IOException {
+        return new HotelDatabase(PageFile.open(Paths.get(path), CACHE_PAGES));
+    }
+
+    // True if the file was created by open() (it may have been written to since)
+    public boolean isNew() {
+        return file.isNew();
+    }
+
+    public Repository<String, Booking> bookings() {
+        return bookings;
+    }
+
+    public Repository<Integer, Room> rooms() {
+        return rooms;
+    }
+
+    // ======================
+    // Import and export
+    // ======================
+
+    /**
+     * Creates the database file from rooms.csv and booking.csv. The import is
+     * written to <file>.tmp and only renamed to the database file once it has
+     * completed, so a failed or interrupted import leaves no database behind
+     * and is simply run again next time.
+     */
+    public static void create(String path, String roomPath, String bookingPath,
+                              String bookingLogPath) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        // Anything left by an interrupted import (its .wal would be replayed into the new file)
+        Files.deleteIfExists(temp.resolveSibling(temp.getFileName() + ".wal"));
+        Files.deleteIfExists(temp);
+
+        try (HotelDatabase db = open(temp.toString())) {
+            db.importCsv(roomPath, bookingPath, bookingLogPath);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies rooms.csv and booking.csv into the database. The booking journal
+     * is recovered first, so changes not yet in booking.csv are imported too.
+     * A file that cannot be read to the end fails the import (rows with a bad
+     * value are still skipped, as when loading the CSV files).
+     */
+    public void importCsv(String roomPath, String bookingPath, String bookingLogPath) throws IOException {
+        for (Room r : readRooms(roomPath)) {
+            rooms.save(r);
+        }
+        for (Booking b : new BookingJournal(bookingPath, bookingLogPath).recover()) {
+            bookings.save(b);
+        }
+        file.commit();
+    }
+
+    // All rooms of a rooms.csv (none if it is missing); read errors are thrown
+    private static List<Room> readRooms(String roomPath) throws IOException {
+        List<Room> list = new ArrayList<>();
+        if (!Files.exists(Paths.get(roomPath))) return list;
+        try (Stream<Room> rows = ReadRooms.streamRooms(roomPath)) {
+            rows.forEach(list::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return list;
+    }
+
+    // Writes the database out as rooms.csv and booking.csv
+    public void exportCsv(String roomPath, String bookingPath) throws IOException {
+        Repository.copy(rooms, CsvRepository.newRooms(roomPath));
+        Repository.copy(bookings, CsvRepository.newBookings(bookingPath));
+    }
+
+    // ======================
+    // Saving the services' changes
+    // ======================
+
+    // Starts saving every change made through the services
+    public void attach(RoomService roomService, BookingService bookingService) {
+        this.roomService = roomService;
+        this.bookingService = bookingService;
+
+        committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hotel-database-commit");
+            t.setDaemon(true);
+            return t;
+        });
+        committer.scheduleWithFixedDelay(() -> {
+            try {
+                file.commit();
+            } catch (Exception e) {
+                WRITE_ERRORS.increment();
+                e.printStackTrace();
+            }
+        }, COMMIT_INTERVAL_MILLIS, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        roomService.addRoomListener(this);
+        bookingService.addBookingListener(this);
+        bookingService.setRepository(bookings);
+    }
+
+    // Commits and closes the database when the JVM exits
+    public void closeOnExit() {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "hotel-database-shutdown"));
+    }
+
+    // Stops saving changes, commits and closes the file
+    @Override
+    public void close() throws IOException {
+        if (bookingService != null) {
+            committer.shutdownNow();
+            roomService.removeRoomListener(this);
+            bookingService.removeBookingListener(this);
+            bookingService.setRepository(null);
+            roomService = null;
+            bookingService = null;
+        }
+        file.close();
+    }
+
+    // ======================
+    // BookingListener and RoomListener methods
+    // Called inside the services' mutations, so records are saved in change order
+    // ======================
+
+    @Override
+    public void bookingAdded(int row, Booking booking) {
+        save(bookings, booking);
+    }
+
+    @Override
+    public void bookingRemoved(int row, Booking booking) {
+        delete(bookings, booking.getBookingID());
+    }
+
+    @Override
+    public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        if (!oldBooking.getBookingID().equals(newBooking.getBookingID())) {
+            delete(bookings, oldBooking.getBookingID());
+        }
+        save(bookings, newBooking);
+    }
+
+    @Override
+    public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+        save(bookings, booking);
+    }
+
+    @Override
+    public void bookingUnitChanged(int row, Booking booking, int oldUnit) {
+        save(bookings, booking);
+    }
+
+    @Override
+    public void roomAdded(int row, Room room) {
+        save(rooms, room);
+    }
+
+    @Override
+    public void roomRemoved(int row, Room room) {
+        delete(rooms, room.getUnitNumber());
+    }
+
+    @Override
+    public void roomUpdated(int row, Room room) {
+        save(rooms, room);
+    }
+
+    private static <K, V> void save(Repository<K, V> repository, V value) {
+        try {
+            repository.save(value);
+        } catch (IOException e) {
+            WRITE_ERRORS.increment();
+            e.printStackTrace();
+        }
+    }
+
+    private static <K, V> void delete(Repository<K, V> repository, K key) {
+        try {
+            repository.delete(key);
+        } catch (IOException e) {
+            WRITE_ERRORS.increment();
+            e.printStackTrace();
+        }
+    }
+
+    // ======================
+    // Record formats
+    // ======================
+
+    // Stored instead of an epoch day when a date is missing (as in BookingSnapshot)
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    // Statuses by ordinal
+    private static final BookingStatus[] BOOKING_STATUSES = BookingStatus.values();
+    private static final RoomStatus[] ROOM_STATUSES = RoomStatus.values();
+
+    // Key: booking ID as UTF-8
+    // Value: surname, first name, middle name (short length + UTF-8, -1 = null),
+    //        int party size, int start epoch day, int end epoch day, byte status ordinal,
+    //        int unit (0 = none; missing in records saved before units were kept)
+    private static class BookingCodec implements RecordCodec<String, Booking> {
+
+        public byte[] key(String bookingID) {
+            return bookingID.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String keyOf(Booking b) {
+            return b.getBookingID();
+        }
+
+        public byte[] encode(Booking b) {
+            byte[] surname = utf8(b.getSurname());
+            byte[] firstName = utf8(b.getFirstName());
+            byte[] middleName = utf8(b.getMiddleName());
+            ByteBuffer buf = ByteBuffer.allocate(6 + length(surname) + length(firstName) + length(middleName) + 17);
+            putText(buf, surname);
+            putText(buf, firstName);
+            putText(buf, middleName);
+            buf.putInt(b.getPartySize());
+            buf.putInt(epochDay(b.getStartDate()));
+            buf.putInt(epochDay(b.getEndDate()));
+            buf.put((byte) b.getBookingStatus().ordinal());
+            buf.putInt(b.getUnit());
+            return buf.array();
+        }
+
+        public Booking decode(byte[] key, byte[] value) {
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            NameDictionary names = NameDictionary.GUEST_NAMES;
+            String surname = names.intern(getText(buf));
+            String firstName = names.intern(getText(buf));
+            String middleName = names.intern(getText(buf));
+            int partySize = buf.getInt();
+            LocalDate start = date(buf.getInt());
+            LocalDate end = date(buf.getInt());
+            BookingStatus status = BOOKING_STATUSES[buf.get()];
+            Booking b = new Booking(new String(key, StandardCharsets.UTF_8), surname, firstName, middleName,
+                                    partySize, start, end, status);
+            if (buf.remaining() >= 4) b.setUnit(buf.getInt());
+            return b;
+        }
+    }
+
+    // Key: unit number as a big-endian int with the sign bit flipped (so keys sort like numbers)
+    // Value: int capacity, byte status ordinal, booking ID (short length + UTF-8, -1 = null), double base price
+    private static class RoomCodec implements RecordCodec<Integer, Room> {
+
+        public byte[] key(Integer unitNumber) {
+            return ByteBuffer.allocate(4).putInt(unitNumber ^ Integer.MIN_VALUE).array();
+        }
+
+        public Integer keyOf(Room r) {
+            return r.getUnitNumber();
+        }
+
+        public byte[] encode(Room r) {
+            byte[] bookingID = utf8(r.getBookingID());
+            ByteBuffer buf = ByteBuffer.allocate(4 + 1 + 2 + length(bookingID) + 8);
+            buf.putInt(r.getUnitCapacity());
+            buf.put((byte) r.getRoomStatus().ordinal());
+            putText(buf, bookingID);
+            buf.putDouble(r.getBasePrice());
+            return buf.array();
+        }
+
+        public Room decode(byte[] key, byte[] value) {
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            int unitNumber = ByteBuffer.wrap(key).getInt() ^ Integer.MIN_VALUE;
+            int capacity = buf.getInt();
+            RoomStatus status = ROOM_STATUSES[buf.get()];
+            String bookingID = getText(buf);
+            return new Room(unitNumber, capacity, status.getLabel(), bookingID, buf.getDouble());
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] text) {
+        return text == null ? 0 : text.length;
+    }
+
+    private static void putText(ByteBuffer buf, byte[] text) {
+        buf.putShort((short) (text == null ? -1 : text.length));
+        if (text != null) buf.put(text);
+    }
+
+    private static String getText(ByteBuffer buf) {
+        int length = buf.getShort();
+        if (length < 0) return null;
+        String text = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return text;
+    }
+
+    private static int epochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    // ======================
+    // Command line
+    // ======================
+
+    // Copies between the database and the CSV files
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.out.println("Usage: java HotelDatabase import <hotel.db> <rooms.csv> <booking.csv>");
+            System.out.println("       java HotelDatabase export <hotel.db> <rooms.csv> <booking.csv>");
+            return;
+        }
+
+        try (HotelDatabase db = open(args[1])) {
+            if (args[0].equals("import")) {
+                db.importCsv(args[2], args[3], args[3].replaceAll("\\.csv$", "") + ".log");
+            } else {
+                db.exportCsv(args[2], args[3]);
+            }
+            System.out.println((args[0].equals("import") ? "Imported " : "Exported ")
+                               + db.rooms.size() + " rooms and " + db.bookings.size() + " bookings");
+        }
+    }
+}
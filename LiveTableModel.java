@@ -0,0 +1,146 @@
+// Base class for Swing table models
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Event queue shared between the changing thread and the EDT
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Table model that reads its rows straight from a service and is told about
+// changes row by row
+//
+// Services change on whatever thread the clerk's action runs on, while Swing
+// must only see changes on the Event Dispatch Thread. Subclasses post
+// inserted/deleted/updated rows from any thread; the events are queued and
+// applied on the EDT in the order they happened, with runs of neighbouring
+// inserts merged into one event. The model keeps its own row count, which
+// only changes on the EDT, so JTable always sees a count that matches the
+// events it has received.
+public abstract class LiveTableModel extends AbstractTableModel {
+
+    // Version of the serialized form (models are not actually serialized)
+    private static final long serialVersionUID = 1L;
+
+    // Event types
+    private static final int INSERTED = 0;
+    private static final int DELETED = 1;
+    private static final int UPDATED = 2;
+    private static final int RELOADED = 3;
+
+    // Time the EDT spends applying a batch of row events (see Metrics)
+    private static final Metrics.Histogram REFRESH_TIME = Metrics.histogram("ui.table.refresh");
+
+    // Column names shown in the table header
+    private final String[] columns;
+
+    // Events not yet applied on the EDT ({type, row})
+    private final Queue<int[]> events = new ConcurrentLinkedQueue<>();
+
+    // True while a drain of the queue is scheduled on the EDT
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // Number of rows JTable knows about (only changed on the EDT)
+    private int rowCount;
+
+    protected LiveTableModel(String[] columns) {
+        this.columns = columns;
+    }
+
+    // Sets the row count the table starts with (call before the table is shown)
+    protected void setInitialRowCount(int rows) {
+        rowCount = rows;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    // ======================
+    // Posting changes (any thread)
+    // ======================
+
+    protected void postInserted(int row) {
+        post(INSERTED, row);
+    }
+
+    protected void postDeleted(int row) {
+        post(DELETED, row);
+    }
+
+    protected void postUpdated(int row) {
+        post(UPDATED, row);
+    }
+
+    // Re-reads every row, which now number "rows" (for changes too big for row events)
+    protected void postReload(int rows) {
+        post(RELOADED, rows);
+    }
+
+    private void post(int type, int row) {
+        events.add(new int[]{type, row});
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    // Applies the queued events in order on the EDT
+    private void drain() {
+        drainScheduled.set(false);
+        long start = REFRESH_TIME.start();
+
+        // Range of inserts or updates waiting to be fired as one event
+        int pendingType = -1;
+        int first = 0;
+        int last = -1;
+
+        int[] e;
+        while ((e = events.poll()) != null) {
+            int type = e[0];
+            int row = e[1];
+
+            // Extend the pending range if this event continues it
+            if (type == pendingType && row == last + 1) {
+                last = row;
+                if (type == INSERTED) rowCount++;
+                continue;
+            }
+            fire(pendingType, first, last);
+            pendingType = -1;
+
+            if (type == DELETED) {
+                rowCount--;
+                fireTableRowsDeleted(row, row);
+            } else if (type == RELOADED) {
+                rowCount = row;
+                fireTableDataChanged();
+            } else {
+                if (type == INSERTED) rowCount++;
+                pendingType = type;
+                first = row;
+                last = row;
+            }
+        }
+        fire(pendingType, first, last);
+        REFRESH_TIME.recordSince(start);
+    }
+
+    private void fire(int type, int first, int last) {
+        if (type == INSERTED) {
+            fireTableRowsInserted(first, last);
+        } else if (type == UPDATED) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+}
@@ -1,3 +1,6 @@
+// For the empty lists the services start with
+import java.util.ArrayList;
+
 // Ensures Swing components are created and updated on the Event Dispatch Thread
 import javax.swing.SwingUtilities;
 
@@ -13,17 +16,22 @@ public class Main {
         // File path for bookings CSV data
         String bookingPath = "DB/booking.csv";
 
-        // Load room data from CSV file and pass it to RoomService
-        RoomService roomService = new RoomService(ReadRooms.readRooms(roomPath));
+        // File path for the booking change log
+        String bookingLogPath = "DB/booking.log";
 
-        // Load booking data from CSV file and pass it to BookingService
-        BookingService bookingService = new BookingService(ReadBooking.readBookings(bookingPath));
+        // Services start empty and are filled in the background once the window is up
+        RoomService roomService = new RoomService(new ArrayList<>());
+        BookingService bookingService = new BookingService(new ArrayList<>());
 
         // Start the Swing UI on the Event Dispatch Thread (required for Swing safety)
         SwingUtilities.invokeLater(() -> {
 
             // Create and display the main application window
-            new MainLayout(roomService, bookingService);
+            MainLayout mainWindow = new MainLayout(roomService, bookingService);
+            mainWindow.setVisible(true);
+
+            // Load rooms, bookings and the change log without blocking the window
+            mainWindow.startLoading(roomPath, bookingPath, bookingLogPath);
         });
     }
 }
@@ -1,18 +1,24 @@
 // Swing components (JFrame, JButton, JTable, etc.)
 import javax.swing.*;
 
-// Table model for managing JTable data
-import javax.swing.table.DefaultTableModel;
-
 // Layout managers (BorderLayout, GridLayout, GridBagLayout)
 import java.awt.*;
 
-// Date handling (modern Java time API)
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+// For the guest search box
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
-// List interface for storing rooms and bookings
+// Thrown if the CSV files cannot be watched, or a booking cannot be saved
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Empty lists for the services before loading, search results
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Date handling (modern Java time API)
+import java.time.LocalDate;
 
 /*
    MainLayout.java
@@ -23,7 +29,10 @@ import java.util.List;
 */
 
 // Main window class that extends JFrame (a window)
-public class MainLayout extends JFrame {
+public class MainLayout extends JFrame implements DataLoader.Listener {
+
+    // Version of the serialized form (the window is not actually serialized)
+    private static final long serialVersionUID = 1L;
 
     // Service class that provides room-related data
     private RoomService roomService;
@@ -37,14 +46,64 @@ public class MainLayout extends JFrame {
     // Table to display bookings
     private JTable bookingTable;
 
-    // Model that controls room table data
-    private DefaultTableModel roomTableModel;
+    // Model that reads room table data straight from the room service
+    private RoomTableModel roomTableModel;
+
+    // Model that reads booking table data straight from the booking service
+    private BookingTableModel bookingTableModel;
+
+    // Disabled until loading has finished and changes can be saved
+    private JButton btnAddBooking;
+
+    // Status bar shown while the data is loading
+    private JLabel loadStatus;
+    private JProgressBar loadProgress;
+    private JButton btnCancelLoad;
+
+    // Background loader (null once finished)
+    private DataLoader loader;
+
+    // Room calendars used by the Add Booking dialog (null until a load succeeded)
+    private AvailabilityEngine availability;
+
+    // Occupancy totals shown by the Occupancy button (null until a load succeeded)
+    private OccupancyAnalytics analytics;
+    private JButton btnOccupancy;
+
+    // Files the data was loaded from (watched for hand edits once loaded)
+    private String roomPath;
+    private String bookingPath;
+
+    // Most bookings a guest search shows, and how long typing must pause before it runs
+    private static final int SEARCH_LIMIT = 10_000;
+    private static final int SEARCH_DELAY_MILLIS = 150;
+
+    // Guest search box above the bookings table, and the number of matches
+    private JTextField searchField;
+    private JLabel searchResult;
+
+    // Runs the search once typing pauses
+    private Timer searchTimer;
 
-    // Model that controls booking table data
-    private DefaultTableModel bookingTableModel;
+    // Bookings per page when the table is filtered or sorted
+    private static final int PAGE_SIZE = 500;
 
-    // Formatter for displaying dates consistently in tables
-    private DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // Filter, sort order and page of the bookings table (see BookingQuery)
+    private final BookingQuery bookingQuery = new BookingQuery();
+
+    // Page bar below the bookings table
+    private JComboBox<String> statusFilter;
+    private JComboBox<String> sortChoice;
+    private JCheckBox sortDescending;
+    private JButton btnPrevPage;
+    private JButton btnNextPage;
+    private JLabel pageInfo;
+
+    // True while the bookings table shows search results or a page instead of the live table
+    private volatile boolean searching;
+
+    // True while a re-run of the search (after a booking change) is scheduled
+    private final AtomicBoolean searchAgainScheduled = new AtomicBoolean();
 
     // Constructor receives services and sets up the window
     public MainLayout(RoomService roomService, BookingService bookingService) {
@@ -63,8 +122,14 @@ public class MainLayout extends JFrame {
         // Center window on screen
         setLocationRelativeTo(null);
 
+        // Keep the guest name index from the start, so loading fills it as rows arrive
+        bookingService.indexGuests();
+
         // Initialize UI components
         initUI();
+
+        // Write the hot-path metrics to the log every minute
+        Metrics.startLogDump();
     }
 
     // Builds all UI components and layouts
@@ -76,19 +141,22 @@ public class MainLayout extends JFrame {
         // Sidebar panel for navigation buttons
         JPanel sidebar = new JPanel();
 
-        // GridLayout: 4 rows, 1 column, spacing 5px
-        sidebar.setLayout(new GridLayout(4, 1, 5, 5));
+        // GridLayout: 5 rows, 1 column, spacing 5px
+        sidebar.setLayout(new GridLayout(5, 1, 5, 5));
 
         // Sidebar buttons
         JButton btnRooms = new JButton("View Rooms");
         JButton btnBookings = new JButton("View Bookings");
-        JButton btnAddBooking = new JButton("Add Booking");
+        btnAddBooking = new JButton("Add Booking");
+        btnOccupancy = new JButton("Occupancy");
+        btnOccupancy.setEnabled(false);
         JButton btnExit = new JButton("Exit");
 
         // Add buttons to sidebar
         sidebar.add(btnRooms);
         sidebar.add(btnBookings);
         sidebar.add(btnAddBooking);
+        sidebar.add(btnOccupancy);
         sidebar.add(btnExit);
 
         // Place sidebar on the left
@@ -100,11 +168,8 @@ public class MainLayout extends JFrame {
         // Place main panel in the center
         add(mainPanel, BorderLayout.CENTER);
 
-        // Column names for rooms table
-        String[] roomColumns = {"Unit#", "Capacity", "Status", "BookingID", "Price"};
-
-        // Model for rooms table
-        roomTableModel = new DefaultTableModel(roomColumns, 0);
+        // Model for rooms table (rows are read from the service when drawn)
+        roomTableModel = new RoomTableModel(roomService);
 
         // Rooms JTable
         roomTable = new JTable(roomTableModel);
@@ -115,11 +180,8 @@ public class MainLayout extends JFrame {
         // Add rooms view to CardLayout
         mainPanel.add(roomScroll, "ROOMS");
 
-        // Column names for bookings table
-        String[] bookingColumns = {"BookingID", "Surname", "Middle", "First", "PartySize", "StartDate", "EndDate", "Status"};
-
-        // Model for bookings table
-        bookingTableModel = new DefaultTableModel(bookingColumns, 0);
+        // Model for bookings table (rows are read from the service when drawn)
+        bookingTableModel = new BookingTableModel(bookingService);
 
         // Bookings JTable
         bookingTable = new JTable(bookingTableModel);
@@ -127,78 +189,248 @@ public class MainLayout extends JFrame {
         // Scroll pane for bookings table
         JScrollPane bookingScroll = new JScrollPane(bookingTable);
 
+        // Guest search box above the bookings table
+        JPanel searchBar = new JPanel(new BorderLayout(5, 5));
+        searchField = new JTextField();
+        searchResult = new JLabel(" ");
+        searchBar.add(new JLabel("Search guest:"), BorderLayout.WEST);
+        searchBar.add(searchField, BorderLayout.CENTER);
+        searchBar.add(searchResult, BorderLayout.EAST);
+
+        // Page bar below the bookings table: status filter, sort order, previous/next page
+        JPanel pageBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        statusFilter = new JComboBox<>(new String[]{"All statuses", BookingStatus.PENDING_PAYMENT.getLabel(),
+                                                    BookingStatus.PAID.getLabel(), BookingStatus.REFUNDED.getLabel()});
+        sortChoice = new JComboBox<>(new String[]{"Table order", "Booking ID", "Surname", "Party size",
+                                                  "Check-in", "Check-out"});
+        sortDescending = new JCheckBox("Descending");
+        btnPrevPage = new JButton("<");
+        btnNextPage = new JButton(">");
+        pageInfo = new JLabel(" ");
+        btnPrevPage.setEnabled(false);
+        btnNextPage.setEnabled(false);
+        pageBar.add(new JLabel("Show:"));
+        pageBar.add(statusFilter);
+        pageBar.add(new JLabel("Sort by:"));
+        pageBar.add(sortChoice);
+        pageBar.add(sortDescending);
+        pageBar.add(btnPrevPage);
+        pageBar.add(btnNextPage);
+        pageBar.add(pageInfo);
+
+        JPanel bookingPanel = new JPanel(new BorderLayout());
+        bookingPanel.add(searchBar, BorderLayout.NORTH);
+        bookingPanel.add(bookingScroll, BorderLayout.CENTER);
+        bookingPanel.add(pageBar, BorderLayout.SOUTH);
+
         // Add bookings view to CardLayout
-        mainPanel.add(bookingScroll, "BOOKINGS");
+        mainPanel.add(bookingPanel, "BOOKINGS");
+
+        // Filter the bookings table as the clerk types (once typing pauses)
+        searchTimer = new Timer(SEARCH_DELAY_MILLIS, e -> runSearch());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
 
-        // CardLayout controller
-        CardLayout cl = (CardLayout) mainPanel.getLayout();
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
 
-        // Show rooms table when button is clicked
-        btnRooms.addActionListener(e -> {
-            populateRoomTable();
-            cl.show(mainPanel, "ROOMS");
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
         });
 
-        // Show bookings table when button is clicked
-        btnBookings.addActionListener(e -> {
-            populateBookingTable();
-            cl.show(mainPanel, "BOOKINGS");
+        // A new filter or sort order starts at the first page
+        statusFilter.addActionListener(e -> {
+            int i = statusFilter.getSelectedIndex();
+            bookingQuery.setStatus(i == 0 ? null : BookingStatus.fromString((String) statusFilter.getSelectedItem()));
+            showPage(0);
+        });
+        sortChoice.addActionListener(e -> {
+            bookingQuery.setSort(BookingQuery.SortKey.values()[sortChoice.getSelectedIndex()], sortDescending.isSelected());
+            showPage(0);
+        });
+        sortDescending.addActionListener(e -> {
+            bookingQuery.setSort(BookingQuery.SortKey.values()[sortChoice.getSelectedIndex()], sortDescending.isSelected());
+            showPage(0);
+        });
+        btnPrevPage.addActionListener(e -> showPage(Math.max(0, bookingQuery.getOffset() - PAGE_SIZE)));
+        btnNextPage.addActionListener(e -> showPage(bookingQuery.getOffset() + PAGE_SIZE));
+
+        // Search again when bookings change while results are shown
+        bookingService.addBookingListener(new BookingListener() {
+            @Override
+            public void bookingAdded(int row, Booking booking) {
+                searchAgain();
+            }
+
+            @Override
+            public void bookingRemoved(int row, Booking booking) {
+                searchAgain();
+            }
+
+            @Override
+            public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+                searchAgain();
+            }
         });
 
+        // CardLayout controller
+        CardLayout cl = (CardLayout) mainPanel.getLayout();
+
+        // Show rooms table when button is clicked (the model is always up to date)
+        btnRooms.addActionListener(e -> cl.show(mainPanel, "ROOMS"));
+
+        // Show bookings table when button is clicked (the model is always up to date)
+        btnBookings.addActionListener(e -> cl.show(mainPanel, "BOOKINGS"));
+
         // Open dialog to add a new booking
         btnAddBooking.addActionListener(e -> openAddBookingDialog());
 
+        // Show occupancy, ADR and RevPAR for the next 30 nights
+        btnOccupancy.addActionListener(e -> {
+            LocalDate today = LocalDate.now();
+            JOptionPane.showMessageDialog(this, analytics.report(today, today.plusDays(30)).toString());
+        });
+
         // Exit application
         btnExit.addActionListener(e -> System.exit(0));
 
-        // Load data initially
-        populateRoomTable();
-        populateBookingTable();
+        // Status bar at the bottom: loading progress and a cancel button
+        JPanel statusBar = new JPanel(new BorderLayout(5, 5));
+        loadStatus = new JLabel("Ready");
+        loadProgress = new JProgressBar(0, 100);
+        loadProgress.setVisible(false);
+        btnCancelLoad = new JButton("Cancel");
+        btnCancelLoad.setVisible(false);
+        statusBar.add(loadStatus, BorderLayout.WEST);
+        statusBar.add(loadProgress, BorderLayout.CENTER);
+        statusBar.add(btnCancelLoad, BorderLayout.EAST);
+        add(statusBar, BorderLayout.SOUTH);
+
+        // Stop loading (rows read so far stay visible, but are not saved)
+        btnCancelLoad.addActionListener(e -> {
+            if (loader != null) loader.cancel(false);
+        });
     }
 
-    // Loads room data into the rooms table
-    private void populateRoomTable() {
+    // Starts filling the (empty) services in the background; the tables fill in as rows arrive
+    public void startLoading(String roomPath, String bookingPath, String bookingLogPath) {
+        this.roomPath = roomPath;
+        this.bookingPath = bookingPath;
+        btnAddBooking.setEnabled(false);
+        loadStatus.setText("Loading...");
+        loadProgress.setValue(0);
+        loadProgress.setVisible(true);
+        btnCancelLoad.setVisible(true);
+
+        loader = new DataLoader(roomService, bookingService, roomPath, bookingPath, bookingLogPath, this);
+        loader.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                loadProgress.setValue((Integer) e.getNewValue());
+            }
+        });
+        loader.execute();
+    }
 
-        // Clear existing rows
-        roomTableModel.setRowCount(0);
+    // ======================
+    // DataLoader.Listener methods (called on the EDT)
+    // ======================
 
-        // Get list of rooms from service
-        List<Room> rooms = roomService.getRooms();
+    @Override
+    public void rowsLoaded(int rows) {
+        loadStatus.setText("Loading... " + rows + " rows");
+    }
+
+    @Override
+    public void loadingFinished(boolean saved, String message) {
+        availability = loader.getAvailability();
+        analytics = loader.getAnalytics();
+        btnOccupancy.setEnabled(analytics != null);
+        loader = null;
+        loadStatus.setText(message);
+        loadProgress.setVisible(false);
+        btnCancelLoad.setVisible(false);
+
+        // Bookings may only be added once changes are saved again
+        btnAddBooking.setEnabled(saved);
+
+        // From now on, hand edits of the CSV files show up in the tables
+        // (not when the database is used: the CSV files are only imported once)
+        if (saved && !HotelDatabase.isEnabled()) {
+            try {
+                new CsvWatcher(roomService, bookingService, roomPath, bookingPath).start();
+            } catch (IOException e) {
+                System.out.println("Not watching the CSV files: " + e.getMessage());
+            }
+        }
+    }
 
-        // Add each room as a row in the table
-        for (Room r : rooms) {
-            roomTableModel.addRow(new Object[]{
-                    r.getUnitNumber(),
-                    r.getUnitCapacity(),
-                    r.getUnitStatus(),
-                    r.getBookingID(),
-                    r.getBasePrice()
-            });
+    // Shows the bookings matching the search box; if it is empty, the current
+    // page of the filtered/sorted bookings, or the live table if nothing is set
+    private void runSearch() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            searchResult.setText(" ");
+            showPage(bookingQuery.getOffset());
+            return;
         }
+
+        searching = true;
+        btnPrevPage.setEnabled(false);
+        btnNextPage.setEnabled(false);
+        pageInfo.setText(" ");
+        List<Booking> found = bookingService.searchGuests(query, SEARCH_LIMIT);
+        bookingTable.setModel(new BookingResultsTableModel(found));
+        searchResult.setText(found.size() >= SEARCH_LIMIT
+                ? "first " + SEARCH_LIMIT + " matches"
+                : found.size() + (found.size() == 1 ? " match" : " matches"));
     }
 
-    // Loads booking data into the bookings table
-    private void populateBookingTable() {
-
-        // Clear existing rows
-        bookingTableModel.setRowCount(0);
-
-        // Get list of bookings from service
-        List<Booking> bookings = bookingService.getBookings();
-
-        // Add each booking as a row in the table
-        for (Booking b : bookings) {
-            bookingTableModel.addRow(new Object[]{
-                    b.getBookingID(),
-                    b.getSurname(),
-                    b.getMiddleName(),
-                    b.getFirstName(),
-                    b.getPartySize(),
-                    b.getStartDate().format(dateFormatter),
-                    b.getEndDate().format(dateFormatter),
-                    b.getStatus()
-            });
+    // Shows the page starting at offset (only that page of bookings is built)
+    private void showPage(int offset) {
+        bookingQuery.setPage(offset, PAGE_SIZE);
+        if (!searchField.getText().trim().isEmpty()) {
+            runSearch();
+            return;
         }
+        if (!bookingQuery.isFiltered()) {
+            searching = false;
+            bookingTable.setModel(bookingTableModel);
+            btnPrevPage.setEnabled(false);
+            btnNextPage.setEnabled(false);
+            pageInfo.setText(" ");
+            return;
+        }
+
+        searching = true;
+        BookingQuery.Page page = bookingService.query(bookingQuery);
+
+        // The last page may have shrunk since it was opened
+        if (page.getRows().isEmpty() && offset > 0 && page.getTotal() > 0) {
+            showPage((page.getTotal() - 1) / PAGE_SIZE * PAGE_SIZE);
+            return;
+        }
+        bookingTable.setModel(new BookingResultsTableModel(page.getRows()));
+        btnPrevPage.setEnabled(offset > 0);
+        btnNextPage.setEnabled(page.hasNext());
+        pageInfo.setText(page.getTotal() == 0 ? "no bookings"
+                : (offset + 1) + "-" + (offset + page.getRows().size()) + " of " + page.getTotal());
+    }
+
+    // Schedules a new search on the EDT (any thread; several changes in a row cause one search)
+    private void searchAgain() {
+        if (!searching || !searchAgainScheduled.compareAndSet(false, true)) return;
+        SwingUtilities.invokeLater(() -> {
+            searchAgainScheduled.set(false);
+            searchTimer.restart();
+        });
     }
 
     // Opens a dialog window for adding a booking
@@ -208,7 +440,7 @@ public class MainLayout extends JFrame {
         JDialog dialog = new JDialog(this, "Add Booking", true);
 
         // Dialog size
-        dialog.setSize(400, 450);
+        dialog.setSize(400, 490);
 
         // GridBagLayout for flexible form layout
         dialog.setLayout(new GridBagLayout());
@@ -220,10 +452,12 @@ public class MainLayout extends JFrame {
 
         // Text fields for booking details
         JTextField txtBookingID = new JTextField(15);
+        txtBookingID.setEditable(false);
         JTextField txtSurname = new JTextField(15);
         JTextField txtMiddle = new JTextField(15);
         JTextField txtFirst = new JTextField(15);
         JTextField txtPartySize = new JTextField(15);
+        JTextField txtUnit = new JTextField(15);
 
         // Spinner for start date selection
         JSpinner startDateSpinner = new JSpinner(new SpinnerDateModel());
@@ -237,10 +471,10 @@ public class MainLayout extends JFrame {
         JComboBox<String> statusBox = new JComboBox<>(new String[]{"PENDING PAYMENT", "PAID", "REFUNDED"});
 
         // Labels for the form
-        String[] labels = {"Booking ID:", "Surname:", "Middle Name:", "First Name:", "Party Size:", "Start Date:", "End Date:", "Status:"};
+        String[] labels = {"Booking ID (generated):", "Surname:", "Middle Name:", "First Name:", "Party Size:", "Start Date:", "End Date:", "Status:", "Unit (blank = any free):"};
 
         // Matching input fields
-        JComponent[] fields = {txtBookingID, txtSurname, txtMiddle, txtFirst, txtPartySize, startDateSpinner, endDateSpinner, statusBox};
+        JComponent[] fields = {txtBookingID, txtSurname, txtMiddle, txtFirst, txtPartySize, startDateSpinner, endDateSpinner, statusBox, txtUnit};
 
         // Add labels and fields to dialog
         for (int i = 0; i < labels.length; i++) {
@@ -275,7 +509,6 @@ public class MainLayout extends JFrame {
         btnSubmit.addActionListener(e -> {
             try {
                 // Read input values
-                String bookingID = txtBookingID.getText();
                 String surname = txtSurname.getText();
                 String middle = txtMiddle.getText();
                 String first = txtFirst.getText();
@@ -290,17 +523,52 @@ public class MainLayout extends JFrame {
                 // Get selected status
                 String status = statusBox.getSelectedItem().toString();
 
+                // The booking ID is generated once the input is valid, and kept if the booking is retried
+                if (txtBookingID.getText().isEmpty()) txtBookingID.setText(GenerateID.generateID());
+                String bookingID = txtBookingID.getText();
+
                 // Create new Booking object
                 Booking b = new Booking(bookingID, surname, first, middle, partySize, start, end, status);
 
-                // Add booking to service list
-                bookingService.getBookings().add(b);
-
-                // Refresh table
-                populateBookingTable();
+                // Refunded bookings hold no room; so does every booking until the calendars are built
+                if (availability == null || b.getBookingStatus() == BookingStatus.REFUNDED) {
+
+                    // Add booking through the service (rejects a booking ID that is already taken)
+                    if (!bookingService.addBooking(b)) {
+                        JOptionPane.showMessageDialog(dialog, "Booking ID already exists: " + bookingID);
+                        return;
+                    }
+                    dialog.dispose();
+                    return;
+                }
+
+                // Book the given unit, or the first free room with enough beds
+                // (both reject a booking ID that is already taken)
+                String unitText = txtUnit.getText().trim();
+                int unit = unitText.isEmpty() ? 0 : Integer.parseInt(unitText);
+                if (unit != 0 && roomService.findRoom(unit) == null) {
+                    JOptionPane.showMessageDialog(dialog, "No unit " + unit);
+                    return;
+                }
+                boolean booked = unit != 0 ? availability.book(unit, b) : availability.bookFirstFree(b) != 0;
+                if (!booked) {
+                    if (bookingService.bookingExists(bookingID)) {
+                        JOptionPane.showMessageDialog(dialog, "Booking ID already exists: " + bookingID);
+                    } else if (unit != 0) {
+                        JOptionPane.showMessageDialog(dialog, "Unit " + unit + " is not free for those dates");
+                    } else {
+                        JOptionPane.showMessageDialog(dialog, "No room for " + partySize + " is free for those dates");
+                    }
+                    return;
+                }
 
                 // Close dialog
                 dialog.dispose();
+            } catch (UncheckedIOException ex) {
+
+                // The booking could not be saved (it was not kept either)
+                JOptionPane.showMessageDialog(dialog, "Could not save the booking: " + ex.getCause().getMessage(),
+                                              "Save failed", JOptionPane.ERROR_MESSAGE);
             } catch (Exception ex) {
 
                 // Show error if input is invalid
@@ -318,16 +586,17 @@ public class MainLayout extends JFrame {
     // Program entry point
     public static void main(String[] args) {
 
-        // Load room data from CSV
-        RoomService roomService = new RoomService(ReadRooms.readRooms("DB/rooms.csv"));
-
-        // Load booking data from CSV
-        BookingService bookingService = new BookingService(ReadBooking.readBookings("DB/booking.csv"));
+        // Start with empty services; the data is loaded after the window is shown
+        RoomService roomService = new RoomService(new ArrayList<>());
+        BookingService bookingService = new BookingService(new ArrayList<>());
 
         // Run Swing UI on Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             MainLayout main = new MainLayout(roomService, bookingService);
             main.setVisible(true);
+
+            // Load rooms, bookings and the change log in the background
+            main.startLoading("DB/rooms.csv", "DB/booking.csv", "DB/booking.log");
         });
     }
 }
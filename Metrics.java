@@ -0,0 +1,320 @@
+// For publishing the metrics over JMX
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+// Registry and the lock-free counters behind each metric
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// For the periodic dump to the log
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Counters, latency histograms and throughput meters for the hot paths
+//
+// Metrics are created once (usually in a static field of the class they
+// measure) and updated lock-free: counters are LongAdders and histograms
+// count into fixed log-linear buckets (16 per power of two, so any
+// percentile is within about 6% of the true value). Recording a latency
+// is two System.nanoTime() calls and a few atomic adds; for calls that
+// only take a few hundred nanoseconds themselves (hash lookups) a sampled
+// histogram times one call in N and scales its count up.
+//
+// Every metric is published as a JMX MXBean under "hotel:type=...,name=..."
+// (visible in JConsole / VisualVM), and startLogDump() writes all of them
+// to java.util.logging ("hotel.metrics") at a fixed interval.
+//
+// Run with -Dhotel.metrics=false to turn recording off completely.
+public class Metrics {
+
+    // False when recording is turned off (checked before every nanoTime call)
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("hotel.metrics"));
+
+    // Seconds between log dumps (-Dhotel.metrics.dumpSeconds)
+    private static final long DUMP_SECONDS = Long.getLong("hotel.metrics.dumpSeconds", 60);
+
+    private static final Logger LOG = Logger.getLogger("hotel.metrics");
+
+    // All metrics by name
+    private static final Map<String, Object> REGISTRY = new ConcurrentHashMap<>();
+
+    // True once the log dump has been scheduled
+    private static final AtomicBoolean DUMPING = new AtomicBoolean();
+
+    // Returns the counter with this name, creating it on first use
+    public static Counter counter(String name) {
+        return (Counter) REGISTRY.computeIfAbsent(name, n -> register("Counter", n, new Counter()));
+    }
+
+    // Returns the latency histogram with this name, creating it on first use
+    public static Histogram histogram(String name) {
+        return (Histogram) REGISTRY.computeIfAbsent(name, n -> register("Histogram", n, new Histogram()));
+    }
+
+    // Returns a histogram that only times one call in "every" (a power of two)
+    public static Histogram sampledHistogram(String name, int every) {
+        return (Histogram) REGISTRY.computeIfAbsent(name, n -> register("Histogram", n, new Histogram(every)));
+    }
+
+    // Returns the throughput meter with this name, creating it on first use
+    public static Throughput throughput(String name) {
+        return (Throughput) REGISTRY.computeIfAbsent(name, n -> register("Throughput", n, new Throughput()));
+    }
+
+    // Start time for a throughput measurement (0 when recording is off)
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Writes every metric to the log now and then every DUMP_SECONDS (only the first call schedules)
+    public static void startLogDump() {
+        if (!ENABLED || DUMP_SECONDS <= 0 || !DUMPING.compareAndSet(false, true)) return;
+
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(Metrics::dump, DUMP_SECONDS, DUMP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Writes every metric that has seen any use to the log
+    public static void dump() {
+        StringBuilder sb = new StringBuilder("Metrics:");
+        for (Map.Entry<String, Object> e : new TreeMap<>(REGISTRY).entrySet()) {
+            String line = e.getValue().toString();
+            if (!line.isEmpty()) sb.append(System.lineSeparator()).append("  ").append(e.getKey()).append(' ').append(line);
+        }
+        LOG.info(sb.toString());
+    }
+
+    // Publishes a metric as an MXBean (failures only cost the JMX view)
+    private static Object register(String type, String name, Object metric) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(metric, new ObjectName("hotel:type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not publish metric " + name + " over JMX", e);
+        }
+        return metric;
+    }
+
+    // ======================
+    // JMX views
+    // ======================
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    public interface HistogramMXBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+    }
+
+    public interface ThroughputMXBean {
+        long getRows();
+        long getBytes();
+        double getRowsPerSecond();
+        double getBytesPerSecond();
+    }
+
+    // ======================
+    // Metric types
+    // ======================
+
+    // Something that only goes up (errors, rows skipped, ...)
+    public static class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            if (ENABLED) count.increment();
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public String toString() {
+            long n = getCount();
+            return n == 0 ? "" : "count=" + n;
+        }
+    }
+
+    // Distribution of latencies in nanoseconds
+    public static class Histogram implements HistogramMXBean {
+
+        // Sub-buckets per power of two (2^4 = 16)
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        // One call in sampleMask + 1 is timed
+        private final int sampleMask;
+
+        // Calls seen by start() (updated without synchronization: a lost
+        // update only shifts which call gets sampled)
+        private int calls;
+
+        Histogram() {
+            this(1);
+        }
+
+        Histogram(int every) {
+            if (Integer.bitCount(every) != 1) throw new IllegalArgumentException("Not a power of two: " + every);
+            sampleMask = every - 1;
+        }
+
+        // Start time for a measurement, or 0 if this call is not timed
+        public long start() {
+            if (!ENABLED) return 0;
+            if (sampleMask != 0 && (++calls & sampleMask) != 0) return 0;
+            return System.nanoTime();
+        }
+
+        // Records the time since start (a value from start(); 0 = not timed)
+        public void recordSince(long start) {
+            if (start != 0) record(System.nanoTime() - start);
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        // Value (in nanoseconds) below which the given share of recorded values fall
+        public long percentile(double share) {
+            long n = count.sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(share * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        // Number of calls (estimated from the samples for a sampled histogram)
+        @Override
+        public long getCount() {
+            return count.sum() * (sampleMask + 1);
+        }
+
+        @Override
+        public double getMeanMicros() {
+            long n = count.sum();
+            return n == 0 ? 0 : total.sum() / 1000.0 / n;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return percentile(0.50) / 1000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return percentile(0.99) / 1000.0;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return percentile(0.999) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return max.get() / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            long n = getCount();
+            if (n == 0) return "";
+            return String.format("count=%s%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                                 sampleMask == 0 ? "" : "~", n, getMeanMicros(), getP50Micros(),
+                                 getP99Micros(), getP999Micros(), getMaxMicros());
+        }
+
+        // Values below 16 get a bucket each; above that, 16 buckets per power of two
+        private static int bucket(long v) {
+            if (v < SUB) return (int) v;
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB - 1);
+            return (exponent - SUB_BITS + 1) * SUB + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB) return bucket;
+            int exponent = bucket / SUB + SUB_BITS - 1;
+            long sub = bucket % SUB;
+            long width = 1L << (exponent - SUB_BITS);
+            return ((SUB + sub) << (exponent - SUB_BITS)) + width - 1;
+        }
+    }
+
+    // Rows and bytes moved, and the time it took (for file reads and writes)
+    public static class Throughput implements ThroughputMXBean {
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        // Records one file read or write that started at start (a value from Metrics.start())
+        public void recordSince(long start, long rowCount, long byteCount) {
+            if (!ENABLED) return;
+            nanos.add(System.nanoTime() - start);
+            rows.add(rowCount);
+            bytes.add(byteCount);
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        @Override
+        public double getRowsPerSecond() {
+            long t = nanos.sum();
+            return t == 0 ? 0 : rows.sum() * 1e9 / t;
+        }
+
+        @Override
+        public double getBytesPerSecond() {
+            long t = nanos.sum();
+            return t == 0 ? 0 : bytes.sum() * 1e9 / t;
+        }
+
+        @Override
+        public String toString() {
+            if (getRows() == 0 && getBytes() == 0) return "";
+            return String.format("rows=%d bytes=%d rows/s=%.0f MB/s=%.1f",
+                                 getRows(), getBytes(), getRowsPerSecond(), getBytesPerSecond() / 1e6);
+        }
+    }
+}
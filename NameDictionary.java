@@ -0,0 +1,136 @@
+// Maps from a chunk's copies of names to the shared copies
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Shared copies of guest names, so equal names in different bookings are one String
+//
+// A booking history repeats the same surnames and first names over and over;
+// without a dictionary every loaded booking carries its own copies. Names go
+// into an open-addressing table of Strings (no entry objects) and CsvReader
+// looks them up straight from its char buffer, so a name that was seen
+// before costs no allocation at all. Statuses are already shared: they are
+// BookingStatus constants.
+//
+// Names are never removed, so the dictionary grows with the number of
+// distinct names, not with the number of bookings.
+//
+// Every method locks the dictionary, so threads parsing in parallel use a
+// dictionary each and merge it into the shared one afterwards (see
+// mergeInto and BulkBookingLoader): the shared lock is then taken once per
+// chunk instead of once per name read.
+public class NameDictionary {
+
+    // The dictionary used for all booking names
+    public static final NameDictionary GUEST_NAMES = new NameDictionary();
+
+    // Linear probing, kept at most half full (null = empty slot)
+    private String[] table = new String[1024];
+    private int size;
+
+    // Returns the shared copy of a name (null stays null)
+    public synchronized String intern(String name) {
+        return lookup(name);
+    }
+
+    /**
+     * Adds every name of this dictionary to another one under a single lock
+     * of it, and returns this dictionary's copy -> the other's copy of each
+     * name (compared by identity), to swap the names of parsed bookings.
+     */
+    public synchronized Map<String, String> mergeInto(NameDictionary shared) {
+        Map<String, String> copies = new IdentityHashMap<>(size * 4 / 3 + 1);
+        synchronized (shared) {
+            for (String name : table) {
+                if (name != null) copies.put(name, shared.lookup(name));
+            }
+        }
+        return copies;
+    }
+
+    // Replaces a booking's names using a map from mergeInto
+    static void replaceNames(Booking b, Map<String, String> copies) {
+        if (b.getSurname() != null) b.setSurname(copies.get(b.getSurname()));
+        if (b.getFirstName() != null) b.setFirstName(copies.get(b.getFirstName()));
+        if (b.getMiddleName() != null) b.setMiddleName(copies.get(b.getMiddleName()));
+    }
+
+    // Finds or adds a name (callers hold the lock)
+    private String lookup(String name) {
+        if (name == null) return null;
+        int mask = table.length - 1;
+        int slot = spread(name.hashCode()) & mask;
+        for (String s = table[slot]; s != null; s = table[slot]) {
+            if (s.equals(name)) return s;
+            slot = (slot + 1) & mask;
+        }
+        return insert(slot, name);
+    }
+
+    // Returns the shared copy of the characters buf[from, to), creating a String only for a new name
+    public synchronized String intern(char[] buf, int from, int to) {
+
+        // Same hash as String.hashCode(), so both intern methods find the same slot
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf[i];
+        }
+
+        int mask = table.length - 1;
+        int slot = spread(h) & mask;
+        for (String s = table[slot]; s != null; s = table[slot]) {
+            if (matches(s, buf, from, to)) return s;
+            slot = (slot + 1) & mask;
+        }
+        return insert(slot, new String(buf, from, to - from));
+    }
+
+    // Replaces a booking's names with their shared copies
+    public void internNames(Booking b) {
+        b.setSurname(intern(b.getSurname()));
+        b.setFirstName(intern(b.getFirstName()));
+        b.setMiddleName(intern(b.getMiddleName()));
+    }
+
+    // Number of distinct names
+    public synchronized int size() {
+        return size;
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    private String insert(int slot, String name) {
+        table[slot] = name;
+        if (++size * 2 > table.length) grow();
+        return name;
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String s : old) {
+            if (s == null) continue;
+            int slot = spread(s.hashCode()) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = s;
+        }
+    }
+
+    private static boolean matches(String s, char[] buf, int from, int to) {
+        if (s.length() != to - from) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != buf[from + i]) return false;
+        }
+        return true;
+    }
+
+    // Mixes the high bits in (String hashes of short names differ mostly in the low bits)
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
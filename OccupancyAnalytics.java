@@ -0,0 +1,455 @@
+// For handling dates without time
+import java.time.LocalDate;
+
+// Collections used for the stays and room rates
+import java.util.HashMap;
+import java.util.Map;
+
+// Nightly occupancy, ADR and RevPAR for any date range
+//
+// Every stored booking that is not refunded is added to per-day totals
+// (rooms sold, revenue) indexed by epoch day, and removed again when it is
+// deleted or refunded. Creating, changing or deleting a booking therefore
+// costs O(nights). Reports read prefix sums over those per-day totals, so
+// any date range is answered in O(1); the prefix sums are rebuilt once, on
+// the first report after a change.
+//
+// A night's revenue is the base price of the booking's unit. A booking with
+// no unit yet (or a unit that no longer exists) is priced at the average
+// base price of the sellable rooms its party fits in, and its nights are
+// also counted as unassigned: they are sold, but hold no particular room, so
+// the nights sold can exceed the rooms available (occupancy is capped at
+// 100% and the report shows the unassigned nights). The price is taken when
+// the stay is counted; later room price changes do not reprice it. Revenue
+// is kept in whole cents so adding and removing stays never drifts.
+//
+// Lock order: BookingStore, then this object (the BookingListener methods
+// run inside the store's lock); RoomService, then this object (the
+// RoomListener methods). This object's lock is never held while another
+// lock is taken.
+//
+// Definitions (the usual hotel ones):
+//   occupancy = room-nights sold / room-nights available
+//   ADR       = revenue / room-nights sold
+//   RevPAR    = revenue / room-nights available
+// Room-nights available are the rooms not under maintenance times the nights in the range.
+public class OccupancyAnalytics implements BookingListener, RoomListener {
+
+    // Room data (base price, status) comes from the room service
+    private final RoomService roomService;
+
+    // bookingID -> the stay it adds to the totals
+    private final Map<String, Stay> stays = new HashMap<>();
+
+    // unitNumber -> the room's rate, kept in step through RoomListener
+    // (so pricing a stay never takes the room service's lock)
+    private final Map<Integer, Rate> rates = new HashMap<>();
+
+    // partySize -> price for stays without a unit (cleared when a room changes)
+    private final Map<Integer, Long> fallbackCents = new HashMap<>();
+
+    // Per-day totals; slot i is epoch day firstDay + i
+    private long firstDay;
+    private int[] sold = new int[0];
+    private int[] unassigned = new int[0];
+    private long[] revenueCents = new long[0];
+
+    // Prefix sums over the per-day totals (slot i = total of days before i)
+    private long[] soldPrefix = new long[1];
+    private long[] unassignedPrefix = new long[1];
+    private long[] revenuePrefix = new long[1];
+    private boolean prefixDirty;
+
+    // Starts from the current rooms and bookings and follows every later change
+    public OccupancyAnalytics(RoomService roomService, BookingService bookingService) {
+        this.roomService = roomService;
+
+        // Rates first, read and followed in one step so no room change is missed
+        synchronized (roomService) {
+            for (int row = 0; row < roomService.getRoomCount(); row++) {
+                roomUpdated(row, roomService.roomAt(row));
+            }
+            roomService.addRoomListener(this);
+        }
+
+        // Then the bookings' stays, collected and followed in one step as well
+        BookingStore store = bookingService.getStore();
+        synchronized (store) {
+            synchronized (this) {
+                for (Booking b : store) {
+                    Stay stay = stayOf(b);
+                    if (stay != null) stays.put(b.getBookingID(), stay);
+                }
+            }
+            bookingService.addBookingListener(this);
+        }
+
+        // Total them up in one pass
+        recompute();
+    }
+
+    // ======================
+    // Reports
+    // ======================
+
+    // Totals for the nights from "from" up to (not including) "to"
+    public Report report(LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        int nights = (int) Math.max(0, end - start);
+
+        // Rooms that can be sold (read before taking this object's lock)
+        int rooms = roomService.getRoomCount() - roomService.countRooms(RoomStatus.MAINTENANCE);
+
+        synchronized (this) {
+            if (prefixDirty) rebuildPrefix();
+            return new Report(from, to, (long) rooms * nights,
+                              rangeSum(soldPrefix, start, end),
+                              rangeSum(unassignedPrefix, start, end),
+                              rangeSum(revenuePrefix, start, end));
+        }
+    }
+
+    // Occupancy of each night from "from" up to (not including) "to"
+    public double[] nightlyOccupancy(LocalDate from, LocalDate to) {
+        long start = from.toEpochDay();
+        int nights = (int) Math.max(0, to.toEpochDay() - start);
+        int rooms = roomService.getRoomCount() - roomService.countRooms(RoomStatus.MAINTENANCE);
+
+        double[] occupancy = new double[nights];
+        if (rooms == 0) return occupancy;
+        int[] soldPerNight = new int[nights];
+        soldPerNight(start, soldPerNight);
+        for (int i = 0; i < nights; i++) {
+            occupancy[i] = Math.min(1.0, (double) soldPerNight[i] / rooms);
+        }
+        return occupancy;
+    }
+
+    // Rooms sold on each night from epoch day fromDay on, one night per slot of out
+    public synchronized void soldPerNight(long fromDay, int[] out) {
+        for (int i = 0; i < out.length; i++) {
+            long slot = fromDay + i - firstDay;
+            out[i] = slot >= 0 && slot < sold.length ? sold[(int) slot] : 0;
+        }
+    }
+
+    /**
+     * Rebuilds all per-day totals from the stays, spreading the work over
+     * the common fork-join pool with a parallel stream. Used for the first
+     * load and whenever the totals must be recomputed from scratch.
+     */
+    public synchronized void recompute() {
+
+        // Day range covered by the stays
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Stay s : stays.values()) {
+            min = Math.min(min, s.start);
+            max = Math.max(max, s.end);
+        }
+        if (min > max) {
+            firstDay = 0;
+            sold = new int[0];
+            unassigned = new int[0];
+            revenueCents = new long[0];
+            prefixDirty = true;
+            return;
+        }
+
+        // Every worker totals its share of the stays, then the parts are added together
+        long base = min;
+        int days = (int) (max - min);
+        DayTotals totals = stays.values().parallelStream()
+                .collect(() -> new DayTotals(base, days), DayTotals::add, DayTotals::merge);
+
+        firstDay = base;
+        sold = totals.sold;
+        unassigned = totals.unassigned;
+        revenueCents = totals.revenueCents;
+        prefixDirty = true;
+    }
+
+    // ======================
+    // BookingListener methods
+    // Keep the per-day totals in step with the stored bookings
+    // ======================
+
+    @Override
+    public void bookingAdded(int row, Booking booking) {
+        add(booking);
+    }
+
+    @Override
+    public void bookingRemoved(int row, Booking booking) {
+        remove(booking.getBookingID());
+    }
+
+    @Override
+    public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+        remove(oldBooking.getBookingID());
+        add(newBooking);
+    }
+
+    @Override
+    public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+        // Only a refund (or undoing one) changes what is counted
+        if (booking.getBookingStatus() == BookingStatus.REFUNDED) {
+            remove(booking.getBookingID());
+        } else if (oldStatus == BookingStatus.REFUNDED) {
+            add(booking);
+        }
+    }
+
+    @Override
+    public void bookingUnitChanged(int row, Booking booking, int oldUnit) {
+        // Same nights, possibly another price
+        add(booking);
+    }
+
+    // ======================
+    // RoomListener methods
+    // Keep the rates in step with the rooms
+    // ======================
+
+    @Override
+    public synchronized void roomAdded(int row, Room room) {
+        roomUpdated(row, room);
+    }
+
+    @Override
+    public synchronized void roomRemoved(int row, Room room) {
+        rates.remove(room.getUnitNumber());
+        fallbackCents.clear();
+    }
+
+    @Override
+    public synchronized void roomUpdated(int row, Room room) {
+        rates.put(room.getUnitNumber(), new Rate(room.getUnitCapacity(),
+                                                 room.getRoomStatus() != RoomStatus.MAINTENANCE,
+                                                 Math.round(room.getBasePrice() * 100)));
+        fallbackCents.clear();
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // Counts a booking's nights (replacing what it added before)
+    private synchronized void add(Booking booking) {
+        Stay stay = stayOf(booking);
+        Stay old = stay != null ? stays.put(booking.getBookingID(), stay) : stays.remove(booking.getBookingID());
+        if (old != null) apply(old, -1);
+        if (stay != null) apply(stay, 1);
+    }
+
+    // The stay a booking adds to the totals, or null if it adds none
+    // (refunded, or no nights); the caller holds this object's lock
+    private Stay stayOf(Booking booking) {
+        if (booking.getBookingStatus() == BookingStatus.REFUNDED) return null;
+        long start = booking.getStartDate().toEpochDay();
+        long end = booking.getEndDate().toEpochDay();
+        if (end <= start) return null;
+
+        Rate rate = booking.getUnit() != 0 ? rates.get(booking.getUnit()) : null;
+        if (rate != null) return new Stay(start, end, rate.cents, true);
+        return new Stay(start, end, fallbackCents.computeIfAbsent(booking.getPartySize(), this::averageCents), false);
+    }
+
+    // Takes back whatever a booking added
+    private synchronized void remove(String bookingID) {
+        Stay old = stays.remove(bookingID);
+        if (old != null) apply(old, -1);
+    }
+
+    // Average base price of the sellable rooms a party fits in
+    // (all sellable rooms if none is big enough, 0 if there are none)
+    private long averageCents(int partySize) {
+        long fitting = 0;
+        int fittingRooms = 0;
+        long all = 0;
+        int allRooms = 0;
+        for (Rate rate : rates.values()) {
+            if (!rate.sellable) continue;
+            all += rate.cents;
+            allRooms++;
+            if (rate.capacity >= partySize) {
+                fitting += rate.cents;
+                fittingRooms++;
+            }
+        }
+        if (fittingRooms > 0) return Math.round((double) fitting / fittingRooms);
+        return allRooms > 0 ? Math.round((double) all / allRooms) : 0;
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) a stay's nights, O(nights)
+    private void apply(Stay stay, int sign) {
+        ensureDays(stay.start, stay.end);
+        int from = (int) (stay.start - firstDay);
+        int to = (int) (stay.end - firstDay);
+        for (int i = from; i < to; i++) {
+            sold[i] += sign;
+            if (!stay.assigned) unassigned[i] += sign;
+            revenueCents[i] += sign * stay.centsPerNight;
+        }
+        prefixDirty = true;
+    }
+
+    // Grows the per-day arrays so they cover [start, end)
+    private void ensureDays(long start, long end) {
+        if (sold.length == 0) {
+            firstDay = start;
+        }
+        long last = firstDay + sold.length;
+        if (start >= firstDay && end <= last) return;
+
+        // Grow with some slack on the side that was hit
+        long newFirst = Math.min(firstDay, start);
+        long newLast = Math.max(last, end);
+        if (newFirst < firstDay) newFirst -= 365;
+        if (newLast > last) newLast += 365;
+
+        int shift = (int) (firstDay - newFirst);
+        int length = (int) (newLast - newFirst);
+        int[] newSold = new int[length];
+        int[] newUnassigned = new int[length];
+        long[] newRevenue = new long[length];
+        System.arraycopy(sold, 0, newSold, shift, sold.length);
+        System.arraycopy(unassigned, 0, newUnassigned, shift, unassigned.length);
+        System.arraycopy(revenueCents, 0, newRevenue, shift, revenueCents.length);
+        firstDay = newFirst;
+        sold = newSold;
+        unassigned = newUnassigned;
+        revenueCents = newRevenue;
+    }
+
+    private void rebuildPrefix() {
+        soldPrefix = new long[sold.length + 1];
+        unassignedPrefix = new long[sold.length + 1];
+        revenuePrefix = new long[sold.length + 1];
+        for (int i = 0; i < sold.length; i++) {
+            soldPrefix[i + 1] = soldPrefix[i] + sold[i];
+            unassignedPrefix[i + 1] = unassignedPrefix[i] + unassigned[i];
+            revenuePrefix[i + 1] = revenuePrefix[i] + revenueCents[i];
+        }
+        prefixDirty = false;
+    }
+
+    // Sum of the per-day values for epoch days [start, end), days outside the arrays count as 0
+    private long rangeSum(long[] prefix, long start, long end) {
+        int days = prefix.length - 1;
+        int from = (int) Math.max(0, Math.min(days, start - firstDay));
+        int to = (int) Math.max(0, Math.min(days, end - firstDay));
+        return to > from ? prefix[to] - prefix[from] : 0;
+    }
+
+    // One room's capacity, whether it can be sold, and its base price
+    private static class Rate {
+        final int capacity;
+        final boolean sellable;
+        final long cents;
+
+        Rate(int capacity, boolean sellable, long cents) {
+            this.capacity = capacity;
+            this.sellable = sellable;
+            this.cents = cents;
+        }
+    }
+
+    // One booking's nights, its price per night and whether it holds a known unit
+    private static class Stay {
+        final long start;
+        final long end;
+        final long centsPerNight;
+        final boolean assigned;
+
+        Stay(long start, long end, long centsPerNight, boolean assigned) {
+            this.start = start;
+            this.end = end;
+            this.centsPerNight = centsPerNight;
+            this.assigned = assigned;
+        }
+    }
+
+    // Per-day totals built by one worker of recompute()
+    private static class DayTotals {
+        final long firstDay;
+        final int[] sold;
+        final int[] unassigned;
+        final long[] revenueCents;
+
+        DayTotals(long firstDay, int days) {
+            this.firstDay = firstDay;
+            this.sold = new int[days];
+            this.unassigned = new int[days];
+            this.revenueCents = new long[days];
+        }
+
+        void add(Stay stay) {
+            for (long d = stay.start; d < stay.end; d++) {
+                int i = (int) (d - firstDay);
+                sold[i]++;
+                if (!stay.assigned) unassigned[i]++;
+                revenueCents[i] += stay.centsPerNight;
+            }
+        }
+
+        void merge(DayTotals other) {
+            for (int i = 0; i < sold.length; i++) {
+                sold[i] += other.sold[i];
+                unassigned[i] += other.unassigned[i];
+                revenueCents[i] += other.revenueCents[i];
+            }
+        }
+    }
+
+    // Totals for one date range
+    public static class Report {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long roomNightsAvailable;
+        private final long roomNightsSold;
+        private final long unassignedRoomNights;
+        private final long revenueCents;
+
+        Report(LocalDate from, LocalDate to, long roomNightsAvailable, long roomNightsSold,
+               long unassignedRoomNights, long revenueCents) {
+            this.from = from;
+            this.to = to;
+            this.roomNightsAvailable = roomNightsAvailable;
+            this.roomNightsSold = roomNightsSold;
+            this.unassignedRoomNights = unassignedRoomNights;
+            this.revenueCents = revenueCents;
+        }
+
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+        public long getRoomNightsAvailable() { return roomNightsAvailable; }
+        public long getRoomNightsSold() { return roomNightsSold; }
+        public long getUnassignedRoomNights() { return unassignedRoomNights; }
+        public double getRevenue() { return revenueCents / 100.0; }
+
+        // Share of the available room-nights that were sold (0 to 1; nights
+        // sold without a unit can add up to more than the rooms available)
+        public double getOccupancyRate() {
+            return roomNightsAvailable == 0 ? 0 : Math.min(1.0, (double) roomNightsSold / roomNightsAvailable);
+        }
+
+        // Average daily rate: revenue per room-night sold
+        public double getADR() {
+            return roomNightsSold == 0 ? 0 : revenueCents / 100.0 / roomNightsSold;
+        }
+
+        // Revenue per available room-night
+        public double getRevPAR() {
+            return roomNightsAvailable == 0 ? 0 : revenueCents / 100.0 / roomNightsAvailable;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s to %s: occupancy %.1f%%, ADR %.2f, RevPAR %.2f, revenue %.2f, %d room-nights without a unit",
+                                 from, to, getOccupancyRate() * 100, getADR(), getRevPAR(), getRevenue(),
+                                 unassignedRoomNights);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+// For the database file and its write-ahead file
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// For checking that a write-ahead file was written completely
+import java.util.zip.CRC32C;
+
+// For the page cache
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One file of fixed-size pages, memory-mapped, with a page cache in front
+//
+// The file is mapped in 8 MiB segments (a new segment is mapped when the
+// file grows). Pages are copied out of the mapping into a fixed number of
+// cache frames; a frame is reused with the CLOCK algorithm: the hand skips
+// frames that were used since it last passed (clearing their bit), frames
+// that are pinned by an operation in progress and frames with unsaved
+// changes, and takes the first other one. If every frame is busy the cache
+// grows for a moment and shrinks back after the next commit.
+//
+// Changed pages only reach the mapping in commit(): they are first written
+// to <file>.wal with a checksum and forced, then copied into the mapping and
+// forced, then the .wal is deleted. A crash before the .wal is complete
+// leaves the file as of the last commit; a crash after it is repaired on
+// open by copying the .wal in again. So the file only ever holds whole
+// operations. Callers end every operation with endOperation(), which
+// commits once enough pages have changed; commit() can be called any time
+// no operation is in progress.
+//
+// Page 0 is the header:
+//   long magic, int version, int page size, int page count, int first free page,
+//   then per tree slot: int root page, long record count
+// Free pages are chained through their bytes 4-7.
+public class PageFile implements Closeable {
+
+    // Size of a page, and how many pages each mapped segment holds
+    static final int PAGE_SIZE = 4096;
+    private static final int SEGMENT_PAGES = 2048;
+
+    // "HOTELDB1" - marks a database file; bump VERSION when the page layout changes
+    private static final long MAGIC = 0x484F54454C444231L;
+    private static final int VERSION = 1;
+
+    // Number of trees a file can hold (see BTree)
+    static final int SLOTS = 8;
+
+    // Header fields
+    private static final int H_VERSION = 8;
+    private static final int H_PAGE_SIZE = 12;
+    private static final int H_PAGE_COUNT = 16;
+    private static final int H_FREE = 20;
+    private static final int H_SLOTS = 24;
+    private static final int SLOT_SIZE = 12;
+
+    // Page type byte of a free page
+    static final byte FREE = 0;
+
+    // Pages read from the mapping, commits and their duration (see Metrics)
+    private static final Metrics.Counter PAGE_READS = Metrics.counter("db.page.reads");
+    private static final Metrics.Counter PAGE_HITS = Metrics.counter("db.page.hits");
+    private static final Metrics.Histogram COMMIT_TIME = Metrics.histogram("db.commit");
+
+    // The database file, its write-ahead file and the mapped segments
+    private final Path path;
+    private final Path walPath;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    // Cache frames by page, the clock ring and its hand
+    private final int capacity;
+    private final Map<Integer, Frame> cached = new HashMap<>();
+    private final List<Frame> ring = new ArrayList<>();
+    private int hand;
+
+    // Frames changed since the last commit
+    private final List<Frame> dirty = new ArrayList<>();
+
+    // Page 0, pinned for as long as the file is open
+    private final Frame header;
+
+    // True if the file was created by open()
+    private final boolean created;
+
+    // A cached page
+    static final class Frame {
+        final byte[] data = new byte[PAGE_SIZE];
+        int page;
+        int pins;
+        boolean referenced;
+        boolean dirty;
+    }
+
+    private PageFile(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.walPath = path.resolveSibling(path.getFileName() + ".wal");
+        this.capacity = Math.max(16, capacity);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+
+        // Check the magic before mapping, which would grow a file that is not ours
+        ByteBuffer magic = ByteBuffer.allocate(8);
+        channel.read(magic, 0);
+        if (magic.position() > 0 && (magic.hasRemaining() || magic.getLong(0) != MAGIC)) {
+            channel.close();
+            throw new IOException(path + " is not a hotel database");
+        }
+        this.created = magic.position() == 0;
+        recover();
+        map(0);
+        header = pin(0);
+
+        if (created) {
+            ByteBuffer h = ByteBuffer.wrap(header.data);
+            h.putLong(0, MAGIC);
+            h.putInt(H_VERSION, VERSION);
+            h.putInt(H_PAGE_SIZE, PAGE_SIZE);
+            h.putInt(H_PAGE_COUNT, 1);
+            markDirty(header);
+            commit();
+        } else {
+            ByteBuffer h = ByteBuffer.wrap(header.data);
+            if (h.getInt(H_VERSION) != VERSION || h.getInt(H_PAGE_SIZE) != PAGE_SIZE) {
+                throw new IOException(path + " has unsupported database version " + h.getInt(H_VERSION));
+            }
+            map(pageCount() - 1);
+        }
+    }
+
+    // Opens (or creates) a database file with room for cachePages pages in the cache
+    public static PageFile open(Path path, int cachePages) throws IOException {
+        return new PageFile(path, cachePages);
+    }
+
+    // True if the file did not exist (or was empty) before open()
+    public boolean isNew() {
+        return created;
+    }
+
+    // ======================
+    // Pages
+    // ======================
+
+    /**
+     * Returns the frame holding the page, reading it in if it is not cached.
+     * The frame stays in the cache until unpin(); call markDirty() after
+     * changing its bytes.
+     */
+    public synchronized Frame pin(int page) throws IOException {
+        Frame f = cached.get(page);
+        if (f == null) {
+            if (page < 0 || (header != null && page >= pageCount())) {
+                throw new IOException(path + ": page " + page + " is out of range");
+            }
+            f = victim();
+            f.page = page;
+            segment(page).get(pageOffset(page), f.data);
+            cached.put(page, f);
+            PAGE_READS.increment();
+        } else {
+            PAGE_HITS.increment();
+        }
+        f.pins++;
+        f.referenced = true;
+        return f;
+    }
+
+    public synchronized void unpin(Frame f) {
+        f.pins--;
+    }
+
+    public synchronized void markDirty(Frame f) {
+        if (!f.dirty) {
+            f.dirty = true;
+            dirty.add(f);
+        }
+    }
+
+    // Returns a pinned, zeroed frame for a new page (a freed page if there is one)
+    public synchronized Frame allocate() throws IOException {
+        ByteBuffer h = ByteBuffer.wrap(header.data);
+        int free = h.getInt(H_FREE);
+        Frame f;
+        if (free != 0) {
+            f = pin(free);
+            h.putInt(H_FREE, ByteBuffer.wrap(f.data).getInt(4));
+        } else {
+            int page = pageCount();
+            map(page);
+            h.putInt(H_PAGE_COUNT, page + 1);
+            f = victim();
+            f.page = page;
+            cached.put(page, f);
+            f.pins++;
+            f.referenced = true;
+        }
+        Arrays.fill(f.data, (byte) 0);
+        markDirty(f);
+        markDirty(header);
+        return f;
+    }
+
+    // Puts a page (not pinned by the caller) on the free list
+    public synchronized void free(int page) throws IOException {
+        Frame f = pin(page);
+        ByteBuffer h = ByteBuffer.wrap(header.data);
+        Arrays.fill(f.data, (byte) 0);
+        f.data[0] = FREE;
+        ByteBuffer.wrap(f.data).putInt(4, h.getInt(H_FREE));
+        h.putInt(H_FREE, page);
+        markDirty(f);
+        markDirty(header);
+        unpin(f);
+    }
+
+    // Number of pages in the file (including the header and free pages)
+    public synchronized int pageCount() {
+        return ByteBuffer.wrap(header.data).getInt(H_PAGE_COUNT);
+    }
+
+    // ======================
+    // Tree slots in the header
+    // ======================
+
+    public synchronized int root(int slot) {
+        return ByteBuffer.wrap(header.data).getInt(slotOffset(slot));
+    }
+
+    public synchronized void setRoot(int slot, int page) {
+        ByteBuffer.wrap(header.data).putInt(slotOffset(slot), page);
+        markDirty(header);
+    }
+
+    public synchronized long count(int slot) {
+        return ByteBuffer.wrap(header.data).getLong(slotOffset(slot) + 4);
+    }
+
+    public synchronized void setCount(int slot, long count) {
+        ByteBuffer.wrap(header.data).putLong(slotOffset(slot) + 4, count);
+        markDirty(header);
+    }
+
+    private static int slotOffset(int slot) {
+        if (slot < 0 || slot >= SLOTS) throw new IllegalArgumentException("No tree slot " + slot);
+        return H_SLOTS + slot * SLOT_SIZE;
+    }
+
+    // ======================
+    // Commits
+    // ======================
+
+    // Ends an operation: commits once half the cache holds changed pages
+    public synchronized void endOperation() throws IOException {
+        if (dirty.size() > capacity / 2) commit();
+    }
+
+    /**
+     * Makes every changed page durable (through the write-ahead file, so a
+     * crash leaves either all of them or none). Only call between operations.
+     */
+    public synchronized void commit() throws IOException {
+        if (dirty.isEmpty()) return;
+        long start = COMMIT_TIME.start();
+
+        // 1. The changed pages, then a trailer with their count and checksum
+        ByteBuffer buf = ByteBuffer.allocate(dirty.size() * (4 + PAGE_SIZE) + 16);
+        for (Frame f : dirty) {
+            buf.putInt(f.page).put(f.data);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt(-1).putInt(dirty.size()).putLong(crc.getValue());
+        buf.flip();
+        try (FileChannel wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                wal.write(buf);
+            }
+            wal.force(false);
+        }
+
+        // 2. The pages themselves
+        boolean[] touched = new boolean[segments.size()];
+        for (Frame f : dirty) {
+            segment(f.page).put(pageOffset(f.page), f.data);
+            touched[f.page / SEGMENT_PAGES] = true;
+            f.dirty = false;
+        }
+        for (int s = 0; s < touched.length; s++) {
+            if (touched[s]) segments.get(s).force();
+        }
+        dirty.clear();
+
+        // 3. Done: the write-ahead file is no longer needed
+        Files.delete(walPath);
+        shrink();
+        COMMIT_TIME.recordSince(start);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            cached.clear();
+            ring.clear();
+            segments.clear();
+            channel.close();
+        }
+    }
+
+    // Copies a complete write-ahead file left by a crash into the file, drops an incomplete one
+    private void recover() throws IOException {
+        if (!Files.exists(walPath)) return;
+        ByteBuffer wal = ByteBuffer.wrap(Files.readAllBytes(walPath));
+        int records = (wal.capacity() - 16) / (4 + PAGE_SIZE);
+        int end = records * (4 + PAGE_SIZE);
+        boolean complete = wal.capacity() == end + 16
+                && wal.getInt(end) == -1 && wal.getInt(end + 4) == records;
+        if (complete) {
+            CRC32C crc = new CRC32C();
+            crc.update(wal.array(), 0, end);
+            complete = crc.getValue() == wal.getLong(end + 8);
+        }
+
+        if (complete) {
+            for (int i = 0; i < records; i++) {
+                int at = i * (4 + PAGE_SIZE);
+                int page = wal.getInt(at);
+                map(page);
+                segment(page).put(pageOffset(page), wal.array(), at + 4, PAGE_SIZE);
+            }
+            for (MappedByteBuffer s : segments) {
+                s.force();
+            }
+            System.out.println(path + ": finished the last commit from " + walPath.getFileName());
+        }
+        Files.delete(walPath);
+    }
+
+    // ======================
+    // Mapping and cache helpers
+    // ======================
+
+    // Maps segments until the page is inside one (mapping past the end grows the file)
+    private void map(int page) throws IOException {
+        while (segments.size() * SEGMENT_PAGES <= page) {
+            long offset = (long) segments.size() * SEGMENT_PAGES * PAGE_SIZE;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) SEGMENT_PAGES * PAGE_SIZE));
+        }
+    }
+
+    private MappedByteBuffer segment(int page) {
+        return segments.get(page / SEGMENT_PAGES);
+    }
+
+    private static int pageOffset(int page) {
+        return page % SEGMENT_PAGES * PAGE_SIZE;
+    }
+
+    // Picks a frame for a page that is about to be read in (CLOCK)
+    private Frame victim() {
+        if (ring.size() < capacity) {
+            Frame f = new Frame();
+            ring.add(f);
+            return f;
+        }
+
+        // Two turns: the first clears the reference bits, the second finds a frame
+        for (int step = 0; step < 2 * ring.size(); step++) {
+            Frame f = ring.get(hand);
+            hand = (hand + 1) % ring.size();
+            if (f.pins > 0 || f.dirty) continue;
+            if (f.referenced) {
+                f.referenced = false;
+                continue;
+            }
+            cached.remove(f.page);
+            return f;
+        }
+
+        // Every frame is busy until the next commit
+        Frame f = new Frame();
+        ring.add(f);
+        return f;
+    }
+
+    // Drops frames added while the cache was busy
+    private void shrink() {
+        for (int i = ring.size() - 1; i >= 0 && ring.size() > capacity; i--) {
+            Frame f = ring.get(i);
+            if (f.pins > 0) continue;
+            cached.remove(f.page);
+            ring.remove(i);
+        }
+        if (hand >= ring.size()) hand = 0;
+    }
+}
@@ -0,0 +1,244 @@
+// For stay dates and day-of-week rules
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+// Collections used for the quotes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Nightly rates from a room's base price, forecast occupancy, day of week and lead time
+//
+// Each night of a stay is priced as
+//   base price x occupancy factor x day-of-week factor x lead-time factor
+// clamped to [minFactor, maxFactor] x base price and rounded to whole cents.
+//
+//  - Occupancy is the share of sellable rooms (not under maintenance) already
+//    sold that night. Every stored booking that is not refunded counts as a
+//    room sold, whether or not it has been given a unit yet. It comes from
+//    OccupancyAnalytics, whose per-day counters follow every booking change
+//    incrementally, so a quote never rescans the bookings: it reads one
+//    counter per night.
+//  - Day of week: by default Friday and Saturday nights cost more.
+//  - Lead time is the number of days between the booking and the night:
+//    last-minute nights cost more, nights booked far ahead less.
+//
+// The factors of one stay's nights are worked out once per quote, so quoting
+// every room for the same dates (quoteAll) costs one multiply per room-night.
+// All rules can be changed with the setters; the defaults are below.
+public class PricingEngine {
+
+    // Room data (base price, status) and the per-day rooms sold
+    private final RoomService roomService;
+    private final OccupancyAnalytics analytics;
+
+    // Occupancy tiers: from occupancyFrom[i] up, the rate is multiplied by occupancyFactor[i]
+    private double[] occupancyFrom = {0.0, 0.3, 0.6, 0.8, 0.9};
+    private double[] occupancyFactor = {0.9, 1.0, 1.1, 1.25, 1.4};
+
+    // Factor for each night by its day of week (index = DayOfWeek.ordinal(), Monday first)
+    private final double[] dayFactor = {1.0, 1.0, 1.0, 1.0, 1.15, 1.15, 1.0};
+
+    // Lead-time tiers: from leadDaysFrom[i] days ahead, the rate is multiplied by leadFactor[i]
+    private int[] leadDaysFrom = {0, 3, 30, 90};
+    private double[] leadFactor = {1.1, 1.0, 0.97, 0.93};
+
+    // Lowest and highest rate, as a share of the base price
+    private double minFactor = 0.7;
+    private double maxFactor = 2.0;
+
+    public PricingEngine(RoomService roomService, OccupancyAnalytics analytics) {
+        this.roomService = roomService;
+        this.analytics = analytics;
+    }
+
+    // ======================
+    // Quotes
+    // ======================
+
+    // Rates for one unit, booked today
+    public Quote quote(int unitNumber, LocalDate from, LocalDate to) {
+        return quote(unitNumber, from, to, LocalDate.now());
+    }
+
+    /**
+     * Rates for one unit for the nights from "from" up to (not including)
+     * "to", as if booked on bookedOn. Throws IllegalArgumentException if the
+     * unit does not exist or the stay has no nights.
+     */
+    public Quote quote(int unitNumber, LocalDate from, LocalDate to, LocalDate bookedOn) {
+        double[] factors = nightFactors(from, to, bookedOn);
+        double basePrice;
+        synchronized (roomService) {
+            int row = roomService.rowOfUnit(unitNumber);
+            if (row < 0) throw new IllegalArgumentException("No unit " + unitNumber);
+            basePrice = roomService.priceAt(row);
+        }
+        return new Quote(unitNumber, from, to, rates(basePrice, factors));
+    }
+
+    // Rates for every room not under maintenance, for the same stay
+    public List<Quote> quoteAll(LocalDate from, LocalDate to, LocalDate bookedOn) {
+        double[] factors = nightFactors(from, to, bookedOn);
+        List<Quote> quotes = new ArrayList<>();
+        synchronized (roomService) {
+            for (int row = 0; row < roomService.getRoomCount(); row++) {
+                if (roomService.statusAt(row) == RoomStatus.MAINTENANCE) continue;
+                quotes.add(new Quote(roomService.unitAt(row), from, to, rates(roomService.priceAt(row), factors)));
+            }
+        }
+        return quotes;
+    }
+
+    // ======================
+    // Rules
+    // ======================
+
+    /**
+     * Replaces the occupancy tiers: from occupancy from[i] (0 to 1, ascending,
+     * starting at 0) the rate is multiplied by factors[i].
+     */
+    public synchronized void setOccupancyTiers(double[] from, double[] factors) {
+        checkTiers(from.length, factors.length, from.length > 0 && from[0] == 0);
+        for (int i = 1; i < from.length; i++) {
+            if (from[i] <= from[i - 1]) throw new IllegalArgumentException("Occupancy tiers must be ascending");
+        }
+        occupancyFrom = from.clone();
+        occupancyFactor = factors.clone();
+    }
+
+    public synchronized void setDayOfWeekFactor(DayOfWeek day, double factor) {
+        checkFactor(factor);
+        dayFactor[day.ordinal()] = factor;
+    }
+
+    /**
+     * Replaces the lead-time tiers: from daysFrom[i] days before the night
+     * (ascending, starting at 0) the rate is multiplied by factors[i].
+     */
+    public synchronized void setLeadTimeTiers(int[] daysFrom, double[] factors) {
+        checkTiers(daysFrom.length, factors.length, daysFrom.length > 0 && daysFrom[0] == 0);
+        for (int i = 1; i < daysFrom.length; i++) {
+            if (daysFrom[i] <= daysFrom[i - 1]) throw new IllegalArgumentException("Lead-time tiers must be ascending");
+        }
+        leadDaysFrom = daysFrom.clone();
+        leadFactor = factors.clone();
+    }
+
+    // Rates never go below min or above max times the base price
+    public synchronized void setLimits(double min, double max) {
+        checkFactor(min);
+        if (max < min) throw new IllegalArgumentException("Highest rate is below the lowest");
+        minFactor = min;
+        maxFactor = max;
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // Combined, clamped factor for each night of the stay
+    private double[] nightFactors(LocalDate from, LocalDate to, LocalDate bookedOn) {
+        long start = from.toEpochDay();
+        int nights = (int) (to.toEpochDay() - start);
+        if (nights <= 0) throw new IllegalArgumentException("Stay has no nights: " + from + " to " + to);
+
+        // Rooms sold each night and rooms that can be sold (read before taking this object's lock)
+        int[] sold = new int[nights];
+        analytics.soldPerNight(start, sold);
+        int rooms = roomService.getRoomCount() - roomService.countRooms(RoomStatus.MAINTENANCE);
+
+        double[] factors = new double[nights];
+        int firstDayOfWeek = from.getDayOfWeek().ordinal();
+        long lead = start - bookedOn.toEpochDay();
+        synchronized (this) {
+            for (int i = 0; i < nights; i++) {
+                double occupancy = rooms == 0 ? 1.0 : (double) sold[i] / rooms;
+                double factor = occupancyFactor[tier(occupancyFrom, occupancy)]
+                        * dayFactor[(firstDayOfWeek + i) % 7]
+                        * leadFactor[tier(leadDaysFrom, Math.max(0, lead + i))];
+                factors[i] = Math.min(maxFactor, Math.max(minFactor, factor));
+            }
+        }
+        return factors;
+    }
+
+    // Index of the last tier starting at or below value
+    private static int tier(double[] from, double value) {
+        int i = from.length - 1;
+        while (i > 0 && from[i] > value) i--;
+        return i;
+    }
+
+    private static int tier(int[] from, long value) {
+        int i = from.length - 1;
+        while (i > 0 && from[i] > value) i--;
+        return i;
+    }
+
+    // Nightly rates in cents
+    private static long[] rates(double basePrice, double[] factors) {
+        long[] cents = new long[factors.length];
+        for (int i = 0; i < factors.length; i++) {
+            cents[i] = Math.round(basePrice * factors[i] * 100);
+        }
+        return cents;
+    }
+
+    private static void checkTiers(int bounds, int factors, boolean startsAtZero) {
+        if (bounds == 0 || bounds != factors) throw new IllegalArgumentException("Need one factor per tier");
+        if (!startsAtZero) throw new IllegalArgumentException("First tier must start at 0");
+    }
+
+    private static void checkFactor(double factor) {
+        if (!(factor > 0)) throw new IllegalArgumentException("Factor must be positive: " + factor);
+    }
+
+    // ======================
+    // Result
+    // ======================
+
+    // Rates for one unit and one stay
+    public static class Quote {
+        private final int unitNumber;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long[] nightlyCents;
+
+        Quote(int unitNumber, LocalDate from, LocalDate to, long[] nightlyCents) {
+            this.unitNumber = unitNumber;
+            this.from = from;
+            this.to = to;
+            this.nightlyCents = nightlyCents;
+        }
+
+        public int getUnitNumber() { return unitNumber; }
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+
+        // Rate of each night, first night first
+        public double[] getNightlyRates() {
+            double[] rates = new double[nightlyCents.length];
+            for (int i = 0; i < rates.length; i++) rates[i] = nightlyCents[i] / 100.0;
+            return rates;
+        }
+
+        // Sum of the nightly rates
+        public double getTotal() {
+            long total = 0;
+            for (long cents : nightlyCents) total += cents;
+            return total / 100.0;
+        }
+
+        public double getAverageRate() {
+            return getTotal() / nightlyCents.length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Unit %d, %s to %s: %.2f (%d nights, average %.2f) %s",
+                                 unitNumber, from, to, getTotal(), nightlyCents.length, getAverageRate(),
+                                 Arrays.toString(getNightlyRates()));
+        }
+    }
+}
@@ -1,73 +1,197 @@
-// For reading files line by line
-import java.io.BufferedReader;
-import java.io.FileReader;
-
-// For handling dates without time
-import java.time.LocalDate;
-
-// For parsing date strings
-import java.time.format.DateTimeFormatter;
+// For opening files as UTF-8 character streams
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 // List and ArrayList for storing bookings
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+// For exposing the file as a lazily read stream
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Utility class to read bookings from a CSV file
 public class ReadBooking {
 
-    // Formatter for parsing dates in yyyy-MM-dd format
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // Number of columns every row of booking.csv has
+    static final int COLUMNS = 8;
+
+    // Optional 9th column: the unit the booking is assigned to (empty = none;
+    // files written before it existed have only the first 8 columns)
+    static final int UNIT_COLUMN = 8;
+
+    // Statuses to match the status column against
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    // Read speed and failed reads (see Metrics)
+    private static final Metrics.Throughput READ = Metrics.throughput("csv.read.booking");
+    private static final Metrics.Counter READ_ERRORS = Metrics.counter("csv.read.booking.errors");
+
+    // Rows skipped because a value could not be parsed
+    private static final Metrics.Counter SKIPPED_ROWS = Metrics.counter("csv.read.booking.skipped");
 
     // Reads bookings from a CSV file and returns a List of Booking objects
     public static List<Booking> readBookings(String filePath) {
 
         // List to store all bookings read from file
         List<Booking> bookings = new ArrayList<>();
+        long start = Metrics.start();
 
-        // Try-with-resources ensures BufferedReader is closed automatically
-        try (BufferedReader read = new BufferedReader(new FileReader(filePath))) {
-
-            String line;
-            boolean firstLine = true; // Skip header line
+        // Try-with-resources closes the file once the stream is drained
+        try (Stream<Booking> rows = streamBookings(filePath)) {
+            rows.forEach(bookings::add);
+        } catch (Exception e) {
+            READ_ERRORS.increment();
 
-            while ((line = read.readLine()) != null) {
+            // A damaged save: put the previous one back and read that instead
+            if (SnapshotChecksums.isDamaged(Paths.get(filePath), e) && restorePrevious(filePath)) {
+                System.out.println(filePath + " is damaged - loaded the previous save");
+                return readBookings(filePath);
+            }
 
-                // Skip the first line (header)
-                if (firstLine) { firstLine = false; continue; }
+            // Print stack trace if reading or parsing fails
+            e.printStackTrace();
+        }
+        READ.recordSince(start, bookings.size(), new File(filePath).length());
 
-                // Trim whitespace
-                line = line.trim();
+        // Return the list of bookings
+        return bookings;
+    }
 
-                // Skip empty lines or lines containing spaces or hyphens
-                if (line.isEmpty() || line.contains(" ") || line.contains("-")) continue;
+    /**
+     * Streams bookings from a CSV file one row at a time, so files of any size
+     * can be processed in constant memory. The stream must be closed to close
+     * the file. Read errors surface as UncheckedIOException (a damaged block
+     * of a checksummed save as one caused by a ChecksumException). A row with
+     * a bad value (party size, date or status) is skipped and counted in
+     * csv.read.booking.skipped, so one bad cell does not cut the load short.
+     */
+    public static Stream<Booking> streamBookings(String filePath) throws IOException {
+        CsvReader csv = new CsvReader(new InputStreamReader(SnapshotChecksums.open(Paths.get(filePath)),
+                                                            StandardCharsets.UTF_8));
+        return streamBookings(csv, true);
+    }
 
-                // Split CSV line into fields
-                String[] data = line.split(",");
+    // Puts the previous save of a file back, false if there is none to use
+    static boolean restorePrevious(String filePath) {
+        try {
+            return SnapshotChecksums.restorePrevious(Paths.get(filePath));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-                // Skip lines with insufficient data
-                if (data.length < 8) continue;
+    // Streams bookings from an open CsvReader (skipHeader = first line holds column names)
+    public static Stream<Booking> streamBookings(CsvReader csv, boolean skipHeader) {
+        return streamBookings(csv, skipHeader, NameDictionary.GUEST_NAMES);
+    }
 
-                // Assign fields to variables
-                String bookingID = data[0];
-                String surname = data[1];
-                String middleName = data[2];
-                String firstName = data[3];
-                int partySize = Integer.parseInt(data[4]);
-                LocalDate startDate = LocalDate.parse(data[5], formatter);
-                LocalDate endDate = LocalDate.parse(data[6], formatter);
-                String status = data[7];
+    // Same, sharing the names through the given dictionary
+    static Stream<Booking> streamBookings(CsvReader csv, boolean skipHeader, NameDictionary names) {
+        Iterator<Booking> rows = new Iterator<Booking>() {
+
+            // Next booking to hand out (null = not read yet)
+            private Booking pending;
+            private boolean headerSkipped = !skipHeader;
+
+            @Override
+            public boolean hasNext() {
+                if (pending != null) return true;
+                try {
+                    while (csv.next()) {
+
+                        // Skip the first line (header)
+                        if (!headerSkipped) { headerSkipped = true; continue; }
+
+                        // Skip lines with insufficient data
+                        if (csv.fieldCount() < COLUMNS) continue;
+
+                        // Skip (and report) rows with a value that does not parse
+                        try {
+                            pending = toBooking(csv, 0, names);
+                        } catch (RuntimeException e) {
+                            SKIPPED_ROWS.increment();
+                            System.out.println("Skipping booking " + csv.getString(0) + ": " + e.getMessage());
+                            continue;
+                        }
+                        return true;
+                    }
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
 
-                // Create new Booking object and add it to the list
-                bookings.add(new Booking(bookingID, surname, firstName, middleName, partySize, startDate, endDate, status));
+            @Override
+            public Booking next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Booking b = pending;
+                pending = null;
+                return b;
             }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        csv.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
 
-        } catch (Exception e) {
-            // Print stack trace if reading or parsing fails
-            e.printStackTrace();
+    // Checks if the fields from "first" on are one booking row (with or without the unit column)
+    static boolean isRow(CsvReader csv, int first) {
+        int n = csv.fieldCount() - first;
+        return n == COLUMNS || n == COLUMNS + 1;
+    }
+
+    // Builds a Booking from the current CSV line
+    // Columns: BookingID,Surname,MiddleName,FirstName,PartySize,StartDate,EndDate,Status[,Unit]
+    static Booking toBooking(CsvReader csv) {
+        return toBooking(csv, 0);
+    }
+
+    // Builds a Booking from the 8 booking columns starting at field "first"
+    // (names are shared through NameDictionary.GUEST_NAMES)
+    static Booking toBooking(CsvReader csv, int first) {
+        return toBooking(csv, first, NameDictionary.GUEST_NAMES);
+    }
+
+    // Same, sharing the names through the given dictionary
+    static Booking toBooking(CsvReader csv, int first, NameDictionary names) {
+        Booking b = new Booking(csv.getString(first),              // bookingID
+                                csv.getName(first + 1, names),     // surname
+                                csv.getName(first + 3, names),     // firstName
+                                csv.getName(first + 2, names),     // middleName
+                                csv.getInt(first + 4),             // partySize
+                                csv.getDate(first + 5),            // startDate
+                                csv.getDate(first + 6),            // endDate
+                                status(csv, first + 7));           // status
+        int unit = first + UNIT_COLUMN;
+        if (csv.fieldCount() > unit && !csv.isEmpty(unit)) {
+            b.setUnit(csv.getInt(unit));
         }
+        return b;
+    }
 
-        // Return the list of bookings
-        return bookings;
+    // Parses a status field straight from the reader's buffer (no String for a valid status)
+    static BookingStatus status(CsvReader csv, int field) {
+        for (BookingStatus s : STATUSES) {
+            if (csv.equalsIgnoreCase(field, s.getLabel())) return s;
+        }
+        throw new IllegalArgumentException("Invalid booking status: " + csv.getString(field));
     }
 
     // Displays bookings in a formatted console table
@@ -1,80 +1,143 @@
-// For reading files line by line
-import java.io.*;
+// For opening files as UTF-8 character streams
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 // For using dynamic arrays
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+// For exposing the file as a lazily read stream
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Utility class to read rooms from a CSV file
 public class ReadRooms 
 {
+    // Expected 5 columns: unitNumber, capacity, status, bookingID, basePrice
+    private static final int COLUMNS = 5;
+
+    // Read speed and failed reads (see Metrics)
+    private static final Metrics.Throughput READ = Metrics.throughput("csv.read.rooms");
+    private static final Metrics.Counter READ_ERRORS = Metrics.counter("csv.read.rooms.errors");
+
     // Reads rooms from a CSV file and returns a List of Room objects
-    // TODO: handle cases where CSV is not properly structured (less than 5 columns)
     public static List<Room> readRooms(String filePath) 
     {
         // List to store all room objects
         List<Room> rooms = new ArrayList<>();
+        long start = Metrics.start();
 
-        // Try-with-resources ensures BufferedReader is closed automatically
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) 
+        // Try-with-resources closes the file once the stream is drained
+        try (Stream<Room> rows = streamRooms(filePath)) 
         { 
-            String line;      // Current line being read
-            String[] data;    // Split CSV fields
-            boolean firstLine = true; // Skip header line
+            rows.forEach(rooms::add);
+        } catch (Exception e) 
+        {
+            READ_ERRORS.increment();
 
-            while ((line = br.readLine()) != null) 
+            // A damaged save: put the previous one back and read that instead
+            if (SnapshotChecksums.isDamaged(Paths.get(filePath), e) && ReadBooking.restorePrevious(filePath)) 
             {
-                // Skip the first line (header)
-                if (firstLine) 
-                {        
-                    firstLine = false;
-                    continue;
-                }
+                System.out.println(filePath + " is damaged - loaded the previous save");
+                return readRooms(filePath);
+            }
 
-                // Trim whitespace
-                line = line.trim();
+            // Print exception if reading or parsing fails
+            e.printStackTrace();
+        }
+        READ.recordSince(start, rooms.size(), new File(filePath).length());
 
-                // Skip empty lines or lines containing spaces or hyphens
-                if (line.isEmpty() || line.contains(" ") || line.contains("-")) continue;
+        // Return the list of rooms
+        return rooms;
+    }
 
-                // Split CSV line into fields
-                data = line.split(",");
+    /**
+     * Streams rooms from a CSV file one row at a time. The stream must be
+     * closed to close the file. Lines with fewer than 5 columns are skipped.
+     * A damaged block of a checksummed save fails the stream with an
+     * UncheckedIOException caused by a ChecksumException.
+     */
+    public static Stream<Room> streamRooms(String filePath) throws IOException 
+    {
+        CsvReader csv = new CsvReader(new InputStreamReader(SnapshotChecksums.open(Paths.get(filePath)), 
+                                                            StandardCharsets.UTF_8));
 
-                // Skip lines with insufficient data
-                if (data.length < 5) continue; // Expected 5 columns: unitNumber, capacity, status, bookingID, basePrice
+        Iterator<Room> rows = new Iterator<Room>() 
+        {
+            // Next room to hand out (null = not read yet)
+            private Room pending;
+            private boolean headerSkipped;
 
-                // Trim whitespace from each field
-                for (int i = 0; i < data.length; i++) 
+            @Override
+            public boolean hasNext() 
+            {
+                if (pending != null) return true;
+                try 
                 {
-                    data[i] = data[i].trim();
+                    while (csv.next()) 
+                    {
+                        // Skip the first line (header)
+                        if (!headerSkipped) 
+                        {
+                            headerSkipped = true;
+                            continue;
+                        }
+
+                        // Skip lines with insufficient data
+                        if (csv.fieldCount() < COLUMNS) continue;
+
+                        pending = toRoom(csv);
+                        return true;
+                    }
+                    return false;
+                } catch (IOException e) 
+                {
+                    throw new UncheckedIOException(e);
                 }
-
-                // Parse room data
-                int unitNumber = Integer.parseInt(data[0]);
-                int unitCapacity = Integer.parseInt(data[1]);
-                String unitStatus = data[2];
-                String bookingID = data[3].isEmpty() ? null : data[3]; // If bookingID is empty, set as null
-                int basePrice = Integer.parseInt(data[4]);
-
-                // Create Room object and add to the list
-                Room room = new Room(unitNumber, unitCapacity, unitStatus, bookingID, basePrice);
-                rooms.add(room);
             }
 
-            // If CSV only contains header, return empty list
-            if (rooms.isEmpty()) 
+            @Override
+            public Room next() 
             {
-                return rooms;
+                if (!hasNext()) throw new NoSuchElementException();
+                Room r = pending;
+                pending = null;
+                return r;
             }
-        
-        } catch (IOException e) 
-        {
-            // Print exception if reading file fails
-            e.printStackTrace();
-        }
+        };
 
-        // Return the list of rooms
-        return rooms;
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> 
+                {
+                    try 
+                    {
+                        csv.close();
+                    } catch (IOException e) 
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    // Builds a Room from the current CSV line
+    static Room toRoom(CsvReader csv) 
+    {
+        int unitNumber = csv.getInt(0);
+        int unitCapacity = csv.getInt(1);
+        String unitStatus = csv.getString(2);
+        String bookingID = csv.isEmpty(3) ? null : csv.getString(3); // If bookingID is empty, set as null
+        double basePrice = csv.getDouble(4); // Whole prices are written as ints
+
+        return new Room(unitNumber, unitCapacity, unitStatus, bookingID, basePrice);
     }
 
     // Displays rooms in a formatted console table
@@ -96,7 +159,7 @@ public class ReadRooms
             // Print each room in formatted row
             for (Room r : rooms) 
             {
-                System.out.printf("%-12d %-15d %-15s %-10d%n",
+                System.out.printf("%-12d %-15d %-15s %-10.2f%n",
                         r.getUnitNumber(),
                         r.getUnitCapacity(),
                         r.getUnitStatus(),
@@ -0,0 +1,18 @@
+// Turns records into the key and value bytes a BTree stores
+//
+// Keys are compared as unsigned bytes, so key() must give bytes whose order
+// is the order the records should be visited in.
+public interface RecordCodec<K, V> {
+
+    // Bytes of a key
+    byte[] key(K key);
+
+    // Key of a record
+    K keyOf(V value);
+
+    // Bytes of a record (without its key)
+    byte[] encode(V value);
+
+    // Rebuilds a record from its key and value bytes
+    V decode(byte[] key, byte[] value);
+}
@@ -0,0 +1,54 @@
+// For closing the storage behind a repository
+import java.io.Closeable;
+import java.io.IOException;
+
+// For visiting every record
+import java.util.function.Consumer;
+
+// Keyed storage for one kind of record (bookings by booking ID, rooms by unit number)
+//
+// Two implementations exist: BTree keeps the records in pages of the
+// embedded database file (see HotelDatabase), CsvRepository keeps them in
+// one of the CSV files and is used to import and export them. Repository.copy
+// moves every record from one to the other.
+//
+// Changes may be buffered until flush(); close() flushes as well.
+public interface Repository<K, V> extends Closeable {
+
+    // Returns the record with the given key, or null if there is none
+    V find(K key) throws IOException;
+
+    // Adds the record, or replaces the one with the same key
+    void save(V value) throws IOException;
+
+    // Removes the record with the given key, returns false if there was none
+    boolean delete(K key) throws IOException;
+
+    // Hands every record to the action (in key order for BTree, file order for CSV);
+    // the repository must not be changed from inside the action
+    void forEach(Consumer<? super V> action) throws IOException;
+
+    // Number of records
+    long size() throws IOException;
+
+    // Makes every change so far durable
+    void flush() throws IOException;
+
+    // Saves every record of from into to and flushes to; returns how many were copied
+    static <K, V> long copy(Repository<K, V> from, Repository<K, V> to) throws IOException {
+        long[] copied = new long[1];
+        IOException[] failure = new IOException[1];
+        from.forEach(v -> {
+            if (failure[0] != null) return;
+            try {
+                to.save(v);
+                copied[0]++;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        to.flush();
+        return copied[0];
+    }
+}
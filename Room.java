@@ -8,7 +8,7 @@ public class Room
     private int unitCapacity;
 
     // Current status of the room (e.g., AVAILABLE, OCCUPIED)
-    private String unitStatus;
+    private RoomStatus unitStatus;
 
     // Booking ID associated with the room, if any (null if not booked)
     private String bookingID;
@@ -21,7 +21,7 @@ public class Room
     {
         this.unitNumber = unitNumber;
         this.unitCapacity = unitCapacity;
-        this.unitStatus = unitStatus;
+        this.unitStatus = RoomStatus.parse(unitStatus);
         this.bookingID = bookingID;
         this.basePrice = basePrice;
     }
@@ -41,6 +41,11 @@ public class Room
     }
 
     public String getUnitStatus() 
+    {
+        return unitStatus.getLabel();
+    }
+
+    public RoomStatus getRoomStatus() 
     {
         return unitStatus;
     }
@@ -70,6 +75,11 @@ public class Room
     }
 
     public void setUnitStatus(String unitStatus) 
+    {
+        this.unitStatus = RoomStatus.parse(unitStatus);
+    }
+
+    public void setUnitStatus(RoomStatus unitStatus) 
     {
         this.unitStatus = unitStatus;
     }
@@ -89,7 +99,7 @@ public class Room
         return new String[]{
                 String.valueOf(unitNumber),
                 String.valueOf(unitCapacity),
-                unitStatus,
+                unitStatus.getLabel(),
                 bookingID == null ? "" : bookingID, // Display empty string if no booking
                 String.valueOf(basePrice)
         };
@@ -0,0 +1,364 @@
+// For the calendar checks
+import java.time.LocalDate;
+
+// Collections used for the room classes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Places a group of bookings into rooms, wasting as few beds (or as little money) as possible
+//
+// Rooms under maintenance are never used, and a room already booked for a
+// stay's dates (AvailabilityEngine) is skipped. The placement is planned
+// only; pass the result to AvailabilityEngine.bookAll() to book it.
+//
+// Heuristic (any size): bookings are taken in check-in order, largest party
+// first on the same day. Rooms with the same capacity and price form one
+// class, and classes are tried from cheapest to dearest for the goal (for
+// LEAST_UNUSED_CAPACITY: fewest empty beds, then price; for LEAST_COST:
+// price, then fewest empty beds) - best-fit bin packing. Inside a class the
+// stay goes to the room whose previous stay ended last before check-in, which
+// leaves the longer free stretches for later bookings (interval scheduling).
+// Every booking costs a scan of a few classes, so 10k bookings into 2k rooms
+// take milliseconds.
+//
+// Exact (up to EXACT_LIMIT bookings): a branch-and-bound search over all
+// placements, started from the heuristic's answer, that first places as many
+// bookings as possible and then minimizes the goal. Without existing
+// bookings, untouched rooms of one class are interchangeable, so only one of
+// them is tried per class. If the search hits NODE_LIMIT it keeps the best
+// placement found.
+public class RoomAllocator {
+
+    // What a placement should minimize
+    public enum Goal {
+        LEAST_UNUSED_CAPACITY, LEAST_COST
+    }
+
+    // Largest group searched exactly, and the most rooms tried in that search
+    static final int EXACT_LIMIT = 12;
+    static final int NODE_LIMIT = 2_000_000;
+
+    // Room data and the calendars of existing bookings
+    private final RoomService roomService;
+    private final AvailabilityEngine engine;
+
+    // engine may be null to ignore existing bookings
+    public RoomAllocator(RoomService roomService, AvailabilityEngine engine) {
+        this.roomService = roomService;
+        this.engine = engine;
+    }
+
+    /**
+     * Plans a room for every booking (units[i] for bookings.get(i), -1 if no
+     * room fits). Refunded bookings and bookings without a stay of at least
+     * one night are left out.
+     */
+    public Allocation allocate(List<Booking> bookings, Goal goal) {
+        Plan plan = new Plan(bookings, goal);
+        plan.greedy();
+        if (plan.stayBooking.length <= EXACT_LIMIT) {
+            plan.exact();
+        }
+        return plan.result();
+    }
+
+    // ======================
+    // Result
+    // ======================
+
+    public static class Allocation {
+        private final int[] units;
+        private final int placed;
+        private final long unusedBedNights;
+        private final double cost;
+        private final boolean exact;
+
+        Allocation(int[] units, int placed, long unusedBedNights, double cost, boolean exact) {
+            this.units = units;
+            this.placed = placed;
+            this.unusedBedNights = unusedBedNights;
+            this.cost = cost;
+            this.exact = exact;
+        }
+
+        // Unit for each booking, in the order given (-1 = not placed)
+        public int[] getUnits() { return units.clone(); }
+        public int getUnit(int booking) { return units[booking]; }
+
+        // Number of bookings that got a room
+        public int getPlaced() { return placed; }
+
+        // Empty beds summed over every night of every placed stay
+        public long getUnusedBedNights() { return unusedBedNights; }
+
+        // Base price summed over every night of every placed stay
+        public double getCost() { return cost; }
+
+        // True if the exact search proved this placement the best
+        public boolean isExact() { return exact; }
+
+        @Override
+        public String toString() {
+            return String.format("%d placed, %d unused bed-nights, cost %.2f%s",
+                                 placed, unusedBedNights, cost, exact ? " (optimal)" : "");
+        }
+    }
+
+    // ======================
+    // Planning
+    // ======================
+
+    // One run of allocate(): rooms, stays and the placement being built
+    private class Plan {
+        final Goal goal;
+
+        // Rooms that can be used
+        final int[] units;
+        final int[] capacities;
+        final double[] prices;
+
+        // Rooms with equal capacity and price, cheapest class first for the goal
+        final int[][] classes;
+        final int[] classCapacity;
+
+        // Stays to place, in check-in order (index into the caller's list in stayBooking)
+        final int[] stayBooking;
+        final int[] party;
+        final long[] start;
+        final long[] end;
+
+        // Current placement: room of each stay (-1 = none) and the end of each room's last planned stay
+        final int[] roomOf;
+        final long[] lastEnd;
+
+        // Best placement so far and its score
+        int[] best;
+        int bestPlaced;
+        double bestCost;
+        boolean exact;
+
+        // Number of bookings given (stays exclude refunded and empty ones)
+        final int bookingCount;
+
+        Plan(List<Booking> bookings, Goal goal) {
+            this.goal = goal;
+            this.bookingCount = bookings.size();
+
+            // Usable rooms (read in one go under the room service's lock)
+            List<Integer> usable = new ArrayList<>();
+            int[] allUnits;
+            int[] allCapacities;
+            double[] allPrices;
+            synchronized (roomService) {
+                int n = roomService.getRoomCount();
+                allUnits = new int[n];
+                allCapacities = new int[n];
+                allPrices = new double[n];
+                for (int row = 0; row < n; row++) {
+                    if (roomService.statusAt(row) == RoomStatus.MAINTENANCE) continue;
+                    allUnits[row] = roomService.unitAt(row);
+                    allCapacities[row] = roomService.capacityAt(row);
+                    allPrices[row] = roomService.priceAt(row);
+                    usable.add(row);
+                }
+            }
+            units = new int[usable.size()];
+            capacities = new int[usable.size()];
+            prices = new double[usable.size()];
+            for (int r = 0; r < units.length; r++) {
+                int row = usable.get(r);
+                units[r] = allUnits[row];
+                capacities[r] = allCapacities[row];
+                prices[r] = allPrices[row];
+            }
+
+            // Group rooms into classes and order the classes for the goal
+            Integer[] byClass = new Integer[units.length];
+            for (int r = 0; r < byClass.length; r++) byClass[r] = r;
+            Comparator<Integer> byCapacity = Comparator.comparingInt(r -> capacities[r]);
+            Comparator<Integer> byPrice = Comparator.comparingDouble(r -> prices[r]);
+            Arrays.sort(byClass, goal == Goal.LEAST_COST ? byPrice.thenComparing(byCapacity) : byCapacity.thenComparing(byPrice));
+            List<int[]> groups = new ArrayList<>();
+            for (int i = 0; i < byClass.length; ) {
+                int j = i;
+                while (j < byClass.length && capacities[byClass[j]] == capacities[byClass[i]]
+                        && prices[byClass[j]] == prices[byClass[i]]) j++;
+                int[] group = new int[j - i];
+                for (int k = i; k < j; k++) group[k - i] = byClass[k];
+                groups.add(group);
+                i = j;
+            }
+            classes = groups.toArray(new int[0][]);
+            classCapacity = new int[classes.length];
+            for (int c = 0; c < classes.length; c++) classCapacity[c] = capacities[classes[c][0]];
+
+            // Stays in check-in order, largest party first on the same day
+            List<Integer> wanted = new ArrayList<>();
+            for (int i = 0; i < bookings.size(); i++) {
+                Booking b = bookings.get(i);
+                if (b.getBookingStatus() == BookingStatus.REFUNDED) continue;
+                if (!b.getEndDate().isAfter(b.getStartDate())) continue;
+                wanted.add(i);
+            }
+            wanted.sort(Comparator.comparing((Integer i) -> bookings.get(i).getStartDate())
+                                  .thenComparing(i -> -bookings.get(i).getPartySize()));
+            int n = wanted.size();
+            stayBooking = new int[n];
+            party = new int[n];
+            start = new long[n];
+            end = new long[n];
+            for (int s = 0; s < n; s++) {
+                Booking b = bookings.get(wanted.get(s));
+                stayBooking[s] = wanted.get(s);
+                party[s] = b.getPartySize();
+                start[s] = b.getStartDate().toEpochDay();
+                end[s] = b.getEndDate().toEpochDay();
+            }
+
+            roomOf = new int[n];
+            Arrays.fill(roomOf, -1);
+            lastEnd = new long[units.length];
+            Arrays.fill(lastEnd, Long.MIN_VALUE);
+        }
+
+        // Best-fit by class, tightest fit in time inside the class
+        void greedy() {
+            for (int s = 0; s < stayBooking.length; s++) {
+                for (int c = 0; c < classes.length && roomOf[s] < 0; c++) {
+                    if (classCapacity[c] < party[s]) continue;
+                    int room = tightestFree(classes[c], s);
+                    if (room >= 0) place(s, room);
+                }
+            }
+            keepIfBetter();
+        }
+
+        // Room of the class whose last planned stay ends latest but before check-in (-1 if none is free)
+        private int tightestFree(int[] rooms, int s) {
+            int bestRoom = -1;
+            for (int room : rooms) {
+                if (lastEnd[room] > start[s]) continue;
+                if (bestRoom >= 0 && lastEnd[room] <= lastEnd[bestRoom]) continue;
+                if (!freeInCalendar(room, s)) continue;
+                bestRoom = room;
+            }
+            return bestRoom;
+        }
+
+        // Branch and bound from the greedy placement
+        void exact() {
+            Arrays.fill(roomOf, -1);
+            Arrays.fill(lastEnd, Long.MIN_VALUE);
+
+            // Cheapest possible cost of each stay on its own, for the bound
+            double[] cheapest = new double[stayBooking.length];
+            for (int s = 0; s < cheapest.length; s++) {
+                cheapest[s] = Double.MAX_VALUE;
+                for (int c = 0; c < classes.length; c++) {
+                    if (classCapacity[c] >= party[s]) cheapest[s] = Math.min(cheapest[s], cost(s, classes[c][0]));
+                }
+            }
+            double[] restBound = new double[stayBooking.length + 1];
+            for (int s = stayBooking.length - 1; s >= 0; s--) {
+                restBound[s] = restBound[s + 1] + (cheapest[s] == Double.MAX_VALUE ? 0 : cheapest[s]);
+            }
+
+            nodes = 0;
+            search(0, 0, 0, restBound);
+            exact = nodes < NODE_LIMIT;
+        }
+
+        private int nodes;
+
+        private void search(int s, int placed, double cost, double[] restBound) {
+            if (++nodes >= NODE_LIMIT) return;
+            if (s == stayBooking.length) {
+                if (placed > bestPlaced || (placed == bestPlaced && cost < bestCost)) keepIfBetter();
+                return;
+            }
+
+            // Even placing every remaining stay cannot beat the best
+            int canPlace = placed + stayBooking.length - s;
+            if (canPlace < bestPlaced || (canPlace == bestPlaced && cost + restBound[s] >= bestCost)) return;
+
+            for (int[] rooms : classes) {
+                if (capacities[rooms[0]] < party[s]) continue;
+                boolean triedUntouched = false;
+                for (int room : rooms) {
+                    if (++nodes >= NODE_LIMIT) return;
+                    if (lastEnd[room] > start[s]) continue;
+
+                    // Untouched rooms of a class are interchangeable (unless their calendars differ)
+                    if (engine == null && lastEnd[room] == Long.MIN_VALUE) {
+                        if (triedUntouched) continue;
+                        triedUntouched = true;
+                    }
+                    if (!freeInCalendar(room, s)) continue;
+
+                    long before = lastEnd[room];
+                    place(s, room);
+                    search(s + 1, placed + 1, cost + cost(s, room), restBound);
+                    roomOf[s] = -1;
+                    lastEnd[room] = before;
+                    if (nodes >= NODE_LIMIT) return;
+                }
+            }
+
+            // Leave this stay without a room
+            search(s + 1, placed, cost, restBound);
+        }
+
+        private void place(int s, int room) {
+            roomOf[s] = room;
+            lastEnd[room] = end[s];
+        }
+
+        // True if no existing booking holds the room during the stay
+        private boolean freeInCalendar(int room, int s) {
+            if (engine == null) return true;
+            return engine.isFree(units[room], LocalDate.ofEpochDay(start[s]), LocalDate.ofEpochDay(end[s]));
+        }
+
+        // What the goal charges for a stay in a room
+        private double cost(int s, int room) {
+            long nights = end[s] - start[s];
+            return goal == Goal.LEAST_COST
+                    ? prices[room] * nights
+                    : (double) (capacities[room] - party[s]) * nights;
+        }
+
+        // Remembers the current placement if it places more stays, or as many for less
+        private void keepIfBetter() {
+            int placed = 0;
+            double cost = 0;
+            for (int s = 0; s < roomOf.length; s++) {
+                if (roomOf[s] < 0) continue;
+                placed++;
+                cost += cost(s, roomOf[s]);
+            }
+            if (best == null || placed > bestPlaced || (placed == bestPlaced && cost < bestCost)) {
+                best = roomOf.clone();
+                bestPlaced = placed;
+                bestCost = cost;
+            }
+        }
+
+        Allocation result() {
+            int[] unitOf = new int[bookingCount];
+            Arrays.fill(unitOf, -1);
+            long unusedBedNights = 0;
+            double price = 0;
+            for (int s = 0; s < best.length; s++) {
+                int room = best[s];
+                if (room < 0) continue;
+                long nights = end[s] - start[s];
+                unitOf[stayBooking[s]] = units[room];
+                unusedBedNights += (long) (capacities[room] - party[s]) * nights;
+                price += prices[room] * nights;
+            }
+            return new Allocation(unitOf, bestPlaced, unusedBedNights, price, exact);
+        }
+    }
+}
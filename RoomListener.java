@@ -0,0 +1,13 @@
+// Callback interface for components that keep their own view of the rooms
+// in step with RoomService. Row numbers are positions in RoomService.getRooms().
+public interface RoomListener 
+{
+    // Called after a room was appended at the given row
+    default void roomAdded(int row, Room room) { }
+
+    // Called after the room at the given row was removed (later rows move up by one)
+    default void roomRemoved(int row, Room room) { }
+
+    // Called after the room at the given row changed
+    default void roomUpdated(int row, Room room) { }
+}
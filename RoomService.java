@@ -1,21 +1,51 @@
+// For tonight's date
+import java.time.LocalDate;
+
 // For using dynamic arrays and lists
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+
+// Listener list that can be iterated while listeners are being added
+import java.util.concurrent.CopyOnWriteArrayList;
 
 // Service class that manages all room-related operations
+// (methods are synchronized so several desks can share one service)
+//
+// Rooms live in a RoomStore: parallel primitive arrays with an int map on
+// the unit number. The row-based methods below read those arrays directly;
+// hold the service's lock across several calls to keep row numbers stable.
 public class RoomService 
 {
-    // List of all rooms
-    private List<Room> rooms;
+    // All rooms, as primitive columns
+    private final RoomStore rooms = new RoomStore();
+
+    // Immutable copy of rooms handed to readers (null = rebuild on next read)
+    private List<Room> snapshot;
+
+    // Components notified after every change
+    private final List<RoomListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Calendars of the booked stays (null until DataLoader has built them)
+    private volatile AvailabilityEngine availability;
+
+    // Latency of the room queries (see Metrics)
+    private static final Metrics.Histogram FIND_TIME = Metrics.sampledHistogram("room.find", 128);
+    private static final Metrics.Histogram LIST_TIME = Metrics.histogram("room.list");
+    private static final Metrics.Histogram STATUS_QUERY_TIME = Metrics.histogram("room.withStatus");
 
     // Constructor receives a list of rooms (usually loaded from CSV)
     public RoomService(List<Room> rooms) 
     {
-        this.rooms = rooms;
+        for (Room r : rooms) 
+        {
+            this.rooms.add(r);
+        }
     }
 
     // Creates a new room and adds it to the list
-    public Room createRoom(int unitNumber, int unitCapacity, String unitStatus, 
+    public synchronized Room createRoom(int unitNumber, int unitCapacity, String unitStatus, 
                            String bookingID, double price) 
     {
         // Prevent adding duplicate rooms with the same unit number
@@ -26,7 +56,7 @@ public class RoomService
         }
 
         // Validate room status before creating room
-        if (!isValidStatus(unitStatus)) 
+        if (RoomStatus.fromString(unitStatus) == null) 
         {
             System.out.println("Invalid room status: " + unitStatus);
             return null;
@@ -34,104 +64,260 @@ public class RoomService
 
         // Create new Room object and add to the list
         Room r = new Room(unitNumber, unitCapacity, unitStatus, bookingID, price);
-        rooms.add(r); 
+        addRoom(r);
         return r;
     }
 
-    // Returns the list of all rooms
-    public List<Room> getRooms() 
+    // Adds an already built room (for example, one read from CSV), returns false if its unit number is taken
+    public synchronized boolean addRoom(Room r) 
     {
-        return rooms;
+        int row = rooms.add(r);
+        if (row < 0) 
+        {
+            return false;
+        }
+        snapshot = null;
+        for (RoomListener l : listeners) 
+        {
+            l.roomAdded(row, r);
+        }
+        return true;
     }
 
-    // Finds a room by its unit number
-    public Room findRoom(int unitNumber) 
+    // Adds a room, or replaces the room with the same unit number in place
+    // (for reloads of rooms.csv); returns false if nothing changed
+    public synchronized boolean putRoom(Room r) 
     {
-        for (Room r : rooms) 
+        int row = rooms.rowOf(r.getUnitNumber());
+        if (row < 0) 
+        {
+            return addRoom(r);
+        }
+        if (sameRoom(rooms.roomAt(row), r)) 
         {
-            if (r.getUnitNumber() == unitNumber) 
+            return false;
+        }
+        rooms.set(row, r);
+        snapshot = null;
+        for (RoomListener l : listeners) 
+        {
+            l.roomUpdated(row, r);
+        }
+        return true;
+    }
+
+    private static boolean sameRoom(Room a, Room b) 
+    {
+        return a.getUnitCapacity() == b.getUnitCapacity()
+                && a.getRoomStatus() == b.getRoomStatus()
+                && a.getBasePrice() == b.getBasePrice()
+                && Objects.equals(a.getBookingID(), b.getBookingID());
+    }
+
+    // Registers a component that must be told about room changes
+    public void addRoomListener(RoomListener listener) 
+    {
+        listeners.add(listener);
+    }
+
+    public void removeRoomListener(RoomListener listener) 
+    {
+        listeners.remove(listener);
+    }
+
+    // Returns an immutable copy of all rooms (reused until rooms are added or deleted)
+    public synchronized List<Room> getRooms() 
+    {
+        long start = LIST_TIME.start();
+        if (snapshot == null) 
+        {
+            List<Room> list = new ArrayList<>(rooms.size());
+            for (int row = 0; row < rooms.size(); row++) 
             {
-                return r;
+                list.add(rooms.roomAt(row));
             }
+            snapshot = Collections.unmodifiableList(list);
         }
-        return null;
+        LIST_TIME.recordSince(start);
+        return snapshot;
+    }
+
+    // Finds a room by its unit number
+    public synchronized Room findRoom(int unitNumber) 
+    {
+        long start = FIND_TIME.start();
+        int row = rooms.rowOf(unitNumber);
+        Room found = row < 0 ? null : rooms.roomAt(row);
+        FIND_TIME.recordSince(start);
+        return found;
     }
 
     // Checks if a room exists by unit number
-    public boolean roomExist(int unitNumber) 
+    public synchronized boolean roomExist(int unitNumber) 
     {
-        return findRoom(unitNumber) != null;
+        return rooms.contains(unitNumber);
     }
 
-    // Returns a list of all available rooms
+    // Sets the calendars getAvailableRooms answers from
+    public void setAvailability(AvailabilityEngine availability) 
+    {
+        this.availability = availability;
+    }
+
+    // Returns a list of all available rooms: the rooms whose status is AVAILABLE
+    // and, once the calendars are built, that nobody is booked into tonight
+    // (so a room is never both available and in getOccupiedRooms)
     public List<Room> getAvailableRooms() 
     {
-        List<Room> availableRooms = new ArrayList<>();
-        for (Room r : rooms) {
-            if (r.getUnitStatus().equalsIgnoreCase("Available")) 
-            {
-                availableRooms.add(r);
-            }
+        List<Room> list = getRoomsWithStatus(RoomStatus.AVAILABLE);
+        AvailabilityEngine engine = availability;
+        if (engine != null) 
+        {
+            LocalDate today = LocalDate.now();
+            list.removeIf(r -> !engine.isFree(r.getUnitNumber(), today, today.plusDays(1)));
         }
-        return availableRooms;
+        return list;
     }
 
-    // Returns a list of all occupied rooms
+    // Returns a list of all occupied rooms (costs the size of the result)
     public List<Room> getOccupiedRooms() 
     {
-        List<Room> occupiedRooms = new ArrayList<>();
-        for (Room r : rooms) {
-            if (r.getUnitStatus().equalsIgnoreCase("Occupied")) 
-            {
-                occupiedRooms.add(r);
-            }
+        return getRoomsWithStatus(RoomStatus.OCCUPIED);
+    }
+
+    // Returns a list of all rooms with a status
+    public synchronized List<Room> getRoomsWithStatus(RoomStatus status) 
+    {
+        long start = STATUS_QUERY_TIME.start();
+        List<Room> list = new ArrayList<>(rooms.countWithStatus(status));
+        for (int row = rooms.nextWithStatus(0, status); row >= 0; row = rooms.nextWithStatus(row + 1, status)) 
+        {
+            list.add(rooms.roomAt(row));
         }
-        return occupiedRooms;
+        STATUS_QUERY_TIME.recordSince(start);
+        return list;
+    }
+
+    // Counts the rooms with a status
+    public synchronized int countRooms(RoomStatus status) 
+    {
+        return rooms.countWithStatus(status);
     }
 
     // Updates the status of a room
-    public boolean updateRoomStatus(int unitNumber, String newStatus) 
+    public synchronized boolean updateRoomStatus(int unitNumber, String newStatus) 
     {
         // Validate the new status
-        if (!isValidStatus(newStatus)) 
+        RoomStatus status = RoomStatus.fromString(newStatus);
+        if (status == null) 
         {
             System.out.println("Invalid status: " + newStatus);
             return false;
         }
 
         // Find the room and update its status
-        Room r = findRoom(unitNumber);
-        if (r != null) {
-            r.setUnitStatus(newStatus);
+        int row = rooms.rowOf(unitNumber);
+        if (row >= 0) {
+            rooms.setStatus(row, status);
+            snapshot = null;
+            Room r = rooms.roomAt(row);
+            for (RoomListener l : listeners) 
+            {
+                l.roomUpdated(row, r);
+            }
             return true;
         }
         return false;
     }
 
     // Deletes a room by unit number
-    public boolean deleteRoom(int unitNumber) 
+    public synchronized boolean deleteRoom(int unitNumber) 
     {
-        Room found = findRoom(unitNumber);
-        if (found != null) {
-            rooms.remove(found);
+        int row = rooms.rowOf(unitNumber);
+        if (row >= 0) {
+            Room found = rooms.roomAt(row);
+            rooms.remove(row);
+            snapshot = null;
+            for (RoomListener l : listeners) 
+            {
+                l.roomRemoved(row, found);
+            }
             return true;
         }
         return false;
     }
 
-    // Validates allowed room statuses
-    private boolean isValidStatus(String status) 
+    // ======================
+    // Row-based access (no Room objects are built)
+    // Rows are positions in getRooms(); -1 means "none"
+    // ======================
+
+    // Number of rooms
+    public synchronized int getRoomCount() 
+    {
+        return rooms.size();
+    }
+
+    // Returns the row of a unit, or -1 if there is no such unit
+    public synchronized int rowOfUnit(int unitNumber) 
+    {
+        return rooms.rowOf(unitNumber);
+    }
+
+    public synchronized int unitAt(int row) 
+    {
+        return rooms.unitAt(row);
+    }
+
+    public synchronized int capacityAt(int row) 
+    {
+        return rooms.capacityAt(row);
+    }
+
+    public synchronized double priceAt(int row) 
+    {
+        return rooms.priceAt(row);
+    }
+
+    public synchronized RoomStatus statusAt(int row) 
+    {
+        return rooms.statusAt(row);
+    }
+
+    public synchronized String bookingIDAt(int row) 
+    {
+        return rooms.bookingIDAt(row);
+    }
+
+    // Returns the Room object for a row
+    public synchronized Room roomAt(int row) 
+    {
+        return rooms.roomAt(row);
+    }
+
+    // Next row at or after "from" with at least minCapacity beds
+    public synchronized int nextRoomWithCapacity(int from, int minCapacity) 
+    {
+        return rooms.nextWithCapacity(from, minCapacity);
+    }
+
+    // Next row at or after "from" priced between minPrice and maxPrice (inclusive)
+    public synchronized int nextRoomInPriceRange(int from, double minPrice, double maxPrice) 
+    {
+        return rooms.nextInPriceRange(from, minPrice, maxPrice);
+    }
+
+    // Next row at or after "from" with the given status
+    public synchronized int nextRoomWithStatus(int from, RoomStatus status) 
     {
-        return status.equalsIgnoreCase("Available") ||
-               status.equalsIgnoreCase("Occupied")  ||
-               status.equalsIgnoreCase("Maintenance");
+        return rooms.nextWithStatus(from, status);
     }
 
     // Converts all rooms to a 2D Object array for JTable display in UI
-    public Object[][] getRoomsForTable() {
+    public synchronized Object[][] getRoomsForTable() {
         Object[][] data = new Object[rooms.size()][5];
         for (int i = 0; i < rooms.size(); i++) {
-            data[i] = rooms.get(i).toStringDisplay();
+            data[i] = rooms.roomAt(i).toStringDisplay();
         }
         return data;
     }
@@ -0,0 +1,50 @@
+// Allowed room statuses
+//
+// The label is the text used in rooms.csv and shown in the UI.
+public enum RoomStatus 
+{
+    AVAILABLE("Available"),
+    OCCUPIED("Occupied"),
+    MAINTENANCE("Maintenance");
+
+    // Text stored in rooms.csv
+    private final String label;
+
+    RoomStatus(String label) 
+    {
+        this.label = label;
+    }
+
+    public String getLabel() 
+    {
+        return label;
+    }
+
+    // Returns the status for a label (case is ignored), or null if it is not a room status
+    public static RoomStatus fromString(String text) 
+    {
+        if (text == null) return null;
+        for (RoomStatus s : values()) 
+        {
+            if (s.label.equalsIgnoreCase(text)) return s;
+        }
+        return null;
+    }
+
+    // Same as fromString, but an unknown label is an error
+    public static RoomStatus parse(String text) 
+    {
+        RoomStatus s = fromString(text);
+        if (s == null) 
+        {
+            throw new IllegalArgumentException("Invalid room status: " + text);
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() 
+    {
+        return label;
+    }
+}
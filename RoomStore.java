@@ -0,0 +1,326 @@
+// Bit sets for the per-status row indexes
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Rooms kept as parallel primitive arrays (one array per column), looked up by unit number
+//
+// Row i of every array describes the i-th room, in the order the rooms were
+// added. Unit numbers are found through an open-addressing int -> row map,
+// so lookups, capacity filters and price-range scans never box or allocate.
+// Room objects are only built when someone asks for one (roomAt), and the
+// same object is handed out for a row until the room changes or is removed.
+// Those objects are read-only views (their setters throw), since setting a
+// field on one would not change the columns; rooms are changed through
+// RoomService, which rebuilds the view.
+//
+// Not thread-safe: RoomService owns the store and calls it under its own lock.
+class RoomStore
+{
+    // Marks an empty slot in the unit map (unit numbers are never this value)
+    private static final int NO_UNIT = Integer.MIN_VALUE;
+
+    // Statuses by their code in the status column
+    private static final RoomStatus[] STATUSES = RoomStatus.values();
+
+    // Columns
+    private int[] units = new int[16];
+    private int[] capacities = new int[16];
+    private double[] prices = new double[16];
+    private byte[] statuses = new byte[16];
+    private String[] bookingIDs = new String[16];
+
+    // Room objects built so far (null = not asked for yet, or changed since)
+    private Room[] views = new Room[16];
+
+    // Number of rooms
+    private int size;
+
+    // Unit map: open addressing with linear probing, keys[slot] = unit, rows[slot] = row
+    private int[] keys = newKeys(32);
+    private int[] rows = new int[32];
+
+    // status -> rows with that status
+    private final BitSet[] byStatus = new BitSet[STATUSES.length];
+
+    RoomStore()
+    {
+        for (int i = 0; i < byStatus.length; i++)
+        {
+            byStatus[i] = new BitSet();
+        }
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    // ======================
+    // Lookups by unit number
+    // ======================
+
+    // Returns the row of a unit, or -1 if there is no such unit
+    int rowOf(int unitNumber)
+    {
+        int mask = keys.length - 1;
+        for (int slot = hash(unitNumber) & mask; ; slot = (slot + 1) & mask)
+        {
+            int key = keys[slot];
+            if (key == unitNumber) return rows[slot];
+            if (key == NO_UNIT) return -1;
+        }
+    }
+
+    boolean contains(int unitNumber)
+    {
+        return rowOf(unitNumber) >= 0;
+    }
+
+    // ======================
+    // Column access by row
+    // ======================
+
+    int unitAt(int row)
+    {
+        return units[row];
+    }
+
+    int capacityAt(int row)
+    {
+        return capacities[row];
+    }
+
+    double priceAt(int row)
+    {
+        return prices[row];
+    }
+
+    RoomStatus statusAt(int row)
+    {
+        return STATUSES[statuses[row]];
+    }
+
+    String bookingIDAt(int row)
+    {
+        return bookingIDs[row];
+    }
+
+    // Returns the Room object for a row, building it on first use
+    Room roomAt(int row)
+    {
+        Room r = views[row];
+        if (r == null)
+        {
+            r = new View(units[row], capacities[row], STATUSES[statuses[row]].getLabel(),
+                         bookingIDs[row], prices[row]);
+            views[row] = r;
+        }
+        return r;
+    }
+
+    // ======================
+    // Scans (no allocation: each returns the next matching row at or after "from", or -1)
+    // ======================
+
+    int nextWithCapacity(int from, int minCapacity)
+    {
+        for (int row = from; row < size; row++)
+        {
+            if (capacities[row] >= minCapacity) return row;
+        }
+        return -1;
+    }
+
+    int nextInPriceRange(int from, double minPrice, double maxPrice)
+    {
+        for (int row = from; row < size; row++)
+        {
+            double p = prices[row];
+            if (p >= minPrice && p <= maxPrice) return row;
+        }
+        return -1;
+    }
+
+    int nextWithStatus(int from, RoomStatus status)
+    {
+        return from >= size ? -1 : byStatus[status.ordinal()].nextSetBit(from);
+    }
+
+    int countWithStatus(RoomStatus status)
+    {
+        return byStatus[status.ordinal()].cardinality();
+    }
+
+    // ======================
+    // Changes
+    // ======================
+
+    // Appends a room, returns its row or -1 if the unit number is taken
+    int add(Room r)
+    {
+        if (r.getUnitNumber() == NO_UNIT || contains(r.getUnitNumber())) return -1;
+
+        if (size == units.length) grow();
+        int row = size++;
+        units[row] = r.getUnitNumber();
+        capacities[row] = r.getUnitCapacity();
+        prices[row] = r.getBasePrice();
+        statuses[row] = (byte) r.getRoomStatus().ordinal();
+        bookingIDs[row] = r.getBookingID();
+        views[row] = null;
+        byStatus[statuses[row]].set(row);
+        putRow(units[row], row);
+        return row;
+    }
+
+    // Replaces the room in a row with one of the same unit number
+    void set(int row, Room r)
+    {
+        byStatus[statuses[row]].clear(row);
+        capacities[row] = r.getUnitCapacity();
+        prices[row] = r.getBasePrice();
+        statuses[row] = (byte) r.getRoomStatus().ordinal();
+        bookingIDs[row] = r.getBookingID();
+        views[row] = null;
+        byStatus[statuses[row]].set(row);
+    }
+
+    // Changes the status of a row (the row gets a new Room object)
+    void setStatus(int row, RoomStatus status)
+    {
+        byStatus[statuses[row]].clear(row);
+        statuses[row] = (byte) status.ordinal();
+        byStatus[statuses[row]].set(row);
+        views[row] = null;
+    }
+
+    // Removes a row; later rows move up by one (costs the number of rooms)
+    void remove(int row)
+    {
+        int moved = size - row - 1;
+        System.arraycopy(units, row + 1, units, row, moved);
+        System.arraycopy(capacities, row + 1, capacities, row, moved);
+        System.arraycopy(prices, row + 1, prices, row, moved);
+        System.arraycopy(statuses, row + 1, statuses, row, moved);
+        System.arraycopy(bookingIDs, row + 1, bookingIDs, row, moved);
+        System.arraycopy(views, row + 1, views, row, moved);
+        size--;
+        bookingIDs[size] = null;
+        views[size] = null;
+
+        // Row numbers changed for every later room, so rebuild the indexes
+        rebuildIndexes(keys.length);
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    private void grow()
+    {
+        int capacity = units.length * 2;
+        units = Arrays.copyOf(units, capacity);
+        capacities = Arrays.copyOf(capacities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        bookingIDs = Arrays.copyOf(bookingIDs, capacity);
+        views = Arrays.copyOf(views, capacity);
+
+        // Keep the unit map at most half full
+        rebuildIndexes(capacity * 2);
+    }
+
+    private void rebuildIndexes(int mapCapacity)
+    {
+        keys = newKeys(mapCapacity);
+        rows = new int[mapCapacity];
+        for (BitSet rowsWithStatus : byStatus)
+        {
+            rowsWithStatus.clear();
+        }
+        for (int row = 0; row < size; row++)
+        {
+            putRow(units[row], row);
+            byStatus[statuses[row]].set(row);
+        }
+    }
+
+    private void putRow(int unitNumber, int row)
+    {
+        int mask = keys.length - 1;
+        int slot = hash(unitNumber) & mask;
+        while (keys[slot] != NO_UNIT)
+        {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = unitNumber;
+        rows[slot] = row;
+    }
+
+    private static int[] newKeys(int capacity)
+    {
+        int[] k = new int[capacity];
+        Arrays.fill(k, NO_UNIT);
+        return k;
+    }
+
+    // Spreads sequential unit numbers over the table
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ======================
+    // Read-only Room objects handed out by roomAt
+    // ======================
+
+    private static class View extends Room
+    {
+        View(int unitNumber, int unitCapacity, String unitStatus, String bookingID, double basePrice)
+        {
+            super(unitNumber, unitCapacity, unitStatus, bookingID, basePrice);
+        }
+
+        @Override
+        public void setUnitNumber(int unitNumber)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setUnitCapacity(int unitCapacity)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setUnitStatus(String unitStatus)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setUnitStatus(RoomStatus unitStatus)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBookingID(String bookingID)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBasePrice(double basePrice)
+        {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly()
+        {
+            return new UnsupportedOperationException("Rooms from RoomService are read-only; change them with putRoom or updateRoomStatus");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// Room table that reads rows straight from RoomService
+//
+// Cells are read from the service's room columns and formatted on demand;
+// changes arrive as RoomListener row events.
+public class RoomTableModel extends LiveTableModel implements RoomListener 
+{
+    // Version of the serialized form (models are not actually serialized)
+    private static final long serialVersionUID = 1L;
+
+    // Column names for rooms table
+    static final String[] COLUMNS = {"Unit#", "Capacity", "Status", "BookingID", "Price"};
+
+    // Service that owns the rooms
+    private final RoomService roomService;
+
+    // Creates a model over the service's rooms and starts listening for changes
+    public RoomTableModel(RoomService roomService) 
+    {
+        super(COLUMNS);
+        this.roomService = roomService;
+
+        // Read the size and start listening at the same point
+        synchronized (roomService) 
+        {
+            setInitialRowCount(roomService.getRoomCount());
+            roomService.addRoomListener(this);
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) 
+    {
+        synchronized (roomService) 
+        {
+            // The service may already be ahead of the events this table has seen
+            if (row >= roomService.getRoomCount()) return null;
+
+            switch (column) 
+            {
+                case 0: return roomService.unitAt(row);
+                case 1: return roomService.capacityAt(row);
+                case 2: return roomService.statusAt(row).getLabel();
+                case 3: return roomService.bookingIDAt(row);
+                case 4: return roomService.priceAt(row);
+                default: return null;
+            }
+        }
+    }
+
+    // ======================
+    // RoomListener methods
+    // ======================
+
+    @Override
+    public void roomAdded(int row, Room room) 
+    {
+        postInserted(row);
+    }
+
+    @Override
+    public void roomRemoved(int row, Room room) 
+    {
+        postDeleted(row);
+    }
+
+    @Override
+    public void roomUpdated(int row, Room room) 
+    {
+        postUpdated(row);
+    }
+}
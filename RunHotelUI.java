@@ -1,14 +1,15 @@
 // For running Swing UI safely on the Event Dispatch Thread
 import javax.swing.*;
 
+// For the empty lists the services start with
+import java.util.ArrayList;
+
 public class RunHotelUI {
     public static void main(String[] args) {
         try {
-            // Load room data from CSV file and create RoomService
-            RoomService roomService = new RoomService(ReadRooms.readRooms("DB/rooms.csv"));
-
-            // Load booking data from CSV file and create BookingService
-            BookingService bookingService = new BookingService(ReadBooking.readBookings("DB/booking.csv"));
+            // Services start empty and are filled in the background once the window is up
+            RoomService roomService = new RoomService(new ArrayList<>());
+            BookingService bookingService = new BookingService(new ArrayList<>());
 
             // Launch the Swing UI on the Event Dispatch Thread (required for Swing thread safety)
             SwingUtilities.invokeLater(() -> {
@@ -17,6 +18,9 @@ public class RunHotelUI {
 
                 // Display the window
                 mainWindow.setVisible(true);  // <-- THIS shows your window
+
+                // Load rooms, bookings and the change log in the background
+                mainWindow.startLoading("DB/rooms.csv", "DB/booking.csv", "DB/booking.log");
             });
 
         } catch (Exception e) {
@@ -0,0 +1,384 @@
+// For the files the journal and database checks work on
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// For generating bookings
+import java.time.LocalDate;
+
+// Collections used as the models the real classes are compared with
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+// Self-checks for the booking store, the journal and the database B+tree
+//
+// Each check drives one component with a random workload from a fixed seed
+// and compares it after every step with a plain model (an ArrayList, a
+// TreeMap, or what was written before a simulated crash). A mismatch throws
+// an AssertionError naming the step, so a failure can be replayed exactly.
+// The program prints "ok" or "FAIL" per check and exits with status 1 if any
+// check failed.
+//
+// Usage (from the directory holding the compiled classes):
+//   javac -d out *.java
+//   java -cp out SelfCheck                 all checks
+//   java -cp out SelfCheck Journal         checks whose name contains "Journal"
+public class SelfCheck {
+
+    // Seed for every random workload
+    private static final long SEED = 42;
+
+    // A check: throws if the component does not behave like its model
+    interface Check {
+        void run() throws Exception;
+    }
+
+    // All checks by name, in the order they are run
+    static final Map<String, Check> CHECKS = new LinkedHashMap<>();
+
+    // Directory for the files the checks write (deleted on exit)
+    static Path dataDir;
+
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        dataDir = Files.createTempDirectory("hotel-check");
+        registerChecks();
+
+        int failed = 0;
+        for (Map.Entry<String, Check> e : CHECKS.entrySet()) {
+            if (!e.getKey().contains(filter)) continue;
+            try {
+                e.getValue().run();
+                System.out.println("ok    " + e.getKey());
+            } catch (Exception | AssertionError ex) {
+                failed++;
+                System.out.println("FAIL  " + e.getKey() + ": " + ex);
+                ex.printStackTrace();
+            }
+        }
+
+        deleteTree(dataDir);
+        if (failed > 0) System.exit(1);
+    }
+
+    // ======================
+    // Checks
+    // ======================
+
+    private static void registerChecks() {
+
+        // Random adds, replaces, status changes and removes against an ArrayList
+        CHECKS.put("BookingStore matches a list", () -> {
+            Random r = new Random(SEED);
+            BookingStore store = new BookingStore(new ArrayList<>());
+            List<Booking> model = new ArrayList<>();
+            Map<Booking, BookingStatus> statuses = new IdentityHashMap<>();
+            int next = 0;
+
+            for (int step = 0; step < 20_000; step++) {
+                int op = r.nextInt(10);
+                if (op < 4 || model.isEmpty()) {
+                    Booking b = booking(r, next++);
+                    check(store.addIfAbsent(b), step, "new booking ID rejected");
+                    model.add(b);
+                    statuses.put(b, BookingStatus.fromString(b.getStatus()));
+                } else if (op == 4) {
+                    Booking taken = model.get(r.nextInt(model.size()));
+                    check(!store.addIfAbsent(booking(r, taken.getBookingID())), step, "duplicate ID accepted");
+                } else if (op == 5) {
+                    int row = r.nextInt(model.size());
+                    check(store.remove(row) == model.remove(row), step, "remove(row) removed another booking");
+                } else if (op == 6) {
+                    Booking b = model.get(r.nextInt(model.size()));
+                    check(store.removeID(b.getBookingID()) == b, step, "removeID removed another booking");
+                    model.remove(b);
+                } else if (op == 7) {
+                    int row = r.nextInt(model.size());
+                    Booking b = booking(r, model.get(row).getBookingID());
+                    check(store.set(row, b) == model.set(row, b), step, "set returned another booking");
+                    statuses.put(b, BookingStatus.fromString(b.getStatus()));
+                } else {
+                    Booking b = model.get(r.nextInt(model.size()));
+                    BookingStatus status = BookingStatus.values()[r.nextInt(BookingStatus.values().length)];
+                    store.setStatus(b, status);
+                    statuses.put(b, status);
+                }
+
+                check(store.size() == model.size(), step, "size " + store.size() + " != " + model.size());
+                if (step % 500 == 0 || step == 19_999) {
+                    compareStore(store, model, statuses, step);
+                }
+            }
+        });
+
+        // A listener that mirrors the store from its row events ends up equal to it
+        CHECKS.put("BookingStore row events", () -> {
+            Random r = new Random(SEED + 1);
+            BookingStore store = new BookingStore(new ArrayList<>());
+            List<Booking> mirror = new ArrayList<>();
+            store.addListener(new BookingListener() {
+                @Override
+                public void bookingAdded(int row, Booking booking) {
+                    mirror.add(row, booking);
+                }
+
+                @Override
+                public void bookingRemoved(int row, Booking booking) {
+                    check(mirror.remove(row) == booking, "removed row " + row + " held another booking");
+                }
+
+                @Override
+                public void bookingReplaced(int row, Booking oldBooking, Booking newBooking) {
+                    check(mirror.set(row, newBooking) == oldBooking, "replaced row " + row + " held another booking");
+                }
+
+                @Override
+                public void bookingStatusChanged(int row, Booking booking, BookingStatus oldStatus) {
+                    check(mirror.get(row) == booking, "status event for row " + row + " names another booking");
+                }
+            });
+
+            int next = 0;
+            for (int step = 0; step < 10_000; step++) {
+                int op = r.nextInt(6);
+                if (op < 3 || store.isEmpty()) {
+                    store.add(booking(r, next++));
+                } else if (op == 3) {
+                    store.remove(r.nextInt(store.size()));
+                } else if (op == 4) {
+                    int row = r.nextInt(store.size());
+                    store.set(row, booking(r, store.get(row).getBookingID()));
+                } else {
+                    store.setStatus(store.get(r.nextInt(store.size())), BookingStatus.PAID);
+                }
+                check(mirror.size() == store.size(), step, "mirror has " + mirror.size() + " rows");
+            }
+            for (int i = 0; i < store.size(); i++) {
+                check(mirror.get(i) == store.get(i), "mirror row " + i + " differs");
+            }
+        });
+
+        // Changes made through a journalled service survive a crash: the files
+        // copied mid-run recover to the same rows, also with a torn last write
+        CHECKS.put("BookingJournal replays after a crash", () -> {
+            Random r = new Random(SEED + 2);
+            Path dir = Files.createDirectories(dataDir.resolve("journal"));
+            List<Booking> initial = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                initial.add(booking(r, i));
+            }
+            WriteBooking.saveBooking(dir.resolve("booking.csv").toString(), initial);
+
+            BookingJournal journal = new BookingJournal(dir.resolve("booking.csv").toString(),
+                                                        dir.resolve("booking.log").toString());
+            BookingService service = new BookingService(journal.recover());
+            journal.attach(service);
+
+            int next = initial.size();
+            for (int step = 0; step < 2_000; step++) {
+                List<Booking> rows = service.getBookingSnapshot();
+                int op = r.nextInt(10);
+                if (op < 4 || rows.isEmpty()) {
+                    check(service.addBooking(booking(r, next++)), step, "add failed");
+                } else if (op == 4) {
+                    List<Booking> batch = new ArrayList<>();
+                    for (int i = 0; i < 5; i++) {
+                        batch.add(booking(r, next++));
+                    }
+                    check(service.createBookings(batch).isCommitted(), step, "batch rejected");
+                } else if (op == 5) {
+                    String id = rows.get(r.nextInt(rows.size())).getBookingID();
+                    check(service.upsertBooking(booking(r, id)), step, "replace failed");
+                } else if (op < 8) {
+                    String id = rows.get(r.nextInt(rows.size())).getBookingID();
+                    check(service.updateBookingStatus(id, STATUSES[r.nextInt(STATUSES.length)]), step, "status failed");
+                } else {
+                    String id = rows.get(r.nextInt(rows.size())).getBookingID();
+                    check(service.deleteBooking(id), step, "delete failed");
+                }
+                if (step == 1_000) journal.compact();
+            }
+
+            // Every change above was reported as saved, so a crash now must keep all of them
+            List<String> expected = csvLines(service.getBookingSnapshot());
+            Path crashed = copyTree(dir, dataDir.resolve("journal-crash"));
+            check(csvLines(recover(crashed)).equals(expected), "recovered rows differ");
+
+            // A record cut off by the crash was never reported as saved, so it is dropped
+            Path torn = copyTree(dir, dataDir.resolve("journal-torn"));
+            Files.write(torn.resolve("booking.log"), "B,3\nA,CHK-x\nA,CHK-".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+            check(csvLines(recover(torn)).equals(expected), "torn log changed the rows");
+
+            // A clean shutdown folds the log into the snapshot
+            journal.close();
+            check(csvLines(recover(dir)).equals(expected), "rows after close differ");
+        });
+
+
+        // Random saves, replaces and deletes of records of very different sizes
+        // (so pages split often) against a TreeMap, then again after reopening
+        CHECKS.put("BTree matches a sorted map", () -> {
+            Random r = new Random(SEED + 3);
+            Path path = dataDir.resolve("check.db");
+            TreeMap<String, String> model = new TreeMap<>();
+
+            PageFile file = PageFile.open(path, 32);
+            BTree<String, String> tree = new BTree<>(file, 0, new TextCodec());
+            for (int step = 0; step < 30_000; step++) {
+                String key = String.format("K%05d", r.nextInt(6_000));
+                int op = r.nextInt(10);
+                if (op < 6) {
+                    char[] text = new char[r.nextInt(400)];
+                    Arrays.fill(text, (char) ('a' + r.nextInt(26)));
+                    String record = key + "|" + new String(text);
+                    tree.save(record);
+                    model.put(key, record);
+                } else if (op < 9) {
+                    check(tree.delete(key) == (model.remove(key) != null), step, "delete(" + key + ") disagrees");
+                } else {
+                    check(Objects.equals(tree.find(key), model.get(key)), step, "find(" + key + ") differs");
+                }
+                check(tree.size() == model.size(), step, "size " + tree.size() + " != " + model.size());
+                if (step % 2_000 == 0) compareTree(tree, model, step);
+            }
+            check(tree.height() > 2, "tree only has " + tree.height() + " levels");
+            tree.close();
+            file.close();
+
+            // Everything is still there after reopening; deleting it all leaves an empty tree
+            file = PageFile.open(path, 32);
+            tree = new BTree<>(file, 0, new TextCodec());
+            compareTree(tree, model, -1);
+            for (String key : new ArrayList<>(model.keySet())) {
+                check(tree.delete(key), "delete(" + key + ") after reopening failed");
+            }
+            check(tree.size() == 0 && tree.height() == 0, "tree not empty after deleting every record");
+            tree.close();
+            file.close();
+        });
+    }
+
+    // Compares every row, the ID lookups and the status counts with the model
+    private static void compareStore(BookingStore store, List<Booking> model,
+                                     Map<Booking, BookingStatus> statuses, int step) {
+        for (int i = 0; i < model.size(); i++) {
+            Booking b = model.get(i);
+            check(store.get(i) == b, step, "row " + i + " differs");
+            check(store.indexOf(b) == i, step, "indexOf(row " + i + ") = " + store.indexOf(b));
+            check(store.find(b.getBookingID()) == b, step, "find(" + b.getBookingID() + ") differs");
+        }
+        for (BookingStatus s : BookingStatus.values()) {
+            long expected = model.stream().filter(b -> statuses.get(b) == s).count();
+            check(store.countWithStatus(s) == expected, step, "count of " + s + " differs");
+            check(store.withStatus(s).size() == expected, step, "list of " + s + " differs");
+        }
+    }
+
+    // Visits the whole tree and compares it (order included) with the model
+    private static void compareTree(BTree<String, String> tree, TreeMap<String, String> model, int step)
+            throws IOException {
+        List<String> records = new ArrayList<>();
+        tree.forEach(records::add);
+        check(records.equals(new ArrayList<>(model.values())), step, "visited records differ");
+        for (String key : model.keySet()) {
+            check(model.get(key).equals(tree.find(key)), step, "find(" + key + ") differs");
+        }
+    }
+
+    // Records "key|text" stored under their key
+    private static class TextCodec implements RecordCodec<String, String> {
+
+        public byte[] key(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String keyOf(String record) {
+            return record.substring(0, record.indexOf('|'));
+        }
+
+        public byte[] encode(String record) {
+            return record.substring(record.indexOf('|') + 1).getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String decode(byte[] key, byte[] value) {
+            return new String(key, StandardCharsets.UTF_8) + "|" + new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    private static final String[] SURNAMES = {"Santos", "Reyes", "Cruz", "Garcia", "Lim", "Tan"};
+    private static final String[] FIRST_NAMES = {"Ana", "Jose", "Maria", "Juan", "Liza", "Paolo"};
+    private static final String[] STATUSES = {"PAID", "PENDING PAYMENT", "REFUNDED"};
+
+    // A random booking with the n-th check ID
+    static Booking booking(Random r, int n) {
+        return booking(r, "CHK-" + n);
+    }
+
+    // A random booking with the given ID
+    static Booking booking(Random r, String bookingID) {
+        LocalDate start = LocalDate.of(2026, 1, 1).plusDays(r.nextInt(365));
+        return new Booking(bookingID, SURNAMES[r.nextInt(SURNAMES.length)], FIRST_NAMES[r.nextInt(FIRST_NAMES.length)],
+                           "", 1 + r.nextInt(6), start, start.plusDays(1 + r.nextInt(14)),
+                           STATUSES[r.nextInt(STATUSES.length)]);
+    }
+
+    // Recovers the bookings saved in a directory, as the next start would
+    static List<Booking> recover(Path dir) throws IOException {
+        return new BookingJournal(dir.resolve("booking.csv").toString(), dir.resolve("booking.log").toString()).recover();
+    }
+
+    // The saved form of each booking, in row order
+    static List<String> csvLines(List<Booking> bookings) {
+        List<String> lines = new ArrayList<>(bookings.size());
+        for (Booking b : bookings) {
+            lines.add(WriteBooking.toCsvLine(b));
+        }
+        return lines;
+    }
+
+    // Throws if a condition does not hold, naming the step it failed at
+    static void check(boolean condition, int step, String message) {
+        if (!condition) throw new AssertionError("step " + step + ": " + message);
+    }
+
+    // Throws if a condition does not hold
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    // Copies the files of a directory, as a crash would leave them
+    static Path copyTree(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.copy(f, to.resolve(f.getFileName()));
+            }
+        }
+        return to;
+    }
+
+    // Deletes a directory and everything in it
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
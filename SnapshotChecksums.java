@@ -0,0 +1,381 @@
+// For reading and writing the files
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// For the block checksums
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+// Checksummed generations of booking.csv and rooms.csv
+//
+// Every save made through CsvWriter.create() also writes a sidecar file
+// (<name>.crc) holding a CRC32C for each 64 KiB block, plus the length and
+// last-modified time of the file it describes. On commit the current file
+// and its sidecar become the previous generation (<name>.prev and
+// <name>.prev.crc) and the new ones are renamed into place, each only after
+// it has been forced to disk.
+//
+// Readers open files through open(), which checks each block as it is read,
+// so checking costs no extra pass over the file. A damaged block surfaces as
+// a ChecksumException (isDamaged() also tells a parse error caused by damage
+// from a bad hand edit); the reader then calls restorePrevious(), which puts
+// the previous generation back (keeping the damaged file as <name>.damaged),
+// and reads again. At most one generation is tried, so a recovery never
+// takes more than two reads of the file. A missing file is restored from
+// the previous generation the same way (a crash between the two renames).
+//
+// A sidecar whose length or time does not match its file means the file was
+// changed by something else (edited by hand, or appended to); such a file is
+// read without checks.
+//
+// Sidecar format (text):
+//   CRC32C,<block size>,<file length>,<last modified millis>
+//   <CRC of block 0 as 8 hex digits>
+//   ...
+public class SnapshotChecksums {
+
+    // Bytes covered by one checksum
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    // First field of a sidecar's header line
+    private static final String FORMAT = "CRC32C";
+
+    // Size of the mappings used by verify() (a whole number of blocks)
+    private static final long MAP_SIZE = 16384L * BLOCK_SIZE;
+
+    // Files whose previous generation was restored since they were last saved
+    private static final Set<Path> RESTORED = ConcurrentHashMap.newKeySet();
+
+    // Thrown when a block does not match its checksum
+    public static class ChecksumException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChecksumException(String message) {
+            super(message);
+        }
+    }
+
+    // ======================
+    // File names
+    // ======================
+
+    public static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + ".crc");
+    }
+
+    public static Path previous(Path file) {
+        return file.resolveSibling(file.getFileName() + ".prev");
+    }
+
+    // ======================
+    // Writing (CsvWriter)
+    // ======================
+
+    // Block checksums of a file, built up as its bytes are written
+    static class Builder {
+        private final CRC32C crc = new CRC32C();
+        private int[] sums = new int[16];
+        private int blocks;
+        private int fill;
+
+        // Adds the bytes between the buffer's position and limit (the buffer is not moved)
+        void update(ByteBuffer data) {
+            ByteBuffer rest = data.duplicate();
+            while (rest.hasRemaining()) {
+                int take = Math.min(rest.remaining(), BLOCK_SIZE - fill);
+                ByteBuffer part = rest.duplicate();
+                part.limit(part.position() + take);
+                crc.update(part);
+                rest.position(rest.position() + take);
+                fill += take;
+                if (fill == BLOCK_SIZE) endBlock();
+            }
+        }
+
+        private void endBlock() {
+            if (blocks == sums.length) sums = Arrays.copyOf(sums, blocks * 2);
+            sums[blocks++] = (int) crc.getValue();
+            crc.reset();
+            fill = 0;
+        }
+
+        // Checksums of all blocks, the last one partial
+        int[] finish() {
+            if (fill > 0) endBlock();
+            return Arrays.copyOf(sums, blocks);
+        }
+    }
+
+    /**
+     * Writes the sidecar for temp (already forced to disk), moves the current
+     * generation of target aside as the previous one and renames temp and its
+     * sidecar into place.
+     */
+    static void install(Path temp, Path target, Builder builder) throws IOException {
+        int[] sums = builder.finish();
+
+        // Sidecar for the new file, on disk before anything is renamed
+        Path sumsTemp = sidecar(temp);
+        StringBuilder text = new StringBuilder(20 + sums.length * 9);
+        text.append(FORMAT).append(',').append(BLOCK_SIZE).append(',').append(Files.size(temp))
+            .append(',').append(Files.getLastModifiedTime(temp).toMillis()).append('\n');
+        for (int sum : sums) {
+            String hex = Integer.toHexString(sum);
+            for (int i = hex.length(); i < 8; i++) text.append('0');
+            text.append(hex).append('\n');
+        }
+        try (FileChannel out = FileChannel.open(sumsTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+            while (bytes.hasRemaining()) out.write(bytes);
+            out.force(false);
+        }
+
+        // Current generation becomes the previous one, then the new one goes in
+        moveIfExists(target, previous(target));
+        moveIfExists(sidecar(target), sidecar(previous(target)));
+        move(temp, target);
+        move(sumsTemp, sidecar(target));
+        syncDirectory(target);
+        RESTORED.remove(key(target));
+    }
+
+    // ======================
+    // Reading
+    // ======================
+
+    /**
+     * Opens a file for reading. If its sidecar is current, every block is
+     * checked as it is read and a damaged one throws ChecksumException (at
+     * the end of that block). A missing file is first restored from the
+     * previous generation, if there is one.
+     */
+    public static InputStream open(Path file) throws IOException {
+        if (!Files.exists(file)) restorePrevious(file);
+        int[] sums = currentSums(file);
+        InputStream in = Files.newInputStream(file);
+        return sums == null ? in : new CheckedInputStream(in, sums, file);
+    }
+
+    /**
+     * Checks every block of a file at once, in parallel (for loaders that do
+     * not read the file as one stream). Does nothing if the file has no
+     * current sidecar.
+     */
+    public static void verify(Path file) throws IOException {
+        if (!Files.exists(file)) restorePrevious(file);
+        int[] sums = currentSums(file);
+        if (sums == null) return;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<MappedByteBuffer> maps = new ArrayList<>();
+            for (long at = 0; at < size; at += MAP_SIZE) {
+                maps.add(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(MAP_SIZE, size - at)));
+            }
+            int blocksPerMap = (int) (MAP_SIZE / BLOCK_SIZE);
+
+            int bad = IntStream.range(0, sums.length).parallel().filter(block -> {
+                ByteBuffer part = maps.get(block / blocksPerMap).duplicate();
+                int from = (block % blocksPerMap) * BLOCK_SIZE;
+                part.position(from).limit(Math.min(part.capacity(), from + BLOCK_SIZE));
+                CRC32C crc = new CRC32C();
+                crc.update(part);
+                return (int) crc.getValue() != sums[block];
+            }).min().orElse(-1);
+            if (bad >= 0) throw mismatch(file, bad);
+        }
+    }
+
+    /**
+     * Puts the previous generation of a file back in its place, keeping a
+     * damaged current file as <name>.damaged. Returns false if there is no
+     * previous generation, or it was already restored since the last save.
+     */
+    public static boolean restorePrevious(Path file) throws IOException {
+        Path prev = previous(file);
+        if (!Files.exists(prev) || !RESTORED.add(key(file))) return false;
+        System.out.println("Restoring " + file + " from " + prev);
+
+        // Copies first (with their times, so the sidecar still matches), then the renames
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Path sumsTemp = sidecar(temp);
+        Files.copy(prev, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        boolean hasSums = Files.exists(sidecar(prev));
+        if (hasSums) {
+            Files.copy(sidecar(prev), sumsTemp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+
+        Path damaged = file.resolveSibling(file.getFileName() + ".damaged");
+        moveIfExists(file, damaged);
+        moveIfExists(sidecar(file), sidecar(damaged));
+        move(temp, file);
+        if (hasSums) move(sumsTemp, sidecar(file));
+        syncDirectory(file);
+        return true;
+    }
+
+    // True if the previous generation of the file was restored since it was last saved
+    public static boolean restoredPrevious(Path file) {
+        return RESTORED.contains(key(file));
+    }
+
+    /**
+     * True if reading a file failed because it is damaged: the failure was a
+     * checksum mismatch (possibly wrapped, e.g. by a stream), or it was a
+     * parse error and the whole file fails its checksums (a damaged byte can
+     * break a row before the end of its block is reached).
+     */
+    public static boolean isDamaged(Path file, Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ChecksumException) return true;
+        }
+        try {
+            verify(file);
+            return false;
+        } catch (IOException checkFailed) {
+            return checkFailed instanceof ChecksumException;
+        }
+    }
+
+    // ======================
+    // Helpers
+    // ======================
+
+    // Checksums from the file's sidecar, or null if it is missing, unreadable or for another version of the file
+    private static int[] currentSums(Path file) throws IOException {
+        Path sums = sidecar(file);
+        if (!Files.exists(sums)) return null;
+        List<String> lines = Files.readAllLines(sums, StandardCharsets.US_ASCII);
+        if (lines.isEmpty()) return null;
+        String[] header = lines.get(0).split(",");
+        try {
+            if (header.length != 4 || !header[0].equals(FORMAT) || Integer.parseInt(header[1]) != BLOCK_SIZE) {
+                return null;
+            }
+            long length = Long.parseLong(header[2]);
+            if (length != Files.size(file)
+                    || Long.parseLong(header[3]) != Files.getLastModifiedTime(file).toMillis()
+                    || lines.size() - 1 != (length + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+                return null;
+            }
+            int[] result = new int[lines.size() - 1];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = Integer.parseUnsignedInt(lines.get(i + 1), 16);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static ChecksumException mismatch(Path file, int block) {
+        return new ChecksumException("Checksum mismatch in " + file + " at byte " + (long) block * BLOCK_SIZE);
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    private static void moveIfExists(Path from, Path to) throws IOException {
+        if (Files.exists(from)) move(from, to);
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Makes the renames durable (not possible on every platform; skipped there)
+    private static void syncDirectory(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on this platform
+        }
+    }
+
+    // Checks each block as the bytes go past
+    private static class CheckedInputStream extends FilterInputStream {
+        private final int[] sums;
+        private final Path file;
+        private final CRC32C crc = new CRC32C();
+        private int block;
+        private int fill;
+
+        CheckedInputStream(InputStream in, int[] sums, Path file) {
+            super(in);
+            this.sums = sums;
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n < 0) {
+                if (fill > 0) endBlock();
+                if (block != sums.length) throw mismatch(file, block);
+                return n;
+            }
+            for (int done = 0; done < n; ) {
+                int take = Math.min(n - done, BLOCK_SIZE - fill);
+                crc.update(buf, off + done, take);
+                done += take;
+                fill += take;
+                if (fill == BLOCK_SIZE) endBlock();
+            }
+            return n;
+        }
+
+        // Skipped bytes are read (and checked) too
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] scratch = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+                if (r < 0) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void endBlock() throws ChecksumException {
+            if (block >= sums.length || (int) crc.getValue() != sums[block]) throw mismatch(file, block);
+            block++;
+            crc.reset();
+            fill = 0;
+        }
+    }
+}
@@ -1,6 +1,6 @@
-// For writing text to files
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+// For writing files
+import java.io.IOException;
+import java.nio.file.Paths;
 
 // For formatting LocalDate objects
 import java.time.format.DateTimeFormatter;
@@ -13,63 +13,100 @@ public class WriteBooking {
     // Formatter for dates in yyyy-MM-dd format
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    // CSV header line
+    static final String HEADER = "BookingID,Surname,MiddleName,FirstName,PartySize,StartDate,EndDate,Status,Unit";
+
+    // Write speed and failed writes (see Metrics)
+    private static final Metrics.Throughput WRITE = Metrics.throughput("csv.write.booking");
+    private static final Metrics.Counter WRITE_ERRORS = Metrics.counter("csv.write.booking.errors");
+
     // Creates a new CSV file with only the header (overwrites if exists)
     public static void writeBooking(String filePath) {
-        try (BufferedWriter write = new BufferedWriter(new FileWriter(filePath))) {
+        try (CsvWriter out = CsvWriter.create(Paths.get(filePath))) {
             // Write CSV header
-            write.write("BookingID,Surname,MiddleName,FirstName,PartySize,StartDate,EndDate,Status");
-            write.newLine();
+            out.text(HEADER).endLine();
+            out.commit();
         } catch (Exception e) {
             // Print any errors that occur while creating the file
+            WRITE_ERRORS.increment();
             e.printStackTrace();
         }
     }
 
     // Saves the entire list of bookings to the CSV file (overwrites existing content)
     public static void saveBooking(String filePath, List<Booking> bookings) {
-        try (BufferedWriter write = new BufferedWriter(new FileWriter(filePath))) {
+        try {
+            writeSnapshot(filePath, bookings);
+        } catch (Exception e) {
+            // Print any errors that occur while writing the file
+            WRITE_ERRORS.increment();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the entire list of bookings to a temp file, forces it to disk
+     * and renames it over the CSV file, so the old file stays whole until the
+     * new one is. Unlike saveBooking, errors are thrown to the caller.
+     */
+    public static void writeSnapshot(String filePath, List<Booking> bookings) throws IOException {
+        long start = Metrics.start();
+        try (CsvWriter out = CsvWriter.create(Paths.get(filePath))) {
             // Write CSV header
-            write.write("BookingID,Surname,MiddleName,FirstName,PartySize,StartDate,EndDate,Status");
-            write.newLine();
+            out.text(HEADER).endLine();
 
             // Write each booking as a CSV row
             for (Booking b : bookings) {
-                String line = b.getBookingID() + "," +
-                              b.getSurname() + "," +
-                              b.getMiddleName() + "," +
-                              b.getFirstName() + "," +
-                              b.getPartySize() + "," +
-                              b.getStartDate().format(formatter) + "," +
-                              b.getEndDate().format(formatter) + "," +
-                              b.getStatus();
-                write.write(line);
-                write.newLine();
+                writeRow(out, b);
             }
-        } catch (Exception e) {
-            // Print any errors that occur while writing the file
-            e.printStackTrace();
+
+            out.commit();
+            WRITE.recordSince(start, bookings.size(), out.size());
         }
     }
 
     // Appends a single booking to the CSV file without overwriting existing content
     public static void appendBooking(String filePath, Booking b) {
-        boolean appendMode = true; // Open file in append mode
-        try (BufferedWriter write = new BufferedWriter(new FileWriter(filePath, appendMode))) {
-            // Format the booking as a CSV line
-            String line = b.getBookingID() + "," +
-                          b.getSurname() + "," +
-                          b.getMiddleName() + "," +
-                          b.getFirstName() + "," +
-                          b.getPartySize() + "," +
-                          b.getStartDate().format(formatter) + "," +
-                          b.getEndDate().format(formatter) + "," +
-                          b.getStatus();
-            // Write the line to the file
-            write.write(line);
-            write.newLine();
+        try (CsvWriter out = CsvWriter.append(Paths.get(filePath))) {
+            // Write the booking as a CSV line
+            writeRow(out, b);
         } catch (Exception e) {
             // Print any errors that occur while appending
+            WRITE_ERRORS.increment();
             e.printStackTrace();
         }
     }
+
+    // Writes a booking as one CSV row (same column order as the header)
+    static void writeRow(CsvWriter out, Booking b) throws IOException {
+        out.text(b.getBookingID())
+           .text(b.getSurname())
+           .text(b.getMiddleName())
+           .text(b.getFirstName())
+           .number(b.getPartySize())
+           .date(b.getStartDate())
+           .date(b.getEndDate())
+           .text(b.getStatus());
+
+        // Unit column, empty if the booking has no unit yet
+        if (b.getUnit() == 0) {
+            out.text(null);
+        } else {
+            out.number(b.getUnit());
+        }
+        out.endLine();
+    }
+
+    // Formats a booking as one CSV line (for the journal, which writes whole records)
+    static String toCsvLine(Booking b) {
+        return b.getBookingID() + "," +
+               b.getSurname() + "," +
+               b.getMiddleName() + "," +
+               b.getFirstName() + "," +
+               b.getPartySize() + "," +
+               b.getStartDate().format(formatter) + "," +
+               b.getEndDate().format(formatter) + "," +
+               b.getStatus() + "," +
+               (b.getUnit() == 0 ? "" : String.valueOf(b.getUnit()));
+    }
 }
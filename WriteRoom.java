@@ -1,85 +1,87 @@
-// For writing text to files
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+// For writing files
+import java.io.IOException;
+import java.nio.file.Paths;
 
 // For working with lists of Room objects
 import java.util.List;
 
 // Utility class to write Room objects to CSV files
-public class WriteRoom 
-{   
+public class WriteRoom
+{
+    // CSV header line
+    static final String HEADER = "UnitNumber,UnitCapacity,UnitStatus,BookingID,BasePrice";
+
     // Creates a new empty room CSV file with only the header (overwrites if exists)
     public static void writeRoom(String Path)
     {
-        try(BufferedWriter write = new BufferedWriter(new FileWriter(Path))) 
-        {   
+        try(CsvWriter out = CsvWriter.create(Paths.get(Path)))
+        {
             // Write CSV header
-            write.write("UnitNumber,UnitCapacity,UnitStatus,BookingID,BasePrice");
-            write.newLine();
-            
-        } catch (Exception e) 
+            out.text(HEADER).endLine();
+            out.commit();
+
+        } catch (Exception e)
         {
-            // Exception handling (currently empty)
-            // Could log or print error here
+            // Print any errors that occur while creating the file
+            e.printStackTrace();
         }
     }
 
-    // Saves the entire list of rooms to the CSV file (overwrites existing content)
+    // Saves the entire list of rooms to the CSV file (overwrites existing content,
+    // through a temp file renamed over it once complete)
     public static void saveRoom(String Path, List<Room> rooms)
     {
-        String line;
-        try(BufferedWriter write = new BufferedWriter(new FileWriter(Path))) 
+        try
+        {
+            writeSnapshot(Path, rooms);
+        } catch (Exception e)
+        {
+            // Print any errors that occur while writing the file
+            e.printStackTrace();
+        }
+    }
+
+    // Same as saveRoom, but errors are thrown to the caller
+    public static void writeSnapshot(String Path, List<Room> rooms) throws IOException
+    {
+        try(CsvWriter out = CsvWriter.create(Paths.get(Path)))
         {
             // Write CSV header
-            write.write("UnitNumber,UnitCapacity,UnitStatus,BookingID,BasePrice");
-            write.newLine();
+            out.text(HEADER).endLine();
 
             // Write each room as a CSV row
             for(Room r : rooms)
             {
-                line = r.getUnitNumber() + "," +
-                    r.getUnitCapacity() + "," +
-                    r.getUnitStatus() + "," +
-                    r.getBookingID() + "," +
-                    r.getBasePrice() + "," +  // <-- duplicated basePrice? might be a typo
-                    r.getBasePrice();
-
-                write.write(line);
-                write.newLine();
+                writeRow(out, r);
             }
-            write.flush(); // Ensure all data is written
-        } catch (Exception e) 
-        {
-            // Exception handling (currently empty)
-            // Could log or print error here
+            out.commit(); // Ensure all data is on disk before it replaces the file
         }
     }
-    
+
     // Appends a single room to the CSV file without overwriting existing content
     public static void appendRoom(String Path, Room room)
     {
-        boolean appendMode = true; // Open file in append mode
-        String line;
-
-        try(BufferedWriter write = new BufferedWriter(new FileWriter(Path, appendMode))) 
+        try(CsvWriter out = CsvWriter.append(Paths.get(Path)))
         {
-            // Format the room as a CSV line
-            line = room.getUnitNumber() + "," +
-                   room.getUnitCapacity() + "," +
-                   room.getUnitStatus() + "," +
-                   room.getBookingID() + "," +
-                   room.getBasePrice() + "," +  // <-- duplicated basePrice? might be a typo
-                   room.getBasePrice();
+            // Write the room as a CSV line
+            writeRow(out, room);
 
-            // Write the line to the file
-            write.write(line);
-            write.newLine();
-            write.flush(); // Ensure data is written immediately
-                
-        } catch (Exception e) 
+        } catch (Exception e)
         {
-            // Exception handling (currently empty)
-            // Could log or print error here
+            // Print any errors that occur while appending
+            e.printStackTrace();
         }
     }
+
+    // Writes a room as one CSV row (same column order as the header; an
+    // empty booking ID is read back as null)
+    static void writeRow(CsvWriter out, Room room) throws IOException
+    {
+        out.number(room.getUnitNumber())
+           .number(room.getUnitCapacity())
+           .text(room.getUnitStatus())
+           .text(room.getBookingID())
+           .price(room.getBasePrice())
+           .endLine();
+    }
 }